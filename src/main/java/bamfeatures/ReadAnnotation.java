@@ -1,10 +1,9 @@
 package bamfeatures;
 
-import gtf.structs.Exon;
 import gtf.structs.Gene;
 import gtf.structs.Interval;
 import gtf.structs.Transcript;
-import gtf.treecollections.IntervalTreeForestManager;
+import gtf.treecollections.GeneQueryResult;
 import gtf.treecollections.PCRIndexManager;
 import htsjdk.samtools.AlignmentBlock;
 import htsjdk.samtools.SAMRecord;
@@ -12,7 +11,6 @@ import readsimulator.Pair;
 
 import java.util.*;
 
-import static runners.ReadSimulatorRunner.cut;
 
 public class ReadAnnotation {
     public static final char PIPE = '|';
@@ -149,8 +147,8 @@ public class ReadAnnotation {
         return true; // No inconsistency found
     }
 
-    public void calculateGeneDistance(IntervalTreeForestManager manager) {
-        gdist = manager.getDistanceToNearestNeighborGene(this);
+    public void calculateGeneDistance(GeneQueryResult<Gene> query) {
+        gdist = query.getDistance();
     }
 
     public int getGdist() {
@@ -289,8 +287,8 @@ public class ReadAnnotation {
         return geneCount;
     }
 
-    public void processAntisense(IntervalTreeForestManager manager) {
-        antisense = manager.isAntisenseBetter(this);
+    public void processAntisense(GeneQueryResult<Gene> query) {
+        antisense = query.isAntisense();
     }
 
     public boolean isTranscriptomicProcess() {
@@ -301,26 +299,10 @@ public class ReadAnnotation {
         transcriptomicMatches = new ArrayList<>();
         transcriptomicProcess = true;
 
-        boolean isFound;
-        List<Transcript> matchingTranscripts = null;
         for (Gene gene : genesThatInclude) {
-            isFound = false;
-            // Iterate over each transcript of the gene
-            for (Transcript transcript : gene.getTranscripts().values()) {
-                TreeSet<Exon> exons = transcript.getExons();
-                // TODO: without cutting as this requires a new object
-                if (cut(exons, new Interval(firstRead.getFirst().getStart(), firstRead.getLast().getEnd())).equals(firstRead) && cut(exons, new Interval(secondRead.getFirst().getStart(), secondRead.getLast().getEnd())).equals(secondRead)) {
-                    if (isFound) {
-                        matchingTranscripts.add(transcript);
-                    } else {
-                        matchingTranscripts = new ArrayList<>();
-                        matchingTranscripts.add(transcript);
-                        isFound = true;
-                    }
-                }
-            }
-
-            if (isFound) {
+            // Only the transcripts with the junctions of the reads are checked
+            List<Transcript> matchingTranscripts = gene.getJunctionIndex().findMatches(firstRead, secondRead, ReadAnnotation::matchesExons);
+            if (matchingTranscripts != null) {
                 transcriptomicMatches.add(new Pair<>(gene, matchingTranscripts));
             }
         }
@@ -329,20 +311,47 @@ public class ReadAnnotation {
     }
 
 
+    /**
+     * Checks if the exons of the transcript cut to the span of the read are exactly the blocks of the read, like
+     * comparing {@link Transcript#cut} with the read but without creating the cut intervals.
+     */
+    private static boolean matchesExons(Transcript transcript, TreeSet<Interval> read) {
+        int[] exonStarts = transcript.getExonStarts();
+        int[] exonEnds = transcript.getExonEnds();
+        int cutStart = read.getFirst().getStart();
+        int cutEnd = read.getLast().getEnd();
+        Iterator<Interval> blocks = read.iterator();
+        int previousStart = Integer.MIN_VALUE;
+        int previousEnd = Integer.MIN_VALUE;
+        for (int i = 0; i < exonStarts.length && exonStarts[i] <= cutEnd; i++) {
+            if (exonEnds[i] < cutStart) {
+                continue;
+            }
+            int start = Math.max(exonStarts[i], cutStart);
+            int end = Math.min(exonEnds[i], cutEnd);
+            if (start < previousStart || (start == previousStart && end <= previousEnd)) {
+                // Overlapping exons do not cut into sorted distinct intervals
+                return transcript.cut(new Interval(cutStart, cutEnd)).equals(read);
+            }
+            if (!blocks.hasNext()) {
+                return false;
+            }
+            Interval block = blocks.next();
+            if (block.getStart() != start || block.getEnd() != end) {
+                return false;
+            }
+            previousStart = start;
+            previousEnd = end;
+        }
+        return !blocks.hasNext();
+    }
+
     public boolean findMergedTranscriptomicMatches() {
         mergedTranscriptomicMatches = new ArrayList<>();
         // Iterate over all genes
         for (Gene gene : genesThatInclude) {
-            // Merge all exons of all transcripts into a single TreeSet<Interval>
-            TreeSet<Interval> mergedGeneTranscript = new TreeSet<>();
-            for (Transcript transcript : gene.getTranscripts().values()) {
-                for (Exon exon : transcript.getExons()) {
-                    mergeInterval2(mergedGeneTranscript, exon.getInterval());
-                }
-            }
-
-            // Check if the combinedRead is fully contained within the mergedGeneTranscript
-            if (isReadContainedInMergedTranscript(combinedRead, mergedGeneTranscript)) {
+            // Check if the combinedRead is fully contained within the merged exons of all transcripts of the gene
+            if (isReadContainedInMergedExons(combinedRead, gene)) {
                 mergedTranscriptomicMatches.add(gene);
             }
         }
@@ -355,29 +364,16 @@ public class ReadAnnotation {
         return !mergedTranscriptomicMatches.isEmpty();
     }
 
-    private boolean isReadContainedInMergedTranscript(TreeSet<Interval> readIntervals, TreeSet<Interval> mergedGeneTranscript) {
-        Iterator<Interval> readIter = readIntervals.iterator();
-        Iterator<Interval> mergedIter = mergedGeneTranscript.iterator();
-
-        Interval currentRead = readIter.hasNext() ? readIter.next() : null;
-        Interval currentMerged = mergedIter.hasNext() ? mergedIter.next() : null;
-
-        while (currentRead != null) {
-            // Ensure the current merged interval can fully contain the current read interval
-            while (currentMerged != null && currentMerged.getEnd() < currentRead.getStart()) {
-                currentMerged = mergedIter.hasNext() ? mergedIter.next() : null;
-            }
-
-            if (currentMerged == null || currentRead.getStart() < currentMerged.getStart() || currentRead.getEnd() > currentMerged.getEnd()) {
-                // No interval in mergedGeneTranscript can fully contain the current read interval
+    /**
+     * @return true if every block of the read is inside a range of the merged exons of the gene, see
+     * {@link Gene#getMergedExons()}
+     */
+    private boolean isReadContainedInMergedExons(TreeSet<Interval> readIntervals, Gene gene) {
+        for (Interval interval : readIntervals) {
+            if (!gene.isInMergedExons(interval.getStart(), interval.getEnd())) {
                 return false;
             }
-
-            // Move to the next read interval
-            currentRead = readIter.hasNext() ? readIter.next() : null;
         }
-
-        // All read intervals were contained
         return true;
     }
 
@@ -1,12 +1,17 @@
 package bamfeatures;
 
 import gtf.GTFAnnotation;
+import gtf.structs.AnnotationFootprint;
 import gtf.structs.Gene;
 import gtf.treecollections.*;
 import gtf.types.StrandDirection;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.SamReader;
+import parsers.ChromosomeGTFLoader;
 import parsers.GTFParser;
+import parsers.GTFStore;
+import parsers.PipelinedGeneLoader;
 import readsimulator.IdenticalPair;
 
 import java.io.BufferedWriter;
@@ -16,6 +21,7 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 public class ReadAnnotator {
     private final StrandDirection strandSpecificity;
@@ -27,21 +33,47 @@ public class ReadAnnotator {
     private IntervalTreeForestManager forestManager;
     private HashMap<String, SAMRecord> lookup;
     private List<SAMReadPair> readsToAnnotate;
+    // reused by processRead, reads are processed by one thread at a time
+    private final GeneQueryResult<Gene> geneQuery = new GeneQueryResult<>();
     private String currentChromosome = "_";
     private PCRIndexManager pcrIndex;
     private BufferedWriter writer;
     private boolean returnAll = false;
     private String analysisFilePath;
-    private Map<String, IdenticalPair<Integer>> rpkmMap;
+    // Read counts by gene index (all reads and reads with PCR index 0), grown as genes come
+    private int[] geneReadCounts;
+    private int[] genePcr0ReadCounts;
+    private String[] countedGeneIDs;
+    // Exonic lengths of the counted genes for RPKM, so the genes do not have to be kept
+    private int[] countedGeneLengths;
+    private final boolean parallelGtfParsing;
+    private final boolean lazyGtfLoading;
+    private final boolean pipelinedGtfLoading;
+    private final boolean footprintReport;
+    private final Supplier<IntervalIndex<Gene>> treeFactory;
+    private final boolean releaseFinishedChromosomes;
+    private final boolean treeQueries;
+    private ChromosomeGTFLoader gtfLoader;
+    private PipelinedGeneLoader gtfPipeline;
 
     private ReadAnnotator(Builder builder) {
         samReader = builder.samReader;
         gtfFile = builder.gtfFile;
+        parallelGtfParsing = builder.parallelGtfParsing;
+        lazyGtfLoading = builder.lazyGtfLoading;
+        pipelinedGtfLoading = builder.pipelinedGtfLoading;
+        footprintReport = builder.footprintReport;
+        treeFactory = builder.augmentedTrees ? AugmentedIntervalIndex::new : IntervalTreeForestManager.DEFAULT_TREE_FACTORY;
+        releaseFinishedChromosomes = builder.releaseFinishedChromosomes;
+        treeQueries = builder.treeQueries;
         outputFile = builder.outputFile;
         strandSpecificity = builder.strandSpecificity;
         analysisFilePath = builder.analysisFilePath;
         if (analysisFilePath != null) {
-            rpkmMap = new HashMap<>();
+            geneReadCounts = new int[1024];
+            genePcr0ReadCounts = new int[1024];
+            countedGeneIDs = new String[1024];
+            countedGeneLengths = new int[1024];
         }
     }
 
@@ -56,11 +88,11 @@ public class ReadAnnotator {
         // TODO: init forestManager
         Iterator<SAMRecord> it = samReader.iterator();
         if (strandSpecificity == StrandDirection.UNSPECIFIED) {
-            forestManager = new StrandUnspecificForest();
+            forestManager = new StrandUnspecificForest(treeFactory);
             pcrIndex = new StrandUnSpecificPCRIndex();
         } else {
             //TODO: Possible migrate to tree pair instead of hasmap of strands
-            forestManager = new StrandSpecificForest(strandSpecificity);
+            forestManager = new StrandSpecificForest(strandSpecificity, treeFactory);
             pcrIndex = new StrandSpecificPCRIndex();
         }
         if (outputFile != null) {
@@ -72,9 +104,10 @@ public class ReadAnnotator {
 
         }
 
-        // TODO: better GTF file handling
-        GTFAnnotation gtfAnnotation = GTFParser.parseGTF(String.valueOf(gtfFile));
-        forestManager.init(gtfAnnotation);
+        forestManager.setReleaseFinishedChromosomes(releaseFinishedChromosomes);
+        forestManager.setChromosomeOrder(getChromosomeOrder());
+        forestManager.setSweepCursor(!treeQueries);
+        loadAnnotation();
         pcrIndex.initializePCRIndex();
         String referenceName;
         String readName;
@@ -101,7 +134,58 @@ public class ReadAnnotator {
             }
         }
         processLastChromosome();
+        if (gtfLoader != null) {
+            gtfLoader.close();
+        }
+        if (gtfPipeline != null) {
+            gtfPipeline.awaitAll();
+            gtfPipeline.close();
+        }
+    }
+
+    /**
+     * @return the contig order of the BAM header, the order of the chromosomes in a coordinate sorted BAM
+     */
+    private List<String> getChromosomeOrder() {
+        return samReader.getFileHeader().getSequenceDictionary().getSequences().stream().map(SAMSequenceRecord::getSequenceName).toList();
+    }
 
+    /**
+     * Initializes the forest from the GTF file. The annotation is only referenced here, so with released chromosomes
+     * its genes can be collected once their chromosome is done.
+     */
+    private void loadAnnotation() {
+        if (lazyGtfLoading) {
+            // The genes of a chromosome are loaded when its first read comes, in the contig order of the BAM header
+            gtfLoader = new ChromosomeGTFLoader(String.valueOf(gtfFile), getChromosomeOrder());
+            forestManager.setGeneLoader(gtfLoader::load);
+        } else if (pipelinedGtfLoading && !GTFStore.hasValidStore(String.valueOf(gtfFile))) {
+            // The trees are built while the GTF is parsed, a chromosome is waited for when its first read comes
+            if (footprintReport) {
+                System.out.println("Warning, no footprint report for a pipelined GTF");
+            }
+            gtfPipeline = new PipelinedGeneLoader(String.valueOf(gtfFile), forestManager::addGene);
+        } else {
+            GTFStore store = GTFStore.open(String.valueOf(gtfFile));
+            GTFAnnotation gtfAnnotation;
+            if (store != null) {
+                // Genes of the store are frozen already
+                gtfAnnotation = store.getAnnotation();
+            } else {
+                gtfAnnotation = parallelGtfParsing ? GTFParser.parseGTFParallel(String.valueOf(gtfFile)) : GTFParser.parseGTF(String.valueOf(gtfFile));
+                gtfAnnotation.freeze();
+            }
+            if (footprintReport) {
+                AnnotationFootprint.measure(gtfAnnotation, treeFactory).print(System.out);
+            }
+            if (store != null) {
+                // Building every tree would put every gene of the store on the heap, so only the tree of the current
+                // chromosome is built from the store, like with lazy loading. The store keeps the indices of its genes.
+                forestManager.setGeneLoader(store::getGenes);
+            } else {
+                forestManager.init(gtfAnnotation);
+            }
+        }
     }
 
     public boolean areReadsSameStrand(SAMRecord record) {
@@ -125,6 +209,9 @@ public class ReadAnnotator {
         readsToAnnotate = new ArrayList<>();
         lookup = new HashMap<>();
         currentChromosome = referenceName;
+        if (gtfPipeline != null) {
+            gtfPipeline.awaitChromosome(referenceName);
+        }
         forestManager.nextTree(referenceName);
 
         pcrIndex.nextChromosome();
@@ -200,28 +287,50 @@ public class ReadAnnotator {
     }
 
     private void analyzeRead(ReadAnnotation readAnnotation) {
-        // rpkmMap.get by Genename if not there add it. +1 to the getFirst() of the pair and +1 to the getSecond() of the pair only if readAnnotation.getPCR is 0
+        // +1 to the count of every gene of the read, +1 to the PCR 0 count only if the PCR index is 0
         if (!readAnnotation.getGenesThatInclude().isEmpty()) {
             totalReadsMapped++;
             for (Gene gene : readAnnotation.getGenesThatInclude()) {
-                IdenticalPair<Integer> pair = rpkmMap.get(gene.getGeneID());
-                if (pair == null) {
-                    pair = new IdenticalPair<>(0, 0);
-                    rpkmMap.put(gene.getGeneID(), pair);
+                int index = gene.getIndex();
+                if (index >= geneReadCounts.length) {
+                    int length = Math.max(index + 1, geneReadCounts.length * 2);
+                    geneReadCounts = Arrays.copyOf(geneReadCounts, length);
+                    genePcr0ReadCounts = Arrays.copyOf(genePcr0ReadCounts, length);
+                    countedGeneIDs = Arrays.copyOf(countedGeneIDs, length);
+                    countedGeneLengths = Arrays.copyOf(countedGeneLengths, length);
+                }
+                if (countedGeneIDs[index] == null) {
+                    countedGeneIDs[index] = gene.getGeneID();
+                    // genes without exons count with their span
+                    int exonicLength = gene.getExonicLength();
+                    countedGeneLengths[index] = exonicLength > 0 ? exonicLength : gene.getInterval().getLength();
                 }
                 if (readAnnotation.getPcrIndex() == 0) {
-                    pair.setSecond(pair.getSecond() + 1);
+                    genePcr0ReadCounts[index]++;
                 }
-                pair.setFirst(pair.getFirst() + 1);
+                geneReadCounts[index]++;
             }
         }
     }
 
     private double calculateRPKM(int numReadsMappedToGene, int totalReadsMapped, int geneLength) {
-        return (numReadsMappedToGene * 1_000 * 1_000_000.0) / (totalReadsMapped * geneLength);
+        return (numReadsMappedToGene * 1_000 * 1_000_000.0) / ((double) totalReadsMapped * geneLength);
     }
 
+    /**
+     * @return the read counts (all reads, reads with PCR index 0) by gene ID of the genes with reads, null if the
+     * analysis is not set
+     */
     public Map<String, IdenticalPair<Integer>> getRpkmMap() {
+        if (countedGeneIDs == null) {
+            return null;
+        }
+        Map<String, IdenticalPair<Integer>> rpkmMap = new LinkedHashMap<>();
+        for (int i = 0; i < countedGeneIDs.length; i++) {
+            if (countedGeneIDs[i] != null) {
+                rpkmMap.put(countedGeneIDs[i], new IdenticalPair<>(geneReadCounts[i], genePcr0ReadCounts[i]));
+            }
+        }
         return rpkmMap;
     }
 
@@ -230,9 +339,11 @@ public class ReadAnnotator {
         SAMRecord second = samReadPair.getSecond();
         ReadAnnotation readAnnotation = new ReadAnnotation(first.getReadName());
         readAnnotation.extractReadAlignmentStartEnd(first, second);
-        List<Gene> resultGenes = forestManager.getGenesThatInclude(readAnnotation);
-        if (!resultGenes.isEmpty()) {
-            readAnnotation.setGenesThatInclude(resultGenes);
+        geneQuery.clear();
+        forestManager.query(readAnnotation, geneQuery);
+        if (!geneQuery.getGenesThatInclude().isEmpty()) {
+            // only the genes of reads in genes are kept
+            readAnnotation.setGenesThatInclude(new ArrayList<>(geneQuery.getGenesThatInclude()));
             readAnnotation.extractReadIntervals(first, second);
             if (readAnnotation.areReadsConsistent()) {
                 calculateBasicReadInfo(readAnnotation, first, second);
@@ -244,14 +355,14 @@ public class ReadAnnotator {
             } else {
                 return readAnnotation;
             }
-        } else if (!forestManager.hasContainedGene(readAnnotation)) {
+        } else if (!geneQuery.hasContainedGene()) {
             // Check whether it contains a gene
             readAnnotation.extractReadIntervals(first, second);
             if (readAnnotation.areReadsConsistent()) {
                 calculateBasicReadInfo(readAnnotation, first, second);
                 // Specifics
-                readAnnotation.calculateGeneDistance(forestManager);
-                readAnnotation.processAntisense(forestManager);
+                readAnnotation.calculateGeneDistance(geneQuery);
+                readAnnotation.processAntisense(geneQuery);
                 return readAnnotation;
             } else {
                 return readAnnotation;
@@ -282,12 +393,11 @@ public class ReadAnnotator {
         // Output Format is geneID<tab>RPKM-ALL<tab>RPKM-PCR0
         if (analysisFilePath != null) {
             try (BufferedWriter bw = new BufferedWriter(new FileWriter(analysisFilePath))) {
-                for (Map.Entry<String, IdenticalPair<Integer>> entry : rpkmMap.entrySet()) {
-                    IdenticalPair<Integer> pair = entry.getValue();
-                    // calc gene length
-                    int geneLength = calculateGeneLength(gtf
-                    int RPKMall =
-                    bw.write(entry.getKey() + "\t" + calculateRPKM(pair.getFirst(), pair.getFirst() + pair.getSecond(), 1));
+                for (int i = 0; i < countedGeneIDs.length; i++) {
+                    if (countedGeneIDs[i] == null) {
+                        continue;
+                    }
+                    bw.write(countedGeneIDs[i] + "\t" + calculateRPKM(geneReadCounts[i], totalReadsMapped, countedGeneLengths[i]));
                     bw.newLine();
                 }
             } catch (IOException e) {
@@ -303,10 +413,72 @@ public class ReadAnnotator {
         private File outputFile;
         private StrandDirection strandSpecificity;
         private String analysisFilePath;
+        private boolean parallelGtfParsing;
+        private boolean lazyGtfLoading;
+        private boolean pipelinedGtfLoading;
+        private boolean footprintReport;
+        private boolean augmentedTrees;
+        private boolean releaseFinishedChromosomes;
+        private boolean treeQueries;
 
         public Builder() {
         }
 
+        /**
+         * @param lazyGtfLoading load the genes of a chromosome only when its reads come, through a region index of the GTF
+         */
+        public Builder setLazyGtfLoading(boolean lazyGtfLoading) {
+            this.lazyGtfLoading = lazyGtfLoading;
+            return this;
+        }
+
+        /**
+         * @param pipelinedGtfLoading build the interval trees while the GTF is parsed, the GTF has to be sorted by chromosome
+         */
+        public Builder setPipelinedGtfLoading(boolean pipelinedGtfLoading) {
+            this.pipelinedGtfLoading = pipelinedGtfLoading;
+            return this;
+        }
+
+        /**
+         * @param releaseFinishedChromosomes build the genes of a chromosome into its trees when its first read comes and
+         *                                   release them after its last read, the BAM has to be sorted by coordinate
+         */
+        public Builder setReleaseFinishedChromosomes(boolean releaseFinishedChromosomes) {
+            this.releaseFinishedChromosomes = releaseFinishedChromosomes;
+            return this;
+        }
+
+        /**
+         * @param treeQueries query the trees for every pair instead of sweeping a cursor over the genes of the
+         *                    chromosome along the sorted reads
+         */
+        public Builder setTreeQueries(boolean treeQueries) {
+            this.treeQueries = treeQueries;
+            return this;
+        }
+
+        /**
+         * @param augmentedTrees use the interval trees of the AugmentedTree jar instead of the implicit interval trees
+         */
+        public Builder setAugmentedTrees(boolean augmentedTrees) {
+            this.augmentedTrees = augmentedTrees;
+            return this;
+        }
+
+        /**
+         * @param footprintReport print the estimated memory footprint of the annotation before the reads are annotated
+         */
+        public Builder setFootprintReport(boolean footprintReport) {
+            this.footprintReport = footprintReport;
+            return this;
+        }
+
+        public Builder setParallelGtfParsing(boolean parallelGtfParsing) {
+            this.parallelGtfParsing = parallelGtfParsing;
+            return this;
+        }
+
         public Builder setAnalysisFilePath(String analysisFilePath) {
             this.analysisFilePath = analysisFilePath;
             return this;
@@ -62,22 +62,31 @@ public class ExonSkip {
     public static List<ExonSkip> findExonSkippingEvents(GTFAnnotation gtfAnnotation) {
         // TODO use .collect() to avoid synchronization
         List<ExonSkip> exonSkips = Collections.synchronizedList(new ArrayList<>());
-        gtfAnnotation.getGenes().values().parallelStream().forEach(gene -> {
-            for (Interval intronCandidate : gene.getIntrons()) {
-                Set<String> spliceVariantTranscripts = new HashSet<>();
-                Set<String> wildTypeTranscripts = new HashSet<>();
-                Set<Interval> wildTypeIntrons = new TreeSet<>();
-                checkIntronCandidate(gene, intronCandidate, spliceVariantTranscripts, wildTypeTranscripts, wildTypeIntrons);
-
-                if (!spliceVariantTranscripts.isEmpty() && !wildTypeTranscripts.isEmpty()) {
-                    ExonSkip exonSkip = createExonSkipEvent(gene, intronCandidate, spliceVariantTranscripts, wildTypeTranscripts, wildTypeIntrons);
-                    exonSkips.add(exonSkip);
-                }
-            }
-        });
+        gtfAnnotation.getGenes().values().parallelStream().forEach(gene -> findExonSkippingEvents(gene, exonSkips));
         return exonSkips;
     }
 
+    /**
+     * Finds the exon skipping events of a single gene, e.g. while the GTF is streamed. The introns of the gene have to
+     * be processed already ({@link Gene#processIntrons()}), which needs the gene to be frozen.
+     *
+     * @param gene      the gene to be checked
+     * @param exonSkips the list the events are added to
+     */
+    public static void findExonSkippingEvents(Gene gene, List<ExonSkip> exonSkips) {
+        for (Interval intronCandidate : gene.getIntrons()) {
+            Set<String> spliceVariantTranscripts = new HashSet<>();
+            Set<String> wildTypeTranscripts = new HashSet<>();
+            Set<Interval> wildTypeIntrons = new TreeSet<>();
+            checkIntronCandidate(gene, intronCandidate, spliceVariantTranscripts, wildTypeTranscripts, wildTypeIntrons);
+
+            if (!spliceVariantTranscripts.isEmpty() && !wildTypeTranscripts.isEmpty()) {
+                ExonSkip exonSkip = createExonSkipEvent(gene, intronCandidate, spliceVariantTranscripts, wildTypeTranscripts, wildTypeIntrons);
+                exonSkips.add(exonSkip);
+            }
+        }
+    }
+
     private static void checkIntronCandidate(Gene gene, Interval intronCandidate, Set<String> spliceVariantTranscripts, Set<String> wildTypeTranscripts, Set<Interval> wildTypeIntrons) {
         for (Transcript transcriptToCheck : gene.getTranscripts().values()) {
             Set<Interval> intronsToAdd = new TreeSet<>();
@@ -86,27 +95,26 @@ public class ExonSkip {
             int intronCandidateEnd = intronCandidate.getEnd();
             boolean isStartIntron = false;
             boolean isEndIntron = false;
-            CodingSequence previousCds = null;
-
-
-            for (CodingSequence cds : transcriptToCheck.getCds()) {
-                if (previousCds != null) {
-                    if (previousCds.getInterval().getEnd() + 1 >= intronCandidateStart && cds.getInterval().getStart() - 1 <= intronCandidateEnd) {
-                        if (previousCds.getInterval().getEnd() + 1 == intronCandidateStart && cds.getInterval().getStart() - 1 == intronCandidateEnd) {
-                            spliceVariantTranscripts.add(transcriptToCheck.getTranscriptID());
-                            break;
-                        } else if (previousCds.getInterval().getEnd() + 1 == intronCandidateStart) {
-                            isStartIntron = true;
-                            intronsToAdd.add(new Interval(intronCandidateStart, cds.getInterval().getStart() - 1));
-                        } else if (cds.getInterval().getStart() - 1 == intronCandidateEnd) {
-                            isEndIntron = true;
-                            intronsToAdd.add(new Interval(previousCds.getInterval().getEnd() + 1, intronCandidateEnd));
-                        } else {
-                            intronsToAdd.add(new Interval(previousCds.getInterval().getEnd() + 1, cds.getInterval().getStart() - 1));
-                        }
+            int[] cdsStarts = transcriptToCheck.getCdsStarts();
+            int[] cdsEnds = transcriptToCheck.getCdsEnds();
+
+            for (int i = 1; i < cdsStarts.length; i++) {
+                int previousCdsEnd = cdsEnds[i - 1];
+                int cdsStart = cdsStarts[i];
+                if (previousCdsEnd + 1 >= intronCandidateStart && cdsStart - 1 <= intronCandidateEnd) {
+                    if (previousCdsEnd + 1 == intronCandidateStart && cdsStart - 1 == intronCandidateEnd) {
+                        spliceVariantTranscripts.add(transcriptToCheck.getTranscriptID());
+                        break;
+                    } else if (previousCdsEnd + 1 == intronCandidateStart) {
+                        isStartIntron = true;
+                        intronsToAdd.add(new Interval(intronCandidateStart, cdsStart - 1));
+                    } else if (cdsStart - 1 == intronCandidateEnd) {
+                        isEndIntron = true;
+                        intronsToAdd.add(new Interval(previousCdsEnd + 1, intronCandidateEnd));
+                    } else {
+                        intronsToAdd.add(new Interval(previousCdsEnd + 1, cdsStart - 1));
                     }
                 }
-                previousCds = cds;
             }
             if (isStartIntron && isEndIntron) {
                 wildTypeTranscripts.add(transcriptToCheck.getTranscriptID());
@@ -125,7 +133,7 @@ public class ExonSkip {
                 .setSymbol(gene.getGeneName())
                 .setChr(gene.getSeqname())
                 .setStrand(gene.getStrand())
-                .setNprots((int) gene.getTranscripts().values().stream().map(Transcript::getCds).filter(cds -> cds != null && !cds.isEmpty()).count())
+                .setNprots((int) gene.getTranscripts().values().stream().filter(transcript -> transcript.getCdsCount() > 0).count())
                 .setNtrans(gene.getTranscripts().size())
                 .setSV(new Interval(intronCandidate))
                 .setWT(new TreeSet<>(wildTypeIntrons))
@@ -142,11 +150,12 @@ public class ExonSkip {
         return transcriptIDs.stream()
                 .map(gene::getTranscript)
                 .map(transcript -> {
-                    String proteinID = transcript.getCds().getFirst().getProteinID();
+                    CodingSequence firstCds = transcript.getCds(0);
+                    String proteinID = firstCds.getProteinID();
                     if (proteinID != null) {
                         return proteinID;
                     }
-                    String ccdsID = transcript.getCds().getFirst().getCcdsID();
+                    String ccdsID = firstCds.getCcdsID();
                     return Objects.requireNonNullElse(ccdsID, "NONE");
                 }).collect(Collectors.toSet());
     }
@@ -162,10 +171,12 @@ public class ExonSkip {
             int skippedExons = 0;
             int skippedBases = 0;
             // Find the number of exons that lie within the intron
-            for (CodingSequence cds : t.getCds()) {
-                if (intron.getStart() <= cds.getInterval().getStart() && intron.getEnd() >= cds.getInterval().getEnd()) {
+            int[] cdsStarts = t.getCdsStarts();
+            int[] cdsEnds = t.getCdsEnds();
+            for (int i = 0; i < cdsStarts.length; i++) {
+                if (intron.getStart() <= cdsStarts[i] && intron.getEnd() >= cdsEnds[i]) {
                     skippedExons++;
-                    skippedBases += cds.getInterval().getLength();
+                    skippedBases += cdsEnds[i] - cdsStarts[i] + 1;
                 }
             }
             minSkippedExons = Math.min(minSkippedExons, skippedExons);
@@ -225,7 +236,7 @@ public class ExonSkip {
         int totalGenes = gtfAnnotation.getGenes().size();
         output.append("Total genes\t").append(totalGenes).append("\n");
         int totalGenesWithCDS = (int) gtfAnnotation.getGenes().values().stream()
-                .filter(gene -> gene.getTranscripts().values().stream().anyMatch(transcript -> !transcript.getCds().isEmpty()))
+                .filter(gene -> gene.getTranscripts().values().stream().anyMatch(transcript -> transcript.getCdsCount() > 0))
                 .count();
         output.append("Total genes with CDS\t").append(totalGenesWithCDS).append("\n");
         int totalGenesWithoutCDS = totalGenes - totalGenesWithCDS;
@@ -254,7 +265,7 @@ public class ExonSkip {
         output.append("Total gene length\t").append(totalGeneLength).append("\n");
 
         long totalGeneLengthWithCDS = gtfAnnotation.getGenes().values().stream()
-                .filter(gene -> gene.getTranscripts().values().stream().anyMatch(transcript -> !transcript.getCds().isEmpty()))
+                .filter(gene -> gene.getTranscripts().values().stream().anyMatch(transcript -> transcript.getCdsCount() > 0))
                 .mapToLong(gene -> {
                     Interval interval = gene.getInterval();
                     if (interval != null) {
@@ -282,19 +293,19 @@ public class ExonSkip {
 
 
         int totalTranscriptsWithCDS = gtfAnnotation.getGenes().values().stream()
-                .mapToInt(gene -> (int) gene.getTranscripts().values().stream().filter(transcript -> !transcript.getCds().isEmpty()).count())
+                .mapToInt(gene -> (int) gene.getTranscripts().values().stream().filter(transcript -> transcript.getCdsCount() > 0).count())
                 .sum();
         output.append("Total transcripts with CDS\t").append(totalTranscriptsWithCDS).append("\n");
         int totalTranscriptsWithoutCDs = totalTranscripts - totalTranscriptsWithCDS;
         output.append("Total transcripts without CDS\t").append(totalTranscriptsWithoutCDs).append("\n");
         int totalExons = gtfAnnotation.getGenes().values().stream()
                 .flatMap(gene -> gene.getTranscripts().values().stream())
-                .mapToInt(transcript -> transcript.getExons().size())
+                .mapToInt(Transcript::getExonCount)
                 .sum();
         output.append("Total exons\t").append(totalExons).append("\n");
         int totalCDS = gtfAnnotation.getGenes().values().stream()
                 .flatMap(gene -> gene.getTranscripts().values().stream())
-                .mapToInt(transcript -> transcript.getCds().size())
+                .mapToInt(Transcript::getCdsCount)
                 .sum();
         output.append("Total CDS\t").append(totalCDS).append("\n");
         int totalIntrons = gtfAnnotation.getGenes().values().stream()
@@ -336,8 +347,8 @@ public class ExonSkip {
                                 .sum()) + "\t" +
                         geneExonSkippingEevents + "\t" +
                         gene.getTranscripts().size() + "\t" +
-                        gene.getTranscripts().values().stream().mapToInt(transcript -> transcript.getCds().size()).sum() + "\t" +
-                        gene.getTranscripts().values().stream().mapToInt(transcript -> transcript.getExons().size()).sum() + "\t" +
+                        gene.getTranscripts().values().stream().mapToInt(Transcript::getCdsCount).sum() + "\t" +
+                        gene.getTranscripts().values().stream().mapToInt(Transcript::getExonCount).sum() + "\t" +
                         gene.getIntrons().size() + "\n");
             }
         } catch (IOException e) {
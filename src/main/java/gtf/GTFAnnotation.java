@@ -1,12 +1,39 @@
 package gtf;
 
 import gtf.structs.Gene;
+import gtf.structs.Transcript;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 public class GTFAnnotation {
-    private Map<String, Gene> genes = new HashMap<>();
+    /**
+     * Order of the dense gene indices: by chromosome, start and gene ID, so that every tool (and a
+     * {@link parsers.GTFStore}) numbers the genes of the same GTF file the same way.
+     */
+    public static final Comparator<Gene> GENE_ORDER = Comparator.comparing(Gene::getSeqname)
+            .thenComparingInt(gene -> gene.getInterval() == null ? 0 : gene.getInterval().getStart())
+            .thenComparing(Gene::getGeneID);
+    /**
+     * Order of the transcripts of a gene in the dense transcript indices.
+     */
+    public static final Comparator<Transcript> TRANSCRIPT_ORDER = Comparator.comparing(Transcript::getTranscriptID);
+
+    private Map<String, Gene> genes;
+    // Set by freeze()
+    private Gene[] genesByIndex;
+    private Transcript[] transcriptsByIndex;
+    private int[] transcriptGenes;
+
+    public GTFAnnotation() {
+        this.genes = new HashMap<>();
+    }
+
+    /**
+     * @param genes the genes by gene ID, e.g. a read-only view of a {@link parsers.GTFStore}
+     */
+    public GTFAnnotation(Map<String, Gene> genes) {
+        this.genes = genes;
+    }
 
     public Map<String, Gene> getGenes() {
         return genes;
@@ -17,9 +44,106 @@ public class GTFAnnotation {
     }
 
     public void addGene(Gene gene) {
+        if (isFrozen()) {
+            throw new IllegalStateException("Annotation is frozen");
+        }
         genes.put(gene.getGeneID(), gene);
     }
     public Gene getGene(String geneID) {
         return genes.get(geneID);
     }
+
+    /**
+     * Compacts the exons and CDS of all transcripts into arrays once the annotation is complete, see
+     * {@link gtf.structs.Transcript#freeze()}, and numbers the genes and transcripts densely from 0 in
+     * {@link #GENE_ORDER} and {@link #TRANSCRIPT_ORDER}. Per gene or transcript data can then be kept in arrays indexed
+     * by {@link Gene#getIndex()} and {@link Transcript#getIndex()}.
+     */
+    public void freeze() {
+        long startTime = System.currentTimeMillis();
+        genes.values().parallelStream().forEach(Gene::freeze);
+        genesByIndex = genes.values().toArray(new Gene[0]);
+        Arrays.sort(genesByIndex, GENE_ORDER);
+        int transcriptCount = 0;
+        for (Gene gene : genesByIndex) {
+            transcriptCount += gene.getTranscripts().size();
+        }
+        transcriptsByIndex = new Transcript[transcriptCount];
+        transcriptGenes = new int[transcriptCount];
+        int t = 0;
+        for (int g = 0; g < genesByIndex.length; g++) {
+            genesByIndex[g].setIndex(g);
+            Transcript[] geneTranscripts = genesByIndex[g].getTranscripts().values().toArray(new Transcript[0]);
+            Arrays.sort(geneTranscripts, TRANSCRIPT_ORDER);
+            for (Transcript transcript : geneTranscripts) {
+                transcript.setIndex(t);
+                transcriptsByIndex[t] = transcript;
+                transcriptGenes[t++] = g;
+            }
+        }
+        System.out.println("LOG: Time to freeze annotation: " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    public boolean isFrozen() {
+        return genesByIndex != null;
+    }
+
+    /**
+     * @return the gene with the dense index, the annotation has to be frozen
+     */
+    public Gene getGene(int index) {
+        checkFrozen();
+        return genesByIndex[index];
+    }
+
+    /**
+     * @return the transcript with the dense index, the annotation has to be frozen
+     */
+    public Transcript getTranscript(int index) {
+        checkFrozen();
+        return transcriptsByIndex[index];
+    }
+
+    /**
+     * @return the gene of the transcript with the dense index, the annotation has to be frozen
+     */
+    public Gene getGeneOfTranscript(int transcriptIndex) {
+        checkFrozen();
+        return genesByIndex[transcriptGenes[transcriptIndex]];
+    }
+
+    public int getGeneCount() {
+        return genes.size();
+    }
+
+    /**
+     * @return the number of transcripts of all genes, the annotation has to be frozen
+     */
+    public int getTranscriptCount() {
+        checkFrozen();
+        return transcriptsByIndex.length;
+    }
+
+    private void checkFrozen() {
+        if (!isFrozen()) {
+            throw new IllegalStateException("Annotation is not frozen");
+        }
+    }
+
+    /**
+     * Merges an annotation that was parsed from a later part of the same GTF file into this one.
+     * The result is the same as if all lines had been parsed into this annotation.
+     *
+     * @param later the annotation of the lines following the lines of this annotation
+     */
+    public void merge(GTFAnnotation later) {
+        for (Gene gene : later.genes.values()) {
+            Gene existing = genes.get(gene.getGeneID());
+            if (existing == null) {
+                addGene(gene);
+            } else {
+                existing.merge(gene);
+            }
+        }
+    }
 }
@@ -5,30 +5,50 @@ import gtf.structs.ChromosomeTreePair;
 import gtf.structs.Gene;
 import gtf.types.StrandDirection;
 
-import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 public class GTFTreeAnnotationTemp {
     // TODO Refactor GTF Parsing, make this calculate when needed only
-    HashMap<String, ChromosomeTreePair> chromosomeTreePairHashMap = new HashMap<>();
+    Map<String, ChromosomeTreePair> chromosomeTreePairHashMap = new ConcurrentHashMap<>();
 
+    /**
+     * Builds the tree pairs of the chromosomes in parallel, every tree from all of its genes at once.
+     */
     public GTFTreeAnnotationTemp(GTFAnnotation gtfAnnotation) {
         long time = System.currentTimeMillis();
-        for (Gene gene : gtfAnnotation.getGenes().values()) {
-            String chromosome = gene.getSeqname();
-            if (!chromosomeTreePairHashMap.containsKey(chromosome)) {
-                chromosomeTreePairHashMap.put(chromosome, new ChromosomeTreePair());
-
-            }
-            ChromosomeTreePair chromosomeTreePair = chromosomeTreePairHashMap.get(chromosome);
-            if (gene.getStrand() == StrandDirection.FORWARD) {
-                chromosomeTreePair.getPlusTree().add(gene);
-            } else if (gene.getStrand() == StrandDirection.REVERSE) {
-                chromosomeTreePair.getMinusTree().add(gene);
-            }
-        }
+        Map<String, List<Gene>> genesByChromosome = gtfAnnotation.getGenes().values().stream().collect(Collectors.groupingBy(Gene::getSeqname));
+        genesByChromosome.entrySet().parallelStream().forEach(chromosomeGenes -> {
+            Map<StrandDirection, List<Gene>> genesByStrand = chromosomeGenes.getValue().stream().collect(Collectors.groupingBy(Gene::getStrand));
+            chromosomeTreePairHashMap.put(chromosomeGenes.getKey(), new ChromosomeTreePair(
+                    new IntervalTree<>(genesByStrand.getOrDefault(StrandDirection.FORWARD, List.of())),
+                    new IntervalTree<>(genesByStrand.getOrDefault(StrandDirection.REVERSE, List.of()))));
+        });
         System.out.println("LOG: Total time to build chromosome tree pair: " + (System.currentTimeMillis() - time) + " ms");
     }
 
+    /**
+     * Starts with empty trees, the genes are added one by one with {@link #addGene(Gene)}, e.g. while the GTF is streamed.
+     */
+    public GTFTreeAnnotationTemp() {
+    }
+
+    public void addGene(Gene gene) {
+        String chromosome = gene.getSeqname();
+        if (!chromosomeTreePairHashMap.containsKey(chromosome)) {
+            chromosomeTreePairHashMap.put(chromosome, new ChromosomeTreePair());
+
+        }
+        ChromosomeTreePair chromosomeTreePair = chromosomeTreePairHashMap.get(chromosome);
+        if (gene.getStrand() == StrandDirection.FORWARD) {
+            chromosomeTreePair.getPlusTree().add(gene);
+        } else if (gene.getStrand() == StrandDirection.REVERSE) {
+            chromosomeTreePair.getMinusTree().add(gene);
+        }
+    }
+
     public IntervalTree<Gene> getTree(String chromosome, StrandDirection strand) {
         if (chromosomeTreePairHashMap.containsKey(chromosome)) {
             return chromosomeTreePairHashMap.get(chromosome).getTree(strand);
@@ -3,6 +3,8 @@ package gtf.structs;
 import gtf.types.FrameStarts;
 import gtf.types.StrandDirection;
 
+import java.util.List;
+
 public abstract class AnnotationEntry {
     // GTF line columns to escalate: seqname, source, strand
 
@@ -37,9 +39,11 @@ public abstract class AnnotationEntry {
     private StrandDirection strand;
     // frame - One of '0', '1' or '2'. '0' indicates that the first base of the feature is the first base of a codon, '1' that the second base is the first base of a codon, and so on..
     private FrameStarts frame;
+    // Attributes beyond IDs and names, only set if the parse projected them
+    private ProjectedAttributes projectedAttributes;
 
 
-    public AnnotationEntry(String seqname, String source, String feature, Interval interval, double score, StrandDirection strand, FrameStarts frame) {
+    public AnnotationEntry(String seqname, String source, String feature, Interval interval, double score, StrandDirection strand, FrameStarts frame, ProjectedAttributes projectedAttributes) {
         this.seqname = seqname;
         this.source = source;
         this.feature = feature;
@@ -47,12 +51,14 @@ public abstract class AnnotationEntry {
         this.score = score;
         this.strand = strand;
         this.frame = frame;
+        this.projectedAttributes = projectedAttributes;
     }
 
-    public AnnotationEntry(String seqname, String source, StrandDirection strand) {
+    public AnnotationEntry(String seqname, String source, StrandDirection strand, ProjectedAttributes projectedAttributes) {
         this.seqname = seqname;
         this.source = source;
         this.strand = strand;
+        this.projectedAttributes = projectedAttributes;
     }
 
     public AnnotationEntry() {
@@ -70,6 +76,29 @@ public abstract class AnnotationEntry {
         return strand;
     }
 
+    public ProjectedAttributes getProjectedAttributes() {
+        return projectedAttributes;
+    }
+
+    public void setProjectedAttributes(ProjectedAttributes projectedAttributes) {
+        this.projectedAttributes = projectedAttributes;
+    }
+
+    /**
+     * @param key the attribute key, e.g. {@link GTFAttributes#GENE_BIOTYPE}
+     * @return the first value of the attribute on the line of this entry, null if it was not projected
+     */
+    public String getAttribute(String key) {
+        return projectedAttributes == null ? null : projectedAttributes.get(key);
+    }
+
+    /**
+     * @return all values of the attribute on the line of this entry, e.g. every tag
+     */
+    public List<String> getAttributeValues(String key) {
+        return projectedAttributes == null ? List.of() : projectedAttributes.getAll(key);
+    }
+
     public void overwrite(String seqname, String source, String feature, Interval interval, double score, StrandDirection strand, FrameStarts frame) {
         this.seqname = seqname;
         this.source = source;
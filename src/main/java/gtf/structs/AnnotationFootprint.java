@@ -0,0 +1,323 @@
+package gtf.structs;
+
+import augmentedTree.IntervalTree;
+import gtf.GTFAnnotation;
+import gtf.treecollections.ImplicitIntervalTree;
+import gtf.treecollections.IntervalIndex;
+import gtf.treecollections.IntervalTreeForestManager;
+import gtf.types.StrandDirection;
+
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Estimates how many bytes a loaded {@link GTFAnnotation} retains, split by structure, and the shape of the interval
+ * trees the read annotator builds from it (one tree per chromosome and strand).
+ * <p>
+ * Sizes are estimated for a 64-bit JVM with compressed references (12 byte object headers, 4 byte references, 8 byte
+ * alignment) from the declared fields of the classes, shared objects (symbols, projection keys) are counted once.
+ * GTFAttributes only live while a line is parsed and are not retained.
+ */
+public class AnnotationFootprint {
+    private static final int HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    // TreeMap.Entry and HashMap.Node
+    private static final int TREE_MAP_ENTRY = 40;
+    private static final int HASH_MAP_NODE = 32;
+    // AugmentedTreeMap.Entry (key, value, augmentation, left, right, parent, color) and its MutableInteger augmentation,
+    // for the trees of the AugmentedTree jar
+    private static final int INTERVAL_TREE_NODE = align(HEADER + 6 * REFERENCE + 1) + align(HEADER + Integer.BYTES);
+    private static final Map<Class<?>, Long> SHALLOW_SIZES = new HashMap<>();
+
+    private final Map<String, long[]> structures = new LinkedHashMap<>();
+    private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int treeCount;
+    private long treeNodes;
+    private int maxTreeDepth;
+    private long treeDepthSum;
+    // nodes with 0, 1 and 2 children
+    private final long[] fanOut = new long[3];
+
+    private AnnotationFootprint() {
+        for (String structure : List.of("Gene", "Transcript", "Exon", "CodingSequence", "Frozen exon/CDS arrays", "Interval", "String", "Transcript maps", "TreeSets", "ProjectedAttributes", "Interval trees")) {
+            structures.put(structure, new long[2]);
+        }
+    }
+
+    /**
+     * Walks the annotation and builds the default interval trees of the forests from its genes. For a store backed
+     * annotation this creates every gene once.
+     *
+     * @param gtfAnnotation the annotation to measure
+     * @return the footprint
+     */
+    public static AnnotationFootprint measure(GTFAnnotation gtfAnnotation) {
+        return measure(gtfAnnotation, IntervalTreeForestManager.DEFAULT_TREE_FACTORY);
+    }
+
+    /**
+     * @param treeFactory creates the trees, the one of the forest
+     * @see #measure(GTFAnnotation)
+     */
+    public static AnnotationFootprint measure(GTFAnnotation gtfAnnotation, Supplier<IntervalIndex<Gene>> treeFactory) {
+        AnnotationFootprint footprint = new AnnotationFootprint();
+        Map<String, IntervalIndex<Gene>> trees = new HashMap<>();
+        for (Gene gene : gtfAnnotation.getGenes().values()) {
+            footprint.addGene(gene);
+            if (gene.getInterval() != null) {
+                trees.computeIfAbsent(gene.getSeqname() + (gene.getStrand() == StrandDirection.REVERSE ? "-" : "+"), k -> treeFactory.get()).add(gene);
+            }
+        }
+        for (IntervalIndex<Gene> tree : trees.values()) {
+            tree.index();
+            footprint.treeCount++;
+            if (tree instanceof ImplicitIntervalTree<Gene> implicit) {
+                footprint.addImplicitTree(implicit);
+            } else if (tree instanceof IntervalTree<?> augmented) {
+                footprint.addAugmentedTree(augmented);
+            } else {
+                // unknown layout, only the nodes are counted
+                footprint.treeNodes += tree.size();
+            }
+        }
+        return footprint;
+    }
+
+    private void addGene(Gene gene) {
+        add("Gene", shallowSize(Gene.class));
+        addEntryFields(gene);
+        addString(gene.getGeneID());
+        addString(gene.getGeneName());
+        add("Transcript maps", hashMapSize(gene.getTranscripts().size()));
+        if (gene.getIntrons() != null) {
+            add("TreeSets", treeSetSize(gene.getIntrons().size()));
+            for (Interval intron : gene.getIntrons()) {
+                add("Interval", shallowSize(Interval.class));
+            }
+        }
+        for (Transcript transcript : gene.getTranscripts().values()) {
+            add("Transcript", shallowSize(Transcript.class));
+            addEntryFields(transcript);
+            addString(transcript.getTranscriptID());
+            addString(transcript.getTranscriptName());
+            if (transcript.isFrozen()) {
+                addFrozen(transcript.getFrozenExons());
+                addFrozen(transcript.getFrozenCds());
+            } else {
+                add("TreeSets", treeSetSize(transcript.getExons().size()) + treeSetSize(transcript.getCds().size()));
+                for (Exon exon : transcript.getExons()) {
+                    add("Exon", shallowSize(Exon.class));
+                    addEntryFields(exon);
+                    addString(exon.getExonID());
+                    addString(exon.getExonNumber());
+                }
+                for (CodingSequence cds : transcript.getCds()) {
+                    add("CodingSequence", shallowSize(CodingSequence.class));
+                    addEntryFields(cds);
+                    addString(cds.getProteinID());
+                    addString(cds.getCcdsID());
+                    addString(cds.getExonNumber());
+                }
+            }
+        }
+    }
+
+    private void addEntryFields(AnnotationEntry entry) {
+        if (entry.getInterval() != null) {
+            add("Interval", shallowSize(Interval.class));
+        }
+        addString(entry.getSeqname());
+        addString(entry.getSource());
+        addString(entry.getFeature());
+        addProjectedAttributes(entry.getProjectedAttributes());
+    }
+
+    private void addFrozen(FrozenEntries frozen) {
+        if (!seen.add(frozen)) {
+            // the shared empty entries
+            return;
+        }
+        int size = frozen.size();
+        // starts, ends, scores, frames, sources and the id columns
+        String[][] idColumns = frozen.exonIDs != null ? new String[][]{frozen.exonIDs, frozen.exonNumbers} : new String[][]{frozen.proteinIDs, frozen.ccdsIDs, frozen.exonNumbers};
+        long bytes = shallowSize(FrozenEntries.class) + 2 * intArraySize(size) + align(ARRAY_HEADER + (long) Double.BYTES * size) + (2 + idColumns.length) * referenceArraySize(size);
+        for (int i = 0; i < size; i++) {
+            addString(frozen.sources[i]);
+            for (String[] column : idColumns) {
+                addString(column[i]);
+            }
+            addProjectedAttributes(frozen.getAttributes(i));
+        }
+        if (frozen.attributes != null) {
+            bytes += referenceArraySize(size);
+        }
+        add("Frozen exon/CDS arrays", bytes);
+    }
+
+    private void addProjectedAttributes(ProjectedAttributes attributes) {
+        if (attributes == null || !seen.add(attributes)) {
+            return;
+        }
+        add("ProjectedAttributes", shallowSize(ProjectedAttributes.class) + referenceArraySize(attributes.getValues().length));
+        for (String value : attributes.getValues()) {
+            addString(value);
+        }
+    }
+
+    private void addString(String string) {
+        if (string == null || !seen.add(string)) {
+            return;
+        }
+        // Latin-1 strings, one byte per character
+        add("String", shallowSize(String.class) + align(ARRAY_HEADER + (long) string.length()));
+    }
+
+    private void addImplicitTree(ImplicitIntervalTree<Gene> tree) {
+        int size = tree.size();
+        int maxLevel = tree.getMaxLevel();
+        // once indexed the intervals and the starts, stops, largest stops and prefix largest stops fill their arrays
+        add("Interval trees", shallowSize(ImplicitIntervalTree.class) + referenceArraySize(size) + 4 * intArraySize(size));
+        for (int i = 0; i < size; i++) {
+            // the node at index i has the level of the trailing ones of i, its children are i -/+ 2^(level-1)
+            int level = Integer.numberOfTrailingZeros(~i);
+            int depth = maxLevel - level + 1;
+            int children = level == 0 ? 0 : 1 + (i + (1 << (level - 1)) < size ? 1 : 0);
+            fanOut[children]++;
+            treeNodes++;
+            treeDepthSum += depth;
+            maxTreeDepth = Math.max(maxTreeDepth, depth);
+        }
+    }
+
+    private void addAugmentedTree(IntervalTree<?> tree) {
+        add("Interval trees", shallowSize(IntervalTree.class) + (long) INTERVAL_TREE_NODE * tree.size());
+        // toTreeString writes one node per line, indented by its depth, children follow their parent
+        String[] lines = tree.toTreeString().split("\n");
+        Deque<int[]> path = new ArrayDeque<>();
+        for (String line : lines) {
+            if (line.isBlank()) {
+                continue;
+            }
+            int depth = 0;
+            while (depth < line.length() && line.charAt(depth) == ' ') {
+                depth++;
+            }
+            while (!path.isEmpty() && path.peek()[0] >= depth) {
+                fanOut[path.pop()[1]]++;
+            }
+            if (!path.isEmpty()) {
+                path.peek()[1]++;
+            }
+            path.push(new int[]{depth, 0});
+            treeNodes++;
+            treeDepthSum += depth + 1;
+            maxTreeDepth = Math.max(maxTreeDepth, depth + 1);
+        }
+        while (!path.isEmpty()) {
+            fanOut[path.pop()[1]]++;
+        }
+    }
+
+    private void add(String structure, long bytes) {
+        long[] countAndBytes = structures.get(structure);
+        countAndBytes[0]++;
+        countAndBytes[1] += bytes;
+    }
+
+    /**
+     * @return the estimated bytes of all structures
+     */
+    public long getTotalBytes() {
+        return structures.values().stream().mapToLong(countAndBytes -> countAndBytes[1]).sum();
+    }
+
+    /**
+     * @return the estimated object count and bytes of the structure, e.g. "Exon"
+     */
+    public long[] getStructure(String structure) {
+        return structures.get(structure).clone();
+    }
+
+    public int getMaxTreeDepth() {
+        return maxTreeDepth;
+    }
+
+    public long getTreeNodes() {
+        return treeNodes;
+    }
+
+    public void print(PrintStream out) {
+        out.println("LOG: Annotation footprint (estimated, compressed references)");
+        out.printf("%-24s %12s %14s%n", "structure", "objects", "bytes");
+        for (Map.Entry<String, long[]> structure : structures.entrySet()) {
+            out.printf("%-24s %12d %14d%n", structure.getKey(), structure.getValue()[0], structure.getValue()[1]);
+        }
+        out.printf("%-24s %12s %14d (%.1f MB)%n", "total", "", getTotalBytes(), getTotalBytes() / 1048576.0);
+        out.println("GTFAttributes are only used while parsing and not retained");
+        out.printf("Interval trees: %d trees, %d nodes, max depth %d, mean depth %.2f, nodes with 0/1/2 children %d/%d/%d%n",
+                treeCount, treeNodes, maxTreeDepth, treeNodes == 0 ? 0.0 : (double) treeDepthSum / treeNodes, fanOut[0], fanOut[1], fanOut[2]);
+    }
+
+    private static long shallowSize(Class<?> type) {
+        synchronized (SHALLOW_SIZES) {
+            return SHALLOW_SIZES.computeIfAbsent(type, AnnotationFootprint::computeShallowSize);
+        }
+    }
+
+    private static long computeShallowSize(Class<?> type) {
+        long size = HEADER;
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                Class<?> fieldType = field.getType();
+                if (fieldType == long.class || fieldType == double.class) {
+                    size += 8;
+                } else if (fieldType == int.class || fieldType == float.class) {
+                    size += 4;
+                } else if (fieldType == short.class || fieldType == char.class) {
+                    size += 2;
+                } else if (fieldType == byte.class || fieldType == boolean.class) {
+                    size += 1;
+                } else {
+                    size += REFERENCE;
+                }
+            }
+        }
+        return align(size);
+    }
+
+    private static long intArraySize(int length) {
+        return align(ARRAY_HEADER + (long) Integer.BYTES * length);
+    }
+
+    private static long referenceArraySize(int length) {
+        return align(ARRAY_HEADER + (long) REFERENCE * length);
+    }
+
+    private static long hashMapSize(int entries) {
+        int capacity = 16;
+        while (capacity * 0.75 < entries) {
+            capacity <<= 1;
+        }
+        return 48 + referenceArraySize(capacity) + (long) HASH_MAP_NODE * entries;
+    }
+
+    private static long treeSetSize(int entries) {
+        // TreeSet and its TreeMap
+        return 16 + 48 + (long) TREE_MAP_ENTRY * entries;
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -9,7 +9,7 @@ public class CodingSequence extends AnnotationEntry implements Comparable<Coding
     private final String exonNumber;
 
     public CodingSequence(String seqname, String source, String feature, Interval interval, double score, StrandDirection strand, FrameStarts frame, GTFAttributes GTFAttributes) {
-        super(seqname, source, feature, interval, score, strand, frame);
+        super(seqname, source, feature, interval, score, strand, frame, GTFAttributes.getProjectedAttributes());
         this.proteinID = GTFAttributes.getProteinID();
         this.ccdsID = GTFAttributes.getCcdsID();
         this.exonNumber = GTFAttributes.getExonNumber();
@@ -23,6 +23,10 @@ public class CodingSequence extends AnnotationEntry implements Comparable<Coding
         return ccdsID;
     }
 
+    public String getExonNumber() {
+        return exonNumber;
+    }
+
     @Override
     public int compareTo(CodingSequence o) {
         return Integer.compare(this.getInterval().getStart(), o.getInterval().getStart());
@@ -9,11 +9,19 @@ public class Exon extends AnnotationEntry implements Comparable<Exon> {
 
     // If we read a EXON line
     public Exon(String seqname, String source, String feature, Interval interval, double score, StrandDirection strand, FrameStarts frame, GTFAttributes GTFAttributes) {
-        super(seqname, source, feature, interval, score, strand, frame);
+        super(seqname, source, feature, interval, score, strand, frame, GTFAttributes.getProjectedAttributes());
         this.exonNumber = GTFAttributes.getExonNumber();
         this.exonID = GTFAttributes.getExonID();
     }
 
+    public String getExonID() {
+        return exonID;
+    }
+
+    public String getExonNumber() {
+        return exonNumber;
+    }
+
     @Override
     public int compareTo(Exon other) {
         int startComparison = Integer.compare(this.getInterval().getStart(), other.getInterval().getStart());
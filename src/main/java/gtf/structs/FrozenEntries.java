@@ -0,0 +1,78 @@
+package gtf.structs;
+
+import gtf.types.FrameStarts;
+
+import java.util.Collection;
+
+/**
+ * The exons or CDS of a frozen transcript as parallel arrays in the order of the transcript (start, then end).
+ * Seqname, source and strand are the ones of the transcript.
+ */
+final class FrozenEntries {
+    static final FrozenEntries EMPTY = new FrozenEntries(0, false);
+
+    final int[] starts;
+    final int[] ends;
+    final double[] scores;
+    final FrameStarts[] frames;
+    // the canonical source of every entry (SymbolTable)
+    final String[] sources;
+    // exon ID for exons, protein ID and CCDS ID for CDS, null for the other kind
+    final String[] exonIDs;
+    final String[] proteinIDs;
+    final String[] ccdsIDs;
+    final String[] exonNumbers;
+    // null if no entry has projected attributes
+    ProjectedAttributes[] attributes;
+
+    private FrozenEntries(int size, boolean cds) {
+        starts = new int[size];
+        ends = new int[size];
+        scores = new double[size];
+        frames = new FrameStarts[size];
+        sources = new String[size];
+        exonIDs = cds ? null : new String[size];
+        proteinIDs = cds ? new String[size] : null;
+        ccdsIDs = cds ? new String[size] : null;
+        exonNumbers = new String[size];
+    }
+
+    static FrozenEntries of(Collection<? extends AnnotationEntry> entries) {
+        if (entries.isEmpty()) {
+            return EMPTY;
+        }
+        FrozenEntries frozen = new FrozenEntries(entries.size(), entries.iterator().next() instanceof CodingSequence);
+        int i = 0;
+        for (AnnotationEntry entry : entries) {
+            frozen.starts[i] = entry.getInterval().getStart();
+            frozen.ends[i] = entry.getInterval().getEnd();
+            frozen.scores[i] = entry.getScore();
+            frozen.frames[i] = entry.getFrame();
+            frozen.sources[i] = SymbolTable.intern(entry.getSource());
+            if (entry instanceof Exon exon) {
+                frozen.exonIDs[i] = exon.getExonID();
+                frozen.exonNumbers[i] = exon.getExonNumber();
+            } else if (entry instanceof CodingSequence cds) {
+                frozen.proteinIDs[i] = cds.getProteinID();
+                frozen.ccdsIDs[i] = cds.getCcdsID();
+                frozen.exonNumbers[i] = cds.getExonNumber();
+            }
+            if (entry.getProjectedAttributes() != null) {
+                if (frozen.attributes == null) {
+                    frozen.attributes = new ProjectedAttributes[entries.size()];
+                }
+                frozen.attributes[i] = entry.getProjectedAttributes();
+            }
+            i++;
+        }
+        return frozen;
+    }
+
+    int size() {
+        return starts.length;
+    }
+
+    ProjectedAttributes getAttributes(int i) {
+        return attributes == null ? null : attributes[i];
+    }
+}
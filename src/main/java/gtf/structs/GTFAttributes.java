@@ -13,6 +13,12 @@ public class GTFAttributes {
     public static final String PROTEIN_ID = "protein_id";
     public static final String CCDS_ID = "ccds_id";
     public static final String CCDS_ID2 = "ccdsid";
+    // Not part of the model, only available through an attribute projection
+    public static final String GENE_BIOTYPE = "gene_biotype";
+    // GENCODE name of the gene biotype
+    public static final String GENE_TYPE = "gene_type";
+    public static final String TRANSCRIPT_BIOTYPE = "transcript_biotype";
+    public static final String TAG = "tag";
     // Gene
     private String geneID;
     private String geneName;
@@ -25,6 +31,8 @@ public class GTFAttributes {
     // CDS
     private String proteinID; //not always present: rely on
     private String ccdsID; //not always present
+    // Attributes beyond IDs and names, null if the parse did not project any
+    private ProjectedAttributes projectedAttributes;
 
     public GTFAttributes(Builder builder) {
         this.geneID = builder.geneID;
@@ -35,6 +43,7 @@ public class GTFAttributes {
         this.exonNumber = builder.exonNumber;
         this.proteinID = builder.proteinID;
         this.ccdsID = builder.ccdsID;
+        this.projectedAttributes = builder.projectedAttributes;
     }
 
     @Deprecated
@@ -220,7 +229,11 @@ public class GTFAttributes {
         this.ccdsID = ccdsID;
     }
 
-    static class Builder {
+    public ProjectedAttributes getProjectedAttributes() {
+        return projectedAttributes;
+    }
+
+    public static class Builder {
         // Gene
         private String geneID;
         private String geneName;
@@ -233,6 +246,7 @@ public class GTFAttributes {
         // CDS
         private String proteinID; //not always present: rely on
         private String ccdsID; //not always present
+        private ProjectedAttributes projectedAttributes;
 
         public Builder() {
         }
@@ -268,6 +282,21 @@ public class GTFAttributes {
         public void setCcdsID(String ccdsID) {
             this.ccdsID = ccdsID;
         }
+        public void setProjectedAttributes(ProjectedAttributes projectedAttributes) {
+            this.projectedAttributes = projectedAttributes;
+        }
+
+        /**
+         * @return true if the IDs the type needs are set, without the names
+         */
+        public boolean hasIDAttributes(AnnotationTypes type) {
+            return switch (type) {
+                case GENE -> geneID != null;
+                case TRANSCRIPT, EXON -> geneID != null && transcriptID != null;
+                case CDS -> geneID != null && transcriptID != null && proteinID != null;
+            };
+        }
+
         public boolean hasGeneAttributes() {
             return geneID != null && geneName != null;
         }
@@ -3,6 +3,7 @@ package gtf.structs;
 import gtf.types.FrameStarts;
 import gtf.types.StrandDirection;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -14,10 +15,16 @@ public class Gene extends AnnotationEntry implements augmentedTree.Interval {
     private final Map<String, Transcript> transcripts;
     // Only when process introns is run
     private Set<Interval> introns;
+    // Dense index in the annotation, -1 until the annotation is frozen
+    private int index = -1;
+    // The exons of all transcripts merged into disjoint ranges, start and end pairs sorted by start. Computed on first use
+    private volatile int[] mergedExons;
+    // The splice junctions of the transcripts, computed on first use
+    private volatile JunctionIndex junctionIndex;
 
     //If we read a gene line
     public Gene(String seqname, String source, String feature, Interval interval, double score, StrandDirection strand, FrameStarts frame, GTFAttributes GTFAttributes) {
-        super(seqname, source, feature, interval, score, strand, frame);
+        super(seqname, source, feature, interval, score, strand, frame, GTFAttributes.getProjectedAttributes());
         this.geneID = GTFAttributes.getGeneID();
         this.geneName = GTFAttributes.getGeneName();
         this.transcripts = new HashMap<>();
@@ -26,7 +33,7 @@ public class Gene extends AnnotationEntry implements augmentedTree.Interval {
 
     //If we read a transcript/exon/cds line
     public Gene(String seqname, String source, StrandDirection strand, GTFAttributes GTFAttributes) {
-        super(seqname, source, strand);
+        super(seqname, source, strand, GTFAttributes.getProjectedAttributes());
         this.geneID = GTFAttributes.getGeneID();
         this.geneName = GTFAttributes.getGeneName();
         this.transcripts = new HashMap<>();
@@ -35,25 +42,150 @@ public class Gene extends AnnotationEntry implements augmentedTree.Interval {
 
     public void addTranscript(Transcript transcript) {
         transcripts.put(transcript.getTranscriptID(), transcript);
+        mergedExons = null;
+        junctionIndex = null;
     }
 
+    /**
+     * Merges the same gene parsed from a later part of the GTF file into this one.
+     * The entry fields are only taken over if the later part contained the gene line, transcripts are merged by ID.
+     *
+     * @param later the gene parsed from the following lines
+     */
+    public void merge(Gene later) {
+        if (later.getInterval() != null) {
+            overwrite(later.getSeqname(), later.getSource(), later.getFeature(), later.getInterval(), later.getScore(), later.getStrand(), later.getFrame());
+            setProjectedAttributes(later.getProjectedAttributes());
+        }
+        for (Transcript transcript : later.transcripts.values()) {
+            Transcript existing = transcripts.get(transcript.getTranscriptID());
+            if (existing == null) {
+                addTranscript(transcript);
+            } else {
+                existing.merge(transcript);
+            }
+        }
+    }
+
+    /**
+     * Freezes the transcripts of the gene ({@link Transcript#freeze()}).
+     */
+    public void freeze() {
+        for (Transcript transcript : transcripts.values()) {
+            transcript.freeze();
+        }
+    }
+
+    /**
+     * Collects the introns between the CDS of all transcripts. Reads the CDS arrays, so the gene has to be frozen
+     * ({@link #freeze()}).
+     */
     public void processIntrons() {
         introns = new TreeSet<>();
         for (Transcript transcript : transcripts.values()) {
-            CodingSequence previousCds = null;
-            for (CodingSequence cds : transcript.getCds()) {
-                if (previousCds != null) {
-                    int intronStart = previousCds.getInterval().getEnd() + 1;
-                    int intronEnd = cds.getInterval().getStart() - 1;
-                    if (intronStart <= intronEnd) {
-                        introns.add(new Interval(intronStart, intronEnd));
-                    }
+            int[] cdsStarts = transcript.getCdsStarts();
+            int[] cdsEnds = transcript.getCdsEnds();
+            for (int i = 1; i < cdsStarts.length; i++) {
+                int intronStart = cdsEnds[i - 1] + 1;
+                int intronEnd = cdsStarts[i] - 1;
+                if (intronStart <= intronEnd) {
+                    introns.add(new Interval(intronStart, intronEnd));
                 }
-                previousCds = cds;
             }
         }
     }
 
+    /**
+     * The exons of all transcripts merged into disjoint ranges, overlapping and adjacent exons are joined. Computed once
+     * on first use, the transcripts have to be frozen. Threads racing on the first use compute the same array.
+     *
+     * @return start and end (inclusive) of every range, sorted by start: [start0, end0, start1, end1, ...]
+     */
+    public int[] getMergedExons() {
+        int[] merged = mergedExons;
+        if (merged == null) {
+            merged = mergeExons();
+            mergedExons = merged;
+        }
+        return merged;
+    }
+
+    private int[] mergeExons() {
+        int exonCount = 0;
+        for (Transcript transcript : transcripts.values()) {
+            exonCount += transcript.getExonStarts().length;
+        }
+        // sort by start on primitive keys, the start in the high and the end in the low bits
+        long[] keys = new long[exonCount];
+        int i = 0;
+        for (Transcript transcript : transcripts.values()) {
+            int[] exonStarts = transcript.getExonStarts();
+            int[] exonEnds = transcript.getExonEnds();
+            for (int j = 0; j < exonStarts.length; j++) {
+                keys[i++] = (long) exonStarts[j] << 32 | (exonEnds[j] & 0xFFFFFFFFL);
+            }
+        }
+        Arrays.sort(keys);
+        int[] merged = new int[2 * exonCount];
+        int size = 0;
+        for (long key : keys) {
+            int start = (int) (key >> 32);
+            int end = (int) key;
+            if (size > 0 && merged[size - 1] >= start - 1) {
+                merged[size - 1] = Math.max(merged[size - 1], end);
+            } else {
+                merged[size++] = start;
+                merged[size++] = end;
+            }
+        }
+        return Arrays.copyOf(merged, size);
+    }
+
+    /**
+     * Computed once on first use like {@link #getMergedExons()}, the transcripts have to be frozen
+     *
+     * @return the index of the splice junctions of the transcripts, to match reads against the transcripts
+     */
+    public JunctionIndex getJunctionIndex() {
+        JunctionIndex index = junctionIndex;
+        if (index == null) {
+            index = new JunctionIndex(transcripts.values());
+            junctionIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * @return true if [start, end] is inside one range of the merged exons, found by binary search
+     */
+    public boolean isInMergedExons(int start, int end) {
+        int[] merged = getMergedExons();
+        // the number of ranges that start up to start, the last of them is the only candidate
+        int low = 0;
+        int high = merged.length / 2;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (merged[2 * mid] <= start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low > 0 && merged[2 * low - 1] >= end;
+    }
+
+    /**
+     * @return the number of positions covered by an exon of any transcript, the gene length for RPKM
+     */
+    public int getExonicLength() {
+        int[] merged = getMergedExons();
+        int length = 0;
+        for (int i = 0; i < merged.length; i += 2) {
+            length += merged[i + 1] - merged[i] + 1;
+        }
+        return length;
+    }
+
     public Set<Interval> getIntrons() {
         return introns;
     }
@@ -94,5 +226,14 @@ public class Gene extends AnnotationEntry implements augmentedTree.Interval {
         return this.getInterval().getEnd();
     }
 
+    /**
+     * @return the dense index of the gene in its annotation, see {@link gtf.GTFAnnotation#freeze()}, or -1
+     */
+    public int getIndex() {
+        return index;
+    }
 
+    public void setIndex(int index) {
+        this.index = index;
+    }
 }
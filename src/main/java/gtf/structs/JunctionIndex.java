@@ -0,0 +1,241 @@
+package gtf.structs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.BiPredicate;
+
+/**
+ * The splice junctions (introns) of the transcripts of a gene, to find the transcripts whose exons cut to a read are
+ * exactly the blocks of the read. The junctions are sorted in a primitive array with the postings (transcript and
+ * intron number) of every junction, so a spliced read only looks at the transcripts that have its rarest junction and
+ * checks the other junctions and its terminal blocks on their exon arrays. Unspliced reads check every transcript with
+ * a binary search over its exons.
+ * <p>
+ * Transcripts with overlapping exons are not indexed, they are checked by the check passed to {@link #findMatches}.
+ */
+public class JunctionIndex {
+    // in the iteration order of the transcripts of the gene
+    private final Transcript[] transcripts;
+    private final int[][] exonStarts;
+    private final int[][] exonEnds;
+    // transcripts with overlapping exons
+    private final int[] irregular;
+    // junctions as intron start in the high and intron end in the low bits, sorted, with the range of their postings
+    private final long[] junctions;
+    private final int[] postingOffsets;
+    // transcript and number of the intron (after which exon), sorted by transcript for every junction
+    private final int[] postingTranscripts;
+    private final int[] postingIntrons;
+
+    public JunctionIndex(Collection<Transcript> transcripts) {
+        this.transcripts = transcripts.toArray(new Transcript[0]);
+        exonStarts = new int[this.transcripts.length][];
+        exonEnds = new int[this.transcripts.length][];
+        int[] irregular = new int[this.transcripts.length];
+        int irregularCount = 0;
+        int intronCount = 0;
+        for (int t = 0; t < this.transcripts.length; t++) {
+            exonStarts[t] = this.transcripts[t].getExonStarts();
+            exonEnds[t] = this.transcripts[t].getExonEnds();
+            if (isRegular(exonStarts[t], exonEnds[t])) {
+                intronCount += Math.max(0, exonStarts[t].length - 1);
+            } else {
+                irregular[irregularCount++] = t;
+            }
+        }
+        this.irregular = Arrays.copyOf(irregular, irregularCount);
+        // sort the introns by junction, then by transcript: junction key and the position of the posting
+        long[][] introns = new long[intronCount][];
+        int i = 0;
+        for (int t = 0; t < this.transcripts.length; t++) {
+            if (Arrays.binarySearch(this.irregular, t) >= 0) {
+                continue;
+            }
+            for (int intron = 0; intron < exonStarts[t].length - 1; intron++) {
+                introns[i++] = new long[]{junction(exonEnds[t][intron] + 1, exonStarts[t][intron + 1] - 1), t, intron};
+            }
+        }
+        Arrays.sort(introns, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        long[] junctions = new long[intronCount];
+        int[] postingOffsets = new int[intronCount + 1];
+        postingTranscripts = new int[intronCount];
+        postingIntrons = new int[intronCount];
+        int junctionCount = 0;
+        for (i = 0; i < intronCount; i++) {
+            if (i == 0 || introns[i][0] != introns[i - 1][0]) {
+                junctions[junctionCount] = introns[i][0];
+                postingOffsets[junctionCount++] = i;
+            }
+            postingTranscripts[i] = (int) introns[i][1];
+            postingIntrons[i] = (int) introns[i][2];
+        }
+        postingOffsets[junctionCount] = intronCount;
+        this.junctions = Arrays.copyOf(junctions, junctionCount);
+        this.postingOffsets = Arrays.copyOf(postingOffsets, junctionCount + 1);
+    }
+
+    /**
+     * @param irregularMatches checks a transcript with overlapping exons against the blocks of a read
+     * @return the transcripts that match the blocks of both reads, in the iteration order of the transcripts of the
+     * gene, null if there are none
+     */
+    public List<Transcript> findMatches(TreeSet<Interval> first, TreeSet<Interval> second, BiPredicate<Transcript, TreeSet<Interval>> irregularMatches) {
+        int[] firstBlocks = blocks(first);
+        int[] secondBlocks = blocks(second);
+        // the candidates of the read with more junctions, the other read is checked on them
+        int[] candidates;
+        int[] otherBlocks;
+        if (firstBlocks.length >= secondBlocks.length) {
+            candidates = candidates(firstBlocks);
+            otherBlocks = secondBlocks;
+        } else {
+            candidates = candidates(secondBlocks);
+            otherBlocks = firstBlocks;
+        }
+        List<Transcript> matches = null;
+        int irregularIndex = 0;
+        for (int candidate : candidates) {
+            // the irregular transcripts in between, to keep the order
+            for (; irregularIndex < irregular.length && irregular[irregularIndex] < candidate; irregularIndex++) {
+                matches = addIrregularMatch(matches, irregular[irregularIndex], first, second, irregularMatches);
+            }
+            if (matches(candidate, otherBlocks)) {
+                if (matches == null) {
+                    matches = new ArrayList<>();
+                }
+                matches.add(transcripts[candidate]);
+            }
+        }
+        for (; irregularIndex < irregular.length; irregularIndex++) {
+            matches = addIrregularMatch(matches, irregular[irregularIndex], first, second, irregularMatches);
+        }
+        return matches;
+    }
+
+    private List<Transcript> addIrregularMatch(List<Transcript> matches, int transcript, TreeSet<Interval> first, TreeSet<Interval> second, BiPredicate<Transcript, TreeSet<Interval>> irregularMatches) {
+        if (irregularMatches.test(transcripts[transcript], first) && irregularMatches.test(transcripts[transcript], second)) {
+            if (matches == null) {
+                matches = new ArrayList<>();
+            }
+            matches.add(transcripts[transcript]);
+        }
+        return matches;
+    }
+
+    /**
+     * @return the regular transcripts that match the blocks, sorted
+     */
+    private int[] candidates(int[] blocks) {
+        if (blocks.length == 0) {
+            return new int[0];
+        }
+        int junctionCount = blocks.length / 2 - 1;
+        if (junctionCount == 0) {
+            int[] candidates = new int[transcripts.length];
+            int size = 0;
+            for (int t = 0; t < transcripts.length; t++) {
+                if (matches(t, blocks)) {
+                    candidates[size++] = t;
+                }
+            }
+            return Arrays.copyOf(candidates, size);
+        }
+        // the junction with the fewest postings
+        int rarest = -1;
+        int rarestJunction = -1;
+        for (int j = 0; j < junctionCount; j++) {
+            int junction = Arrays.binarySearch(junctions, junction(blocks[2 * j + 1] + 1, blocks[2 * j + 2] - 1));
+            if (junction < 0) {
+                return new int[0];
+            }
+            if (rarest < 0 || postingOffsets[junction + 1] - postingOffsets[junction] < postingOffsets[rarest + 1] - postingOffsets[rarest]) {
+                rarest = junction;
+                rarestJunction = j;
+            }
+        }
+        int[] candidates = new int[postingOffsets[rarest + 1] - postingOffsets[rarest]];
+        int size = 0;
+        for (int posting = postingOffsets[rarest]; posting < postingOffsets[rarest + 1]; posting++) {
+            int t = postingTranscripts[posting];
+            // the exon of the first block
+            if (matchesFrom(t, postingIntrons[posting] - rarestJunction, blocks)) {
+                candidates[size++] = t;
+            }
+        }
+        return Arrays.copyOf(candidates, size);
+    }
+
+    /**
+     * @return true if the exons of the regular transcript cut to the span of the blocks are the blocks
+     */
+    private boolean matches(int t, int[] blocks) {
+        if (Arrays.binarySearch(irregular, t) >= 0) {
+            return false;
+        }
+        // the last exon starting up to the read, exons are sorted and disjoint
+        int low = 0;
+        int high = exonStarts[t].length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (exonStarts[t][mid] <= blocks[0]) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return matchesFrom(t, low - 1, blocks);
+    }
+
+    /**
+     * @return true if the blocks are the exons of the transcript from the exon on, the first block can start and the
+     * last block can end inside its exon
+     */
+    private boolean matchesFrom(int t, int exon, int[] blocks) {
+        int blockCount = blocks.length / 2;
+        if (exon < 0 || exon + blockCount > exonStarts[t].length) {
+            return false;
+        }
+        for (int b = 0; b < blockCount; b++) {
+            int start = exonStarts[t][exon + b];
+            int end = exonEnds[t][exon + b];
+            if (b == 0 ? start > blocks[0] : start != blocks[2 * b]) {
+                return false;
+            }
+            if (b == blockCount - 1 ? end < blocks[2 * b + 1] : end != blocks[2 * b + 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isRegular(int[] starts, int[] ends) {
+        for (int i = 1; i < starts.length; i++) {
+            if (starts[i] <= ends[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long junction(int intronStart, int intronEnd) {
+        return (long) intronStart << 32 | (intronEnd & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return start and end of every block of the read
+     */
+    private static int[] blocks(TreeSet<Interval> read) {
+        int[] blocks = new int[2 * read.size()];
+        Iterator<Interval> it = read.iterator();
+        for (int i = 0; it.hasNext(); i += 2) {
+            Interval block = it.next();
+            blocks[i] = block.getStart();
+            blocks[i + 1] = block.getEnd();
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,139 @@
+package gtf.structs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The attributes of a GTF line beyond IDs and names: the extra attributes decoded while parsing and, if kept, the raw
+ * attribute column that is only decoded when an attribute is requested.
+ */
+public class ProjectedAttributes {
+    // keys are shared by all entries of a parse
+    private final String[] keys;
+    private final String[] values;
+    // attribute column [rawOffset, rawOffset + rawLength) of raw, null if not kept
+    private final ByteBuffer raw;
+    private final int rawOffset;
+    private final int rawLength;
+
+    public ProjectedAttributes(String[] keys, String[] values, ByteBuffer raw, int rawOffset, int rawLength) {
+        this.keys = keys;
+        this.values = values;
+        this.raw = raw;
+        this.rawOffset = rawOffset;
+        this.rawLength = rawLength;
+    }
+
+    String[] getValues() {
+        return values;
+    }
+
+    /**
+     * @return the first value of the attribute or null if the line does not have it or it was not projected
+     */
+    public String get(String key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].equals(key)) {
+                return values[i];
+            }
+        }
+        List<String> rawValues = decode(key, true);
+        return rawValues.isEmpty() ? null : rawValues.getFirst();
+    }
+
+    /**
+     * @return all values of the attribute in line order, e.g. every tag, needs the raw attribute column for more than
+     * the first value
+     */
+    public List<String> getAll(String key) {
+        if (raw != null) {
+            return decode(key, false);
+        }
+        String value = get(key);
+        return value == null ? List.of() : List.of(value);
+    }
+
+    public boolean hasRawAttributes() {
+        return raw != null;
+    }
+
+    /**
+     * Scans the raw attribute column with absolute reads, so concurrent calls are safe.
+     */
+    private List<String> decode(String key, boolean firstOnly) {
+        List<String> result = new ArrayList<>(1);
+        if (raw == null) {
+            return result;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int i = rawOffset;
+        int end = rawOffset + rawLength;
+        while (i < end) {
+            while (i < end && (raw.get(i) == ' ' || raw.get(i) == ';')) {
+                i++;
+            }
+            int keyStart = i;
+            while (i < end && raw.get(i) != ' ') {
+                i++;
+            }
+            boolean match = matches(keyBytes, keyStart, i);
+            while (i < end && raw.get(i) == ' ') {
+                i++;
+            }
+            int valueStart;
+            int valueEnd;
+            if (i < end && raw.get(i) == '"') {
+                valueStart = ++i;
+                while (i < end && raw.get(i) != '"') {
+                    i++;
+                }
+                valueEnd = i++;
+            } else {
+                valueStart = i;
+                while (i < end && raw.get(i) != ' ' && raw.get(i) != ';') {
+                    i++;
+                }
+                valueEnd = i;
+            }
+            if (match) {
+                byte[] value = new byte[valueEnd - valueStart];
+                raw.get(valueStart, value);
+                result.add(new String(value, StandardCharsets.UTF_8));
+                if (firstOnly) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean matches(byte[] key, int start, int end) {
+        if (end - start != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (raw.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        if (raw == null) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null) {
+                    sb.append(keys[i]).append(" \"").append(values[i]).append("\"; ");
+                }
+            }
+            return sb.toString().trim();
+        }
+        byte[] bytes = new byte[rawLength];
+        raw.get(rawOffset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
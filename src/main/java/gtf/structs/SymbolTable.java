@@ -0,0 +1,30 @@
+package gtf.structs;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical instances of the low cardinality GTF columns (seqname, source, feature).
+ * A genome annotation has a few hundred distinct values for millions of entries, with one shared instance per value
+ * the entries do not keep their own copies and String.equals on two canonical values is an identity check.
+ */
+public final class SymbolTable {
+    private static final ConcurrentHashMap<String, String> SYMBOLS = new ConcurrentHashMap<>();
+
+    private SymbolTable() {
+    }
+
+    /**
+     * @return the canonical instance equal to the symbol, null for null
+     */
+    public static String intern(String symbol) {
+        if (symbol == null) {
+            return null;
+        }
+        String canonical = SYMBOLS.putIfAbsent(symbol, symbol);
+        return canonical == null ? symbol : canonical;
+    }
+
+    public static int size() {
+        return SYMBOLS.size();
+    }
+}
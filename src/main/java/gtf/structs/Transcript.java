@@ -3,18 +3,28 @@ package gtf.structs;
 import gtf.types.FrameStarts;
 import gtf.types.StrandDirection;
 
+import java.util.Iterator;
 import java.util.TreeSet;
 
 public class Transcript extends AnnotationEntry {
+    // The features of the copies of frozen exons and CDS, the canonical instances the parser uses
+    private static final String EXON_FEATURE = SymbolTable.intern("exon");
+    private static final String CDS_FEATURE = SymbolTable.intern("CDS");
+
     private final String transcriptID;
     private final String transcriptName;
-    // Sorted by start position
-    private final TreeSet<Exon> exons;
-    private final TreeSet<CodingSequence> cds;
+    // Sorted by start position, null once the transcript is frozen
+    private TreeSet<Exon> exons;
+    private TreeSet<CodingSequence> cds;
+    // Set by freeze()
+    private FrozenEntries frozenExons;
+    private FrozenEntries frozenCds;
+    // Dense index in the annotation, -1 until the annotation is frozen
+    private int index = -1;
 
     // If we read a transcript line
     public Transcript(String seqname, String source, String feature, Interval interval, double score, StrandDirection strand, FrameStarts frame, GTFAttributes GTFAttributes) {
-        super(seqname, source, feature, interval, score, strand, frame);
+        super(seqname, source, feature, interval, score, strand, frame, GTFAttributes.getProjectedAttributes());
         this.transcriptID = GTFAttributes.getTranscriptID();
         this.transcriptName = GTFAttributes.getTranscriptName();
         this.exons = new TreeSet<>();
@@ -23,7 +33,7 @@ public class Transcript extends AnnotationEntry {
 
     // If we read an exon or CDS line
     public Transcript(String seqname, String source, StrandDirection strand, GTFAttributes GTFAttributes) {
-        super(seqname, source, strand);
+        super(seqname, source, strand, GTFAttributes.getProjectedAttributes());
         this.transcriptID = GTFAttributes.getTranscriptID();
         this.transcriptName = GTFAttributes.getTranscriptName();
         this.exons = new TreeSet<>();
@@ -31,13 +41,61 @@ public class Transcript extends AnnotationEntry {
     }
 
     public boolean addExon(Exon exon) {
+        checkNotFrozen();
         return exons.add(exon);
     }
 
     public boolean addCds(CodingSequence cds) {
+        checkNotFrozen();
         return this.cds.add(cds);
     }
 
+    /**
+     * Compacts the exons and CDS into sorted arrays and drops the objects. Afterward the transcript can not be changed,
+     * {@link #getExons()} and {@link #getCds()} create the objects on each call. Does nothing if already frozen.
+     */
+    public void freeze() {
+        if (isFrozen()) {
+            return;
+        }
+        frozenExons = FrozenEntries.of(exons);
+        frozenCds = FrozenEntries.of(cds);
+        exons = null;
+        cds = null;
+    }
+
+    public boolean isFrozen() {
+        return frozenExons != null;
+    }
+
+    private void checkNotFrozen() {
+        if (isFrozen()) {
+            throw new IllegalStateException("Transcript " + transcriptID + " is frozen");
+        }
+    }
+
+    private void checkFrozen() {
+        if (!isFrozen()) {
+            throw new IllegalStateException("Transcript " + transcriptID + " is not frozen");
+        }
+    }
+
+    /**
+     * Merges the same transcript parsed from a later part of the GTF file into this one.
+     * Like during parsing, exons and CDS that are already present keep their first occurrence.
+     *
+     * @param later the transcript parsed from the following lines
+     */
+    public void merge(Transcript later) {
+        checkNotFrozen();
+        if (later.getInterval() != null) {
+            overwrite(later.getSeqname(), later.getSource(), later.getFeature(), later.getInterval(), later.getScore(), later.getStrand(), later.getFrame());
+            setProjectedAttributes(later.getProjectedAttributes());
+        }
+        exons.addAll(later.exons);
+        cds.addAll(later.cds);
+    }
+
     public String getTranscriptName() {
         return transcriptName;
     }
@@ -46,11 +104,139 @@ public class Transcript extends AnnotationEntry {
         return transcriptID;
     }
 
+    /**
+     * @return the exons, a new set of copies if the transcript is frozen
+     */
     public TreeSet<Exon> getExons() {
-        return exons;
+        if (!isFrozen()) {
+            return exons;
+        }
+        TreeSet<Exon> views = new TreeSet<>();
+        for (int i = 0; i < frozenExons.size(); i++) {
+            views.add(getExon(i));
+        }
+        return views;
     }
 
+    /**
+     * @return the CDS, a new set of copies if the transcript is frozen
+     */
     public TreeSet<CodingSequence> getCds() {
-        return cds;
+        if (!isFrozen()) {
+            return cds;
+        }
+        TreeSet<CodingSequence> views = new TreeSet<>();
+        for (int i = 0; i < frozenCds.size(); i++) {
+            views.add(getCds(i));
+        }
+        return views;
+    }
+
+    /**
+     * @return a copy of the i-th exon of a frozen transcript, without building the whole set like {@link #getExons()}
+     */
+    public Exon getExon(int i) {
+        checkFrozen();
+        GTFAttributes.Builder attributes = new GTFAttributes.Builder();
+        attributes.setExonID(frozenExons.exonIDs[i]);
+        attributes.setExonNumber(frozenExons.exonNumbers[i]);
+        attributes.setProjectedAttributes(frozenExons.getAttributes(i));
+        return new Exon(getSeqname(), frozenExons.sources[i], EXON_FEATURE, new Interval(frozenExons.starts[i], frozenExons.ends[i]), frozenExons.scores[i], getStrand(), frozenExons.frames[i], attributes.build());
+    }
+
+    /**
+     * @return a copy of the i-th CDS of a frozen transcript, without building the whole set like {@link #getCds()}
+     */
+    public CodingSequence getCds(int i) {
+        checkFrozen();
+        GTFAttributes.Builder attributes = new GTFAttributes.Builder();
+        attributes.setProteinID(frozenCds.proteinIDs[i]);
+        attributes.setCcdsID(frozenCds.ccdsIDs[i]);
+        attributes.setExonNumber(frozenCds.exonNumbers[i]);
+        attributes.setProjectedAttributes(frozenCds.getAttributes(i));
+        return new CodingSequence(getSeqname(), frozenCds.sources[i], CDS_FEATURE, new Interval(frozenCds.starts[i], frozenCds.ends[i]), frozenCds.scores[i], getStrand(), frozenCds.frames[i], attributes.build());
+    }
+
+    /**
+     * @return the parts of the exons inside the region, sorted. Reads the exon arrays if the transcript is frozen
+     */
+    public TreeSet<Interval> cut(Interval cutRegion) {
+        TreeSet<Interval> cutRegions = new TreeSet<>();
+        int cutStart = cutRegion.getStart();
+        int cutEnd = cutRegion.getEnd();
+        int exonCount = getExonCount();
+        Iterator<Exon> exonIterator = isFrozen() ? null : exons.iterator();
+        for (int i = 0; i < exonCount; i++) {
+            Interval exon = exonIterator == null ? null : exonIterator.next().getInterval();
+            int exonStart = exon == null ? frozenExons.starts[i] : exon.getStart();
+            int exonEnd = exon == null ? frozenExons.ends[i] : exon.getEnd();
+            // If the current exon starts beyond the cut region, stop processing
+            if (exonStart > cutEnd) {
+                break;
+            }
+            // Add the overlap of the exon and the cut region
+            if (exonEnd >= cutStart) {
+                cutRegions.add(new Interval(Math.max(exonStart, cutStart), Math.min(exonEnd, cutEnd)));
+            }
+        }
+        return cutRegions;
+    }
+
+    FrozenEntries getFrozenExons() {
+        return frozenExons;
+    }
+
+    FrozenEntries getFrozenCds() {
+        return frozenCds;
+    }
+
+    public int getExonCount() {
+        return isFrozen() ? frozenExons.size() : exons.size();
+    }
+
+    public int getCdsCount() {
+        return isFrozen() ? frozenCds.size() : cds.size();
+    }
+
+    /**
+     * The exon arrays of a frozen transcript, sorted by start and end. Must not be modified.
+     */
+    public int[] getExonStarts() {
+        checkFrozen();
+        return frozenExons.starts;
+    }
+
+    public int[] getExonEnds() {
+        checkFrozen();
+        return frozenExons.ends;
+    }
+
+    /**
+     * The CDS arrays of a frozen transcript, sorted by start. Must not be modified.
+     */
+    public int[] getCdsStarts() {
+        checkFrozen();
+        return frozenCds.starts;
+    }
+
+    public int[] getCdsEnds() {
+        checkFrozen();
+        return frozenCds.ends;
+    }
+
+    public FrameStarts[] getCdsFrames() {
+        checkFrozen();
+        return frozenCds.frames;
+    }
+
+    /**
+     * @return the dense index of the transcript in its annotation, see {@link gtf.GTFAnnotation#freeze()}, or -1
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
     }
 }
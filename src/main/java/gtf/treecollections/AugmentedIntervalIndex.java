@@ -0,0 +1,11 @@
+package gtf.treecollections;
+
+import augmentedTree.Interval;
+import augmentedTree.IntervalTree;
+
+/**
+ * The interval tree of the AugmentedTree jar, one red-black tree node per interval.
+ */
+public class AugmentedIntervalIndex<I extends Interval> extends IntervalTree<I> implements IntervalIndex<I> {
+    private static final long serialVersionUID = 1L;
+}
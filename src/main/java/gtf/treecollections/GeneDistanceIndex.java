@@ -0,0 +1,93 @@
+package gtf.treecollections;
+
+import augmentedTree.Interval;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The sorted starts and the sorted stops of the genes of a chromosome (and strand), to get the distance of a read to
+ * the nearest gene with two binary searches and without allocation.
+ * Like {@link ImplicitIntervalTree}, genes can be added at any time and the arrays are sorted by {@link #index()}.
+ */
+public class GeneDistanceIndex {
+    private int[] starts = new int[16];
+    private int[] stops = new int[16];
+    private int size;
+    private boolean indexed = true;
+
+    public void add(Interval gene) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            stops = Arrays.copyOf(stops, size * 2);
+        }
+        starts[size] = gene.getStart();
+        stops[size] = gene.getStop();
+        size++;
+        indexed = false;
+    }
+
+    public void addAll(Collection<? extends Interval> genes) {
+        if (size + genes.size() > starts.length) {
+            starts = Arrays.copyOf(starts, size + genes.size());
+            stops = Arrays.copyOf(stops, size + genes.size());
+        }
+        for (Interval gene : genes) {
+            starts[size] = gene.getStart();
+            stops[size] = gene.getStop();
+            size++;
+        }
+        indexed = genes.isEmpty() && indexed;
+    }
+
+    /**
+     * Sorts the starts and stops, also called by the first query after an add.
+     */
+    public void index() {
+        if (indexed) {
+            return;
+        }
+        Arrays.sort(starts, 0, size);
+        Arrays.sort(stops, 0, size);
+        indexed = true;
+    }
+
+    /**
+     * @return 0 if a gene overlaps [start, stop], otherwise the number of positions between the read and the nearest
+     * gene, Integer.MAX_VALUE if there are no genes
+     */
+    public int getDistance(int start, int stop) {
+        index();
+        // genes that start up to the stop of the read and genes that end before its start, the latter are a subset
+        int startingBefore = countAtMost(starts, stop);
+        int endingBefore = countAtMost(stops, start - 1);
+        if (startingBefore > endingBefore) {
+            return 0;
+        }
+        int distance = Integer.MAX_VALUE;
+        if (endingBefore > 0) {
+            distance = start - stops[endingBefore - 1] - 1;
+        }
+        if (startingBefore < size) {
+            distance = Math.min(distance, starts[startingBefore] - stop - 1);
+        }
+        return distance;
+    }
+
+    /**
+     * @return the number of values up to the position
+     */
+    private int countAtMost(int[] sorted, int position) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] <= position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
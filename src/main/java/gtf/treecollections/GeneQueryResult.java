@@ -0,0 +1,73 @@
+package gtf.treecollections;
+
+import augmentedTree.Interval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The answers of the forest for a read pair, filled by one query: the genes that enclose the pair, whether a gene is
+ * enclosed by the pair, the distance to the nearest gene and the antisense flag.
+ * The distance and the antisense flag are only set for pairs that neither are in a gene nor contain one, like the
+ * output needs them. The result is reused for every pair, {@link #clear()} resets it.
+ */
+public class GeneQueryResult<I extends Interval> {
+    private final List<I> genesThatInclude = new ArrayList<>();
+    private boolean containedGene;
+    private int distance = Integer.MAX_VALUE;
+    private boolean antisense;
+
+    public final void clear() {
+        genesThatInclude.clear();
+        containedGene = false;
+        distance = Integer.MAX_VALUE;
+        antisense = false;
+    }
+
+    /**
+     * @return the genes that enclose the pair, the list is reused for the next pair
+     */
+    public List<I> getGenesThatInclude() {
+        return genesThatInclude;
+    }
+
+    /**
+     * @return true if a gene is enclosed by the pair, only checked if no gene encloses the pair
+     */
+    public boolean hasContainedGene() {
+        return containedGene;
+    }
+
+    public void setContainedGene(boolean containedGene) {
+        this.containedGene = containedGene;
+    }
+
+    /**
+     * @return the distance to the nearest gene, see {@link GeneDistanceIndex#getDistance}
+     */
+    public int getDistance() {
+        return distance;
+    }
+
+    public void setDistance(int distance) {
+        this.distance = distance;
+    }
+
+    /**
+     * @return true if a gene of the other strand encloses the pair
+     */
+    public boolean isAntisense() {
+        return antisense;
+    }
+
+    public void setAntisense(boolean antisense) {
+        this.antisense = antisense;
+    }
+
+    /**
+     * @return true if the pair neither is in a gene nor contains one, then the distance and antisense flag are set
+     */
+    public boolean isIntergenic() {
+        return genesThatInclude.isEmpty() && !containedGene;
+    }
+}
@@ -0,0 +1,291 @@
+package gtf.treecollections;
+
+import augmentedTree.Interval;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Sweep line over the genes of a chromosome (and strand) for reads that come sorted by coordinate. The genes are
+ * sorted by start, the cursor activates the genes that start up to the read and keeps them in a heap ordered by stop,
+ * genes that end before the window are evicted. The queries of a read then only look at the active genes and the next
+ * genes to start, instead of searching the tree from the root.
+ * <p>
+ * The start of a pair is the start of its first mate, so the starts are only nearly sorted. The cursor keeps the genes
+ * of a window behind the largest start, which grows up to {@link #MAX_LAG} with the lag of the starts. A start behind
+ * the window is not answered ({@link #seek} returns false) and has to be queried on the tree.
+ * Like {@link ImplicitIntervalTree}, genes can be added at any time and the arrays are sorted by {@link #index()}.
+ * The cursor has state, it is used by one thread at a time.
+ */
+public class GeneSweepCursor<I extends Interval> {
+    // largest window behind the largest start, larger lags are queried on the tree
+    public static final int MAX_LAG = 100_000;
+
+    private Interval[] intervals = new Interval[16];
+    private int[] starts = new int[0];
+    private int[] stops = new int[0];
+    private int size;
+    private boolean indexed = true;
+    // min-heap of the indices of the active genes by stop
+    private int[] active = new int[16];
+    private int activeSize;
+    // the first gene that is not active yet
+    private int next;
+    private int frontier = Integer.MIN_VALUE;
+    private int lag;
+    // genes that end before this position were evicted
+    private int evictedBefore = Integer.MIN_VALUE;
+    private int maxEvictedStop = Integer.MIN_VALUE;
+
+    public void add(I interval) {
+        if (size == intervals.length) {
+            intervals = Arrays.copyOf(intervals, Math.max(16, size * 2));
+        }
+        intervals[size++] = interval;
+        indexed = false;
+    }
+
+    public void addAll(Collection<? extends I> intervals) {
+        if (size + intervals.size() > this.intervals.length) {
+            this.intervals = Arrays.copyOf(this.intervals, Math.max(16, size + intervals.size()));
+        }
+        for (I interval : intervals) {
+            this.intervals[size++] = interval;
+        }
+        indexed = intervals.isEmpty() && indexed;
+    }
+
+    /**
+     * Sorts the genes by start and resets the cursor to the start of the chromosome
+     */
+    public void index() {
+        if (!indexed) {
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = (long) intervals[i].getStart() << 32 | i;
+            }
+            Arrays.sort(keys);
+            Interval[] sorted = new Interval[size];
+            starts = new int[size];
+            stops = new int[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = intervals[(int) keys[i]];
+                starts[i] = (int) (keys[i] >> 32);
+                stops[i] = sorted[i].getStop();
+            }
+            intervals = sorted;
+            indexed = true;
+        }
+        reset();
+    }
+
+    /**
+     * Moves the cursor back to the start of the chromosome, e.g. when the chromosome is selected again
+     */
+    public final void reset() {
+        activeSize = 0;
+        next = 0;
+        frontier = Integer.MIN_VALUE;
+        lag = 0;
+        evictedBefore = Integer.MIN_VALUE;
+        maxEvictedStop = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Moves the cursor forward to the start of a read, the queries of the read can be answered afterwards
+     *
+     * @return false if the start is behind the window of the cursor, then the read has to be queried on the tree
+     */
+    public boolean seek(int start) {
+        if (start < evictedBefore) {
+            // the window grows, the genes evicted already stay evicted
+            lag = Math.min(MAX_LAG, Math.max(lag, frontier - start));
+            return false;
+        }
+        if (start > frontier) {
+            frontier = start;
+            while (next < size && starts[next] <= frontier) {
+                push(next++);
+            }
+            int windowStart = frontier - lag;
+            if (windowStart > evictedBefore) {
+                evictedBefore = windowStart;
+                while (activeSize > 0 && stops[active[0]] < evictedBefore) {
+                    maxEvictedStop = Math.max(maxEvictedStop, stops[pop()]);
+                }
+            }
+        } else {
+            lag = Math.min(MAX_LAG, Math.max(lag, frontier - start));
+        }
+        return true;
+    }
+
+    /**
+     * @return the genes that contain [start, stop], after a successful {@link #seek} to start
+     */
+    @SuppressWarnings("unchecked")
+    public <C extends Collection<I>> C getIntervalsSpanning(int start, int stop, C re) {
+        for (int i = 0; i < activeSize; i++) {
+            int gene = active[i];
+            if (starts[gene] <= start && stops[gene] >= stop) {
+                re.add((I) intervals[gene]);
+            }
+        }
+        return re;
+    }
+
+    /**
+     * @return true if a gene contains [start, stop], after a successful {@link #seek} to start
+     */
+    public boolean hasIntervalsSpanning(int start, int stop) {
+        for (int i = 0; i < activeSize; i++) {
+            int gene = active[i];
+            if (starts[gene] <= start && stops[gene] >= stop) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if a gene is inside [start, stop], after a successful {@link #seek} to start
+     */
+    public boolean hasIntervalsSpannedBy(int start, int stop) {
+        for (int i = 0; i < activeSize; i++) {
+            int gene = active[i];
+            if (starts[gene] >= start && stops[gene] <= stop) {
+                return true;
+            }
+        }
+        for (int i = next; i < size && starts[i] <= stop; i++) {
+            if (stops[i] <= stop) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same as {@link GeneDistanceIndex#getDistance}, after a successful {@link #seek} to start
+     *
+     * @return 0 if a gene overlaps [start, stop], otherwise the number of positions between the read and the nearest
+     * gene, Integer.MAX_VALUE if there are no genes
+     */
+    public int getDistance(int start, int stop) {
+        if (next < size && starts[next] <= stop) {
+            // starts after the frontier, so it ends after start too
+            return 0;
+        }
+        // the evicted genes end before the window, so before start
+        int maxStopBefore = maxEvictedStop;
+        int minStartAfter = next < size ? starts[next] : Integer.MAX_VALUE;
+        for (int i = 0; i < activeSize; i++) {
+            int gene = active[i];
+            if (stops[gene] < start) {
+                maxStopBefore = Math.max(maxStopBefore, stops[gene]);
+            } else if (starts[gene] > stop) {
+                minStartAfter = Math.min(minStartAfter, starts[gene]);
+            } else {
+                return 0;
+            }
+        }
+        int distance = Integer.MAX_VALUE;
+        if (maxStopBefore != Integer.MIN_VALUE) {
+            distance = start - maxStopBefore - 1;
+        }
+        if (minStartAfter != Integer.MAX_VALUE) {
+            distance = Math.min(distance, minStartAfter - stop - 1);
+        }
+        return distance;
+    }
+
+    /**
+     * Runs the queries of a pair in one pass over the active genes and the next genes to start, after a successful
+     * {@link #seek} to start: the genes that contain [start, stop], whether a gene is inside it and, if neither, the
+     * distance to the nearest gene
+     */
+    @SuppressWarnings("unchecked")
+    public GeneQueryResult<I> query(int start, int stop, GeneQueryResult<I> result) {
+        boolean containedGene = false;
+        boolean overlap = false;
+        int maxStopBefore = maxEvictedStop;
+        int minStartAfter = Integer.MAX_VALUE;
+        for (int i = 0; i < activeSize; i++) {
+            int gene = active[i];
+            if (stops[gene] < start) {
+                maxStopBefore = Math.max(maxStopBefore, stops[gene]);
+            } else if (starts[gene] > stop) {
+                minStartAfter = Math.min(minStartAfter, starts[gene]);
+            } else {
+                overlap = true;
+                if (starts[gene] <= start && stops[gene] >= stop) {
+                    result.getGenesThatInclude().add((I) intervals[gene]);
+                } else if (starts[gene] >= start && stops[gene] <= stop) {
+                    containedGene = true;
+                }
+            }
+        }
+        for (int i = next; i < size && !containedGene && starts[i] <= stop; i++) {
+            overlap = true;
+            containedGene = stops[i] <= stop;
+        }
+        result.setContainedGene(containedGene);
+        if (!result.isIntergenic()) {
+            return result;
+        }
+        if (overlap) {
+            result.setDistance(0);
+            return result;
+        }
+        if (next < size) {
+            minStartAfter = Math.min(minStartAfter, starts[next]);
+        }
+        int distance = Integer.MAX_VALUE;
+        if (maxStopBefore != Integer.MIN_VALUE) {
+            distance = start - maxStopBefore - 1;
+        }
+        if (minStartAfter != Integer.MAX_VALUE) {
+            distance = Math.min(distance, minStartAfter - stop - 1);
+        }
+        result.setDistance(distance);
+        return result;
+    }
+
+    private void push(int gene) {
+        if (activeSize == active.length) {
+            active = Arrays.copyOf(active, activeSize * 2);
+        }
+        int i = activeSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (stops[active[parent]] <= stops[gene]) {
+                break;
+            }
+            active[i] = active[parent];
+            i = parent;
+        }
+        active[i] = gene;
+    }
+
+    private int pop() {
+        int top = active[0];
+        int gene = active[--activeSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= activeSize) {
+                break;
+            }
+            if (child + 1 < activeSize && stops[active[child + 1]] < stops[active[child]]) {
+                child++;
+            }
+            if (stops[gene] <= stops[active[child]]) {
+                break;
+            }
+            active[i] = active[child];
+            i = child;
+        }
+        active[i] = gene;
+        return top;
+    }
+}
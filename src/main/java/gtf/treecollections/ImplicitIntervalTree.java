@@ -0,0 +1,288 @@
+package gtf.treecollections;
+
+import augmentedTree.Interval;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Implicit augmented interval tree (as in cgranges/IITree): the intervals are sorted by start in flat arrays and the
+ * sorted array is read as a complete binary search tree, the node at index i of level k has the children
+ * i - 2^(k-1) and i + 2^(k-1). Every node stores the largest stop of its subtree in a parallel array.
+ * There are no node objects, a query walks int arrays only.
+ * <p>
+ * Intervals can be added at any time, the arrays are sorted and indexed on the first query after an add. Queries are
+ * not synchronized, the tree has to be indexed before it is shared between threads.
+ */
+public class ImplicitIntervalTree<I extends Interval> implements IntervalIndex<I> {
+    // linear scan below this level
+    private static final int SCAN_LEVEL = 3;
+    // the search stack of the thread, two entries of three ints per level
+    private static final ThreadLocal<int[]> STACK = ThreadLocal.withInitial(() -> new int[3 * 2 * 32]);
+
+    private Interval[] intervals = new Interval[16];
+    private int size;
+    private boolean indexed = true;
+    private int[] starts = new int[0];
+    private int[] stops = new int[0];
+    private int[] maxStops = new int[0];
+    // largest stop of the intervals up to the index, for the left neighbors
+    private int[] prefixMaxStops = new int[0];
+    private int maxLevel = -1;
+
+    @Override
+    public boolean add(I interval) {
+        if (size == intervals.length) {
+            intervals = Arrays.copyOf(intervals, Math.max(16, size * 2));
+        }
+        intervals[size++] = interval;
+        indexed = false;
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends I> intervals) {
+        if (size + intervals.size() > this.intervals.length) {
+            this.intervals = Arrays.copyOf(this.intervals, Math.max(16, size + intervals.size()));
+        }
+        for (I interval : intervals) {
+            this.intervals[size++] = interval;
+        }
+        indexed = intervals.isEmpty() && indexed;
+        return !intervals.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sorts the intervals and builds the implicit tree, also called by the first query after an add.
+     */
+    @Override
+    public void index() {
+        if (indexed) {
+            return;
+        }
+        // sort by start on primitive keys, the start in the high and the position in the low bits
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = (long) intervals[i].getStart() << 32 | i;
+        }
+        Arrays.sort(keys);
+        Interval[] sorted = new Interval[size];
+        starts = new int[size];
+        stops = new int[size];
+        maxStops = new int[size];
+        prefixMaxStops = new int[size];
+        int prefixMax = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            sorted[i] = intervals[(int) keys[i]];
+            starts[i] = (int) (keys[i] >> 32);
+            stops[i] = sorted[i].getStop();
+            prefixMax = Math.max(prefixMax, stops[i]);
+            prefixMaxStops[i] = prefixMax;
+        }
+        intervals = sorted;
+        maxLevel = indexMaxStops();
+        indexed = true;
+    }
+
+    /**
+     * @return the level of the root, the node at index i has the level of the trailing ones of i, -1 if the tree is
+     * empty. Indexes the tree.
+     */
+    public int getMaxLevel() {
+        index();
+        return maxLevel;
+    }
+
+    /**
+     * @return the level of the root
+     */
+    private int indexMaxStops() {
+        if (size == 0) {
+            return -1;
+        }
+        // leaves
+        int lastIndex = 0;
+        int last = 0;
+        for (int i = 0; i < size; i += 2) {
+            lastIndex = i;
+            maxStops[i] = last = stops[i];
+        }
+        int level = 1;
+        for (; 1 << level <= size; level++) {
+            int half = 1 << (level - 1);
+            for (int i = (half << 1) - 1; i < size; i += half << 2) {
+                // the right subtree can be cut off by the end of the array, then its largest stop is the last one
+                int leftMax = maxStops[i - half];
+                int rightMax = i + half < size ? maxStops[i + half] : last;
+                maxStops[i] = Math.max(stops[i], Math.max(leftMax, rightMax));
+            }
+            lastIndex = (lastIndex >> level & 1) != 0 ? lastIndex - half : lastIndex + half;
+            if (lastIndex < size && maxStops[lastIndex] > last) {
+                last = maxStops[lastIndex];
+            }
+        }
+        return level - 1;
+    }
+
+    /**
+     * Adds the intervals with start <= startBound and stop >= stopBound, the intervals of the subtrees are skipped
+     * by the start order and the largest stops.
+     *
+     * @param re the collection to add to, null to stop at the first interval
+     * @return true if there is such an interval
+     */
+    @SuppressWarnings("unchecked")
+    private boolean search(int startBound, int stopBound, Collection<I> re) {
+        index();
+        if (maxLevel < 0) {
+            return false;
+        }
+        boolean found = false;
+        // node, level and whether the left subtree was visited, at most two entries per level
+        int[] stack = STACK.get();
+        int top = 0;
+        stack[top++] = (1 << maxLevel) - 1;
+        stack[top++] = maxLevel;
+        stack[top++] = 0;
+        while (top > 0) {
+            int leftVisited = stack[--top];
+            int level = stack[--top];
+            int node = stack[--top];
+            if (level <= SCAN_LEVEL) {
+                int first = node >> level << level;
+                int end = Math.min(first + (1 << (level + 1)) - 1, size);
+                for (int i = first; i < end && starts[i] <= startBound; i++) {
+                    if (stops[i] >= stopBound) {
+                        if (re == null) {
+                            return true;
+                        }
+                        re.add((I) intervals[i]);
+                        found = true;
+                    }
+                }
+            } else if (leftVisited == 0) {
+                int left = node - (1 << (level - 1));
+                stack[top++] = node;
+                stack[top++] = level;
+                stack[top++] = 1;
+                // nodes past the end of the array have no largest stop, their left subtree is searched
+                if (left >= size || maxStops[left] >= stopBound) {
+                    stack[top++] = left;
+                    stack[top++] = level - 1;
+                    stack[top++] = 0;
+                }
+            } else if (node < size && starts[node] <= startBound) {
+                if (stops[node] >= stopBound) {
+                    if (re == null) {
+                        return true;
+                    }
+                    re.add((I) intervals[node]);
+                    found = true;
+                }
+                stack[top++] = node + (1 << (level - 1));
+                stack[top++] = level - 1;
+                stack[top++] = 0;
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public <C extends Collection<I>> C getIntervalsSpanning(int start, int stop, C re) {
+        search(start, stop, re);
+        return re;
+    }
+
+    @Override
+    public boolean hasIntervalsSpanning(int start, int stop) {
+        return search(start, stop, null);
+    }
+
+    @Override
+    public <C extends Collection<I>> C getIntervalsIntersecting(int start, int stop, C re) {
+        search(stop, start, re);
+        return re;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <C extends Collection<I>> C getIntervalsSpannedBy(int start, int stop, C re) {
+        index();
+        for (int i = firstStartAfter(start - 1); i < size && starts[i] <= stop; i++) {
+            if (stops[i] <= stop) {
+                re.add((I) intervals[i]);
+            }
+        }
+        return re;
+    }
+
+    @Override
+    public boolean hasIntervalsSpannedBy(int start, int stop) {
+        index();
+        for (int i = firstStartAfter(start - 1); i < size && starts[i] <= stop; i++) {
+            if (stops[i] <= stop) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <C extends Collection<I>> C getIntervalsLeftNeighbor(int start, int stop, C re) {
+        int before = re.size();
+        getIntervalsIntersecting(start, stop, re);
+        if (re.size() > before) {
+            return re;
+        }
+        // nothing overlaps, so all intervals starting up to stop end before start
+        int last = firstStartAfter(stop) - 1;
+        if (last < 0) {
+            return re;
+        }
+        int maxStop = prefixMaxStops[last];
+        for (int i = last; i >= 0 && prefixMaxStops[i] == maxStop; i--) {
+            if (stops[i] == maxStop) {
+                re.add((I) intervals[i]);
+            }
+        }
+        return re;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <C extends Collection<I>> C getIntervalsRightNeighbor(int start, int stop, C re) {
+        int before = re.size();
+        getIntervalsIntersecting(start, stop, re);
+        if (re.size() > before) {
+            return re;
+        }
+        int first = firstStartAfter(stop);
+        for (int i = first; i < size && starts[i] == starts[first]; i++) {
+            re.add((I) intervals[i]);
+        }
+        return re;
+    }
+
+    /**
+     * @return the index of the first interval with a start larger than the position, size if there is none
+     */
+    private int firstStartAfter(int position) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,79 @@
+package gtf.treecollections;
+
+import augmentedTree.Interval;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * The interval queries the forests run on the genes of a chromosome (and strand). Positions are inclusive, the
+ * results are added to the given collection, which is returned.
+ * Implemented by the augmented red-black tree of the AugmentedTree jar ({@link AugmentedIntervalIndex}) and the
+ * array based {@link ImplicitIntervalTree}.
+ *
+ * @param <I> the intervals
+ */
+public interface IntervalIndex<I extends Interval> {
+
+    boolean add(I interval);
+
+    /**
+     * Adds the intervals in bulk, cheaper than single adds for trees that are sorted when indexed
+     */
+    default boolean addAll(Collection<? extends I> intervals) {
+        for (I interval : intervals) {
+            add(interval);
+        }
+        return !intervals.isEmpty();
+    }
+
+    int size();
+
+    /**
+     * Prepares the index for queries after intervals were added, afterwards the queries only read. Called when the
+     * tree of a chromosome is selected, before reads of other threads are annotated with it.
+     */
+    default void index() {
+    }
+
+    /**
+     * @return the intervals that contain [start, stop]
+     */
+    <C extends Collection<I>> C getIntervalsSpanning(int start, int stop, C re);
+
+    /**
+     * @return the intervals inside [start, stop]
+     */
+    <C extends Collection<I>> C getIntervalsSpannedBy(int start, int stop, C re);
+
+    /**
+     * @return true if an interval contains [start, stop], the search stops at the first one
+     */
+    default boolean hasIntervalsSpanning(int start, int stop) {
+        return !getIntervalsSpanning(start, stop, new ArrayList<>()).isEmpty();
+    }
+
+    /**
+     * @return true if an interval is inside [start, stop], the search stops at the first one
+     */
+    default boolean hasIntervalsSpannedBy(int start, int stop) {
+        return !getIntervalsSpannedBy(start, stop, new ArrayList<>()).isEmpty();
+    }
+
+    /**
+     * @return the intervals that overlap [start, stop]
+     */
+    <C extends Collection<I>> C getIntervalsIntersecting(int start, int stop, C re);
+
+    /**
+     * @return the intervals that overlap [start, stop], if there are none the intervals with the largest stop left of
+     * start
+     */
+    <C extends Collection<I>> C getIntervalsLeftNeighbor(int start, int stop, C re);
+
+    /**
+     * @return the intervals that overlap [start, stop], if there are none the intervals with the smallest start right
+     * of stop
+     */
+    <C extends Collection<I>> C getIntervalsRightNeighbor(int start, int stop, C re);
+}
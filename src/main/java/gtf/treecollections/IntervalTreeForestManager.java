@@ -1,44 +1,23 @@
 package gtf.treecollections;
 
-import augmentedTree.IntervalTree;
 import bamfeatures.ReadAnnotation;
 import gtf.GTFAnnotation;
 import gtf.structs.Gene;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public interface IntervalTreeForestManager {
 
-    String currentChromosome = null;
-
-    static int getLeftDistance(IntervalTree<Gene> tree, ReadAnnotation pair) {
-        List<Gene> genes = new ArrayList<>();
-        tree.getIntervalsLeftNeighbor(pair.getAlignmentStart(), pair.getAlignmentEnd(), genes);
-        if (!genes.isEmpty()) {
-            Gene nearestGene = genes.getFirst();
-            if (nearestGene.getStop() >= pair.getAlignmentStart()) {
-                return 0;
-            } else {
-                return pair.getAlignmentStart() - nearestGene.getStop() - 1;
-            }
-        }
-        return Integer.MAX_VALUE;
-    }
+    /**
+     * Creates the trees of the forests, the array based implicit tree by default
+     */
+    Supplier<IntervalIndex<Gene>> DEFAULT_TREE_FACTORY = ImplicitIntervalTree::new;
 
-    static int getRightDistance(IntervalTree<Gene> tree, ReadAnnotation pair) {
-        List<Gene> genes = new ArrayList<>();
-        tree.getIntervalsRightNeighbor(pair.getAlignmentStart(), pair.getAlignmentEnd(), genes);
-        if (!genes.isEmpty()) {
-            Gene nearestGene = genes.getFirst();
-            if (nearestGene.getStart() <= pair.getAlignmentEnd()) {
-                return 0;
-            } else {
-                return nearestGene.getStart() - pair.getAlignmentEnd() - 1;
-            }
-        }
-        return Integer.MAX_VALUE;
-    }
+    String currentChromosome = null;
 
     /**
      * @param chromosome the chromosome to be selected
@@ -56,7 +35,16 @@ public interface IntervalTreeForestManager {
      * @param pair the pair to be checked
      * @return the genes that are enclosing the pair (pair is inside the gene)
      */
-    List<Gene> getGenesThatInclude(ReadAnnotation pair);
+    default List<Gene> getGenesThatInclude(ReadAnnotation pair) {
+        return getGenesThatInclude(pair, new ArrayList<>());
+    }
+
+    /**
+     * @param pair   the pair to be checked
+     * @param result a buffer of the caller, the genes are added to it, so it can be cleared and reused for every pair
+     * @return the result with the genes that are enclosing the pair (pair is inside the gene)
+     */
+    <C extends Collection<Gene>> C getGenesThatInclude(ReadAnnotation pair, C result);
 
     /**
      * @param pair the pair to be checked
@@ -70,6 +58,25 @@ public interface IntervalTreeForestManager {
      */
     boolean isAntisenseBetter(ReadAnnotation pair);
 
+    /**
+     * @param pair   the pair to be checked
+     * @param result a buffer of the caller, cleared by the caller and reused for every pair
+     * @return the result with the genes that enclose the pair, whether it contains a gene and, if neither, the distance
+     * to the nearest gene and whether antisense is better. The forests answer it with one pass of the cursor, this
+     * runs the single queries one after the other
+     */
+    default GeneQueryResult<Gene> query(ReadAnnotation pair, GeneQueryResult<Gene> result) {
+        getGenesThatInclude(pair, result.getGenesThatInclude());
+        if (result.getGenesThatInclude().isEmpty()) {
+            result.setContainedGene(hasContainedGene(pair));
+        }
+        if (result.isIntergenic()) {
+            result.setDistance(getDistanceToNearestNeighborGene(pair));
+            result.setAntisense(isAntisenseBetter(pair));
+        }
+        return result;
+    }
+
     /**
      * @param gtfAnnotation the annotation to be used
      *                      Initializes the IntervalTreeForestManager with the given annotation
@@ -77,5 +84,38 @@ public interface IntervalTreeForestManager {
      */
     void init(GTFAnnotation gtfAnnotation);
 
+    /**
+     * @param gene the gene to be added
+     *             Adds a single gene to the tree of its chromosome, to build the forest while the GTF is streamed.
+     *             Can be called from another thread for chromosomes that are not selected yet
+     */
+    void addGene(Gene gene);
+
+    /**
+     * @param releaseFinishedChromosomes build the tree of a chromosome when it is selected first and drop it when the
+     *                                   next chromosome is selected, so only one chromosome is held at a time.
+     *                                   Chromosomes can not be selected again
+     */
+    void setReleaseFinishedChromosomes(boolean releaseFinishedChromosomes);
+
+    /**
+     * @param chromosomeOrder the contig order of the reads, e.g. of the BAM header. In release mode, selecting a
+     *                        chromosome also drops the genes of the chromosomes before it, they have no reads
+     */
+    void setChromosomeOrder(List<String> chromosomeOrder);
+
+    /**
+     * @param sweepCursor answer the queries of the reads with the {@link GeneSweepCursor} of the current tree, true by
+     *                    default. Reads behind the window of the cursor are queried on the tree
+     */
+    void setSweepCursor(boolean sweepCursor);
+
+    /**
+     * @param geneLoader returns the genes of a chromosome
+     *                   Switches to lazy loading: nextTree builds only the tree of the selected chromosome from the loader
+     *                   and drops the trees of the other chromosomes
+     */
+    void setGeneLoader(Function<String, Collection<Gene>> geneLoader);
+
 
 }
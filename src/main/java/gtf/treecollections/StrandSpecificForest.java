@@ -6,17 +6,42 @@ import gtf.structs.Gene;
 import gtf.types.StrandDirection;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public class StrandSpecificForest implements IntervalTreeForestManager {
-    Map<String, TreePair> chromosomeToGeneTree;
+    Map<String, TreePair> chromosomeToGeneTree = new ConcurrentHashMap<>();
     StrandDirection strandSpecificity;
     TreePair currentTreePair;
+    Function<String, Collection<Gene>> geneLoader;
+    Supplier<IntervalIndex<Gene>> treeFactory;
+    boolean releaseFinishedChromosomes;
+    boolean sweepCursor = true;
+    // in release mode, the genes of the chromosomes whose trees are built on first use
+    Map<String, List<Gene>> unbuiltGenes = new ConcurrentHashMap<>();
+    Set<String> releasedChromosomes = new HashSet<>();
+    String selectedChromosome;
+    List<String> chromosomeOrder;
+    // the chromosomes before this position of the contig order are released
+    int releasedOrder;
 
     public StrandSpecificForest(StrandDirection strandSpecificity) {
+        this(strandSpecificity, DEFAULT_TREE_FACTORY);
+    }
+
+    /**
+     * @param treeFactory creates the trees, e.g. {@link AugmentedIntervalIndex} for the tree of the AugmentedTree jar
+     */
+    public StrandSpecificForest(StrandDirection strandSpecificity, Supplier<IntervalIndex<Gene>> treeFactory) {
         this.strandSpecificity = strandSpecificity;
+        this.treeFactory = treeFactory;
     }
 
     /**
@@ -25,8 +50,24 @@ public class StrandSpecificForest implements IntervalTreeForestManager {
      */
     @Override
     public void nextTree(String chromosome) {
+        if (releaseFinishedChromosomes) {
+            releaseSelectedChromosome(chromosome);
+            releaseSkippedChromosomes(chromosome);
+        }
+        selectedChromosome = chromosome;
+        if (geneLoader != null) {
+            // Only the tree of the current chromosome is kept
+            chromosomeToGeneTree = new ConcurrentHashMap<>();
+            buildTrees(geneLoader.apply(chromosome));
+        } else if (unbuiltGenes.containsKey(chromosome)) {
+            buildTrees(unbuiltGenes.remove(chromosome));
+        }
         currentTreePair = chromosomeToGeneTree.get(chromosome);
-        // TODO: delete the current tree
+        if (currentTreePair == null) {
+            // Chromosome without genes
+            currentTreePair = new TreePair(treeFactory);
+        }
+        currentTreePair.index();
     }
 
     /**
@@ -35,14 +76,16 @@ public class StrandSpecificForest implements IntervalTreeForestManager {
      */
     @Override
     public boolean hasContainedGene(ReadAnnotation pair) {
-        List<Gene> resultGenes = new ArrayList<>();
         if (!pair.isReadStrandNegative()) {
-            currentTreePair.getFirst().getIntervalsSpannedBy(pair.getAlignmentStart(), pair.getAlignmentEnd(), resultGenes);
-        } else {
-            currentTreePair.getSecond().getIntervalsSpannedBy(pair.getAlignmentStart(), pair.getAlignmentEnd(), resultGenes);
+            if (seek(currentTreePair.getFirstCursor(), pair)) {
+                return currentTreePair.getFirstCursor().hasIntervalsSpannedBy(pair.getAlignmentStart(), pair.getAlignmentEnd());
+            }
+            return currentTreePair.getFirst().hasIntervalsSpannedBy(pair.getAlignmentStart(), pair.getAlignmentEnd());
         }
-        // No need to return the list, just check if it is empty
-        return !resultGenes.isEmpty();
+        if (seek(currentTreePair.getSecondCursor(), pair)) {
+            return currentTreePair.getSecondCursor().hasIntervalsSpannedBy(pair.getAlignmentStart(), pair.getAlignmentEnd());
+        }
+        return currentTreePair.getSecond().hasIntervalsSpannedBy(pair.getAlignmentStart(), pair.getAlignmentEnd());
     }
 
     /**
@@ -50,15 +93,17 @@ public class StrandSpecificForest implements IntervalTreeForestManager {
      * @return the genes that are enclosing the pair (pair is inside the gene)
      */
     @Override
-    public List<Gene> getGenesThatInclude(ReadAnnotation pair) {
-        List<Gene> resultGenes = new ArrayList<>();
+    public <C extends Collection<Gene>> C getGenesThatInclude(ReadAnnotation pair, C result) {
         if (!pair.isReadStrandNegative()) {
-            currentTreePair.getFirst().getIntervalsSpanning(pair.getAlignmentStart(), pair.getAlignmentEnd(), resultGenes);
-        } else {
-            currentTreePair.getSecond().getIntervalsSpanning(pair.getAlignmentStart(), pair.getAlignmentEnd(), resultGenes);
+            if (seek(currentTreePair.getFirstCursor(), pair)) {
+                return currentTreePair.getFirstCursor().getIntervalsSpanning(pair.getAlignmentStart(), pair.getAlignmentEnd(), result);
+            }
+            return currentTreePair.getFirst().getIntervalsSpanning(pair.getAlignmentStart(), pair.getAlignmentEnd(), result);
+        }
+        if (seek(currentTreePair.getSecondCursor(), pair)) {
+            return currentTreePair.getSecondCursor().getIntervalsSpanning(pair.getAlignmentStart(), pair.getAlignmentEnd(), result);
         }
-        // WARNING: Maybe size() == 0;
-        return resultGenes;
+        return currentTreePair.getSecond().getIntervalsSpanning(pair.getAlignmentStart(), pair.getAlignmentEnd(), result);
     }
 
     /**
@@ -67,16 +112,16 @@ public class StrandSpecificForest implements IntervalTreeForestManager {
      */
     @Override
     public int getDistanceToNearestNeighborGene(ReadAnnotation pair) {
-        int leftDistance;
-        int rightDistance;
         if (!pair.isReadStrandNegative()) {
-            leftDistance = IntervalTreeForestManager.getLeftDistance(currentTreePair.getFirst(), pair);
-            rightDistance = IntervalTreeForestManager.getRightDistance(currentTreePair.getFirst(), pair);
-        } else {
-            leftDistance = IntervalTreeForestManager.getLeftDistance(currentTreePair.getSecond(), pair);
-            rightDistance = IntervalTreeForestManager.getRightDistance(currentTreePair.getSecond(), pair);
+            if (seek(currentTreePair.getFirstCursor(), pair)) {
+                return currentTreePair.getFirstCursor().getDistance(pair.getAlignmentStart(), pair.getAlignmentEnd());
+            }
+            return currentTreePair.getFirstDistances().getDistance(pair.getAlignmentStart(), pair.getAlignmentEnd());
+        }
+        if (seek(currentTreePair.getSecondCursor(), pair)) {
+            return currentTreePair.getSecondCursor().getDistance(pair.getAlignmentStart(), pair.getAlignmentEnd());
         }
-        return Math.min(leftDistance, rightDistance);
+        return currentTreePair.getSecondDistances().getDistance(pair.getAlignmentStart(), pair.getAlignmentEnd());
     }
 
     /**
@@ -86,13 +131,35 @@ public class StrandSpecificForest implements IntervalTreeForestManager {
     @Override
     public boolean isAntisenseBetter(ReadAnnotation pair) {
         // Basically the same logic as hasContainedGene but other way around
-        List<Gene> resultGenes = new ArrayList<>();
         if (pair.isReadStrandNegative()) {
-            currentTreePair.getFirst().getIntervalsSpanning(pair.getAlignmentStart(), pair.getAlignmentEnd(), resultGenes);
-        } else {
-            currentTreePair.getSecond().getIntervalsSpanning(pair.getAlignmentStart(), pair.getAlignmentEnd(), resultGenes);
+            if (seek(currentTreePair.getFirstCursor(), pair)) {
+                return currentTreePair.getFirstCursor().hasIntervalsSpanning(pair.getAlignmentStart(), pair.getAlignmentEnd());
+            }
+            return currentTreePair.getFirst().hasIntervalsSpanning(pair.getAlignmentStart(), pair.getAlignmentEnd());
+        }
+        if (seek(currentTreePair.getSecondCursor(), pair)) {
+            return currentTreePair.getSecondCursor().hasIntervalsSpanning(pair.getAlignmentStart(), pair.getAlignmentEnd());
+        }
+        return currentTreePair.getSecond().hasIntervalsSpanning(pair.getAlignmentStart(), pair.getAlignmentEnd());
+    }
+
+    /**
+     * @param pair   the pair to be checked
+     * @param result a buffer of the caller, cleared by the caller and reused for every pair
+     * @return the result of one pass of the cursor of the read strand, the tree of the other strand is only checked
+     * for antisense if the pair is intergenic
+     */
+    @Override
+    public GeneQueryResult<Gene> query(ReadAnnotation pair, GeneQueryResult<Gene> result) {
+        GeneSweepCursor<Gene> cursor = pair.isReadStrandNegative() ? currentTreePair.getSecondCursor() : currentTreePair.getFirstCursor();
+        if (!seek(cursor, pair)) {
+            return IntervalTreeForestManager.super.query(pair, result);
+        }
+        cursor.query(pair.getAlignmentStart(), pair.getAlignmentEnd(), result);
+        if (result.isIntergenic()) {
+            result.setAntisense(isAntisenseBetter(pair));
         }
-        return !resultGenes.isEmpty();
+        return result;
     }
 
     /**
@@ -102,31 +169,145 @@ public class StrandSpecificForest implements IntervalTreeForestManager {
      */
     @Override
     public void init(GTFAnnotation gtfAnnotation) {
-        chromosomeToGeneTree = new HashMap<>();
+        long time = System.currentTimeMillis();
+        chromosomeToGeneTree = new ConcurrentHashMap<>();
         // TODO: Biotype extracting
-        for (Gene gene : gtfAnnotation.getGenes().values()) {
-            String chromosome = gene.getSeqname();
-            StrandDirection strand = gene.getStrand();
-            if (!chromosomeToGeneTree.containsKey(chromosome)) {
-                chromosomeToGeneTree.put(chromosome, new TreePair());
-            }
-            if (strandSpecificity == StrandDirection.FORWARD) {
-                if (strand == StrandDirection.FORWARD) {
-                    chromosomeToGeneTree.get(chromosome).getFirst().add(gene);
-                } else {
-                    // StrandDirection.REVERSE
-                    chromosomeToGeneTree.get(chromosome).getSecond().add(gene);
-                }
-            } else {
-                // StrandDirection.REVERSE
-                if (strand == StrandDirection.REVERSE) {
-                    chromosomeToGeneTree.get(chromosome).getFirst().add(gene);
-                } else {
-                    // StrandDirection.FORWARD
-                    chromosomeToGeneTree.get(chromosome).getSecond().add(gene);
-                }
+        unbuiltGenes = new ConcurrentHashMap<>();
+        if (releaseFinishedChromosomes) {
+            // only the genes are grouped, the trees are built by nextTree
+            for (Gene gene : gtfAnnotation.getGenes().values()) {
+                unbuiltGenes.computeIfAbsent(gene.getSeqname(), k -> new ArrayList<>()).add(gene);
             }
+        } else {
+            buildTrees(gtfAnnotation.getGenes().values());
         }
+        System.out.println("LOG: Time to build forest: " + (System.currentTimeMillis() - time) + " ms");
+    }
+
+    /**
+     * Groups the genes by chromosome and loads the tree pair of every chromosome in bulk, the chromosomes in parallel
+     */
+    private void buildTrees(Collection<Gene> genes) {
+        Map<String, List<Gene>> genesByChromosome = genes.stream().collect(Collectors.groupingBy(Gene::getSeqname));
+        genesByChromosome.entrySet().parallelStream().forEach(chromosomeGenes -> {
+            Map<Boolean, List<Gene>> genesByTree = chromosomeGenes.getValue().stream().collect(Collectors.partitioningBy(this::isFirstTree));
+            chromosomeToGeneTree.put(chromosomeGenes.getKey(), new TreePair(treeFactory, genesByTree.get(true), genesByTree.get(false)));
+        });
+    }
+
+    /**
+     * @return true if the cursor answers the queries of the pair, false if the tree has to
+     */
+    private boolean seek(GeneSweepCursor<Gene> cursor, ReadAnnotation pair) {
+        return sweepCursor && cursor.seek(pair.getAlignmentStart());
+    }
+
+    /**
+     * @return true if the gene belongs to the first tree (the strand of the reads), false for the second tree
+     */
+    private boolean isFirstTree(Gene gene) {
+        if (strandSpecificity == StrandDirection.FORWARD) {
+            return gene.getStrand() == StrandDirection.FORWARD;
+        }
+        return gene.getStrand() == StrandDirection.REVERSE;
+    }
 
+    /**
+     * @param gene the gene to be added
+     *             Adds a single gene to the tree of its chromosome, to build the forest while the GTF is streamed.
+     *             Can be called from another thread for chromosomes that are not selected yet
+     */
+    @Override
+    public void addGene(Gene gene) {
+        String chromosome = gene.getSeqname();
+        if (!chromosomeToGeneTree.containsKey(chromosome)) {
+            chromosomeToGeneTree.put(chromosome, new TreePair(treeFactory));
+        }
+        if (isFirstTree(gene)) {
+            chromosomeToGeneTree.get(chromosome).addFirst(gene);
+        } else {
+            chromosomeToGeneTree.get(chromosome).addSecond(gene);
+        }
+    }
+
+    /**
+     * Drops the tree of the selected chromosome (and the references to its genes) when another chromosome is selected
+     *
+     * @throws IllegalStateException if the chromosome was released already, the reads are not sorted by coordinate
+     */
+    private void releaseSelectedChromosome(String chromosome) {
+        if (chromosome.equals(selectedChromosome)) {
+            return;
+        }
+        if (releasedChromosomes.contains(chromosome)) {
+            throw new IllegalStateException("The tree of chromosome " + chromosome + " was released already, the reads have to be sorted by coordinate");
+        }
+        if (selectedChromosome != null) {
+            chromosomeToGeneTree.remove(selectedChromosome);
+            releasedChromosomes.add(selectedChromosome);
+        }
+        currentTreePair = null;
+    }
+
+    /**
+     * Drops the genes of the chromosomes before the selected one in the contig order, they have no reads and their
+     * trees would never be built. Chromosomes that are not in the order release nothing
+     */
+    private void releaseSkippedChromosomes(String chromosome) {
+        if (chromosomeOrder == null) {
+            return;
+        }
+        int position = releasedOrder;
+        while (position < chromosomeOrder.size() && !chromosomeOrder.get(position).equals(chromosome)) {
+            position++;
+        }
+        if (position == chromosomeOrder.size()) {
+            return;
+        }
+        for (; releasedOrder < position; releasedOrder++) {
+            unbuiltGenes.remove(chromosomeOrder.get(releasedOrder));
+            releasedChromosomes.add(chromosomeOrder.get(releasedOrder));
+        }
+        // the selected chromosome is released when the next one is selected
+        releasedOrder++;
+    }
+
+    /**
+     * @param releaseFinishedChromosomes build the tree of a chromosome when it is selected first and drop it when the
+     *                                   next chromosome is selected, so only one chromosome is held at a time.
+     *                                   Chromosomes can not be selected again
+     */
+    @Override
+    public void setReleaseFinishedChromosomes(boolean releaseFinishedChromosomes) {
+        this.releaseFinishedChromosomes = releaseFinishedChromosomes;
+    }
+
+    /**
+     * @param chromosomeOrder the contig order of the reads, e.g. of the BAM header. In release mode, selecting a
+     *                        chromosome also drops the genes of the chromosomes before it, they have no reads
+     */
+    @Override
+    public void setChromosomeOrder(List<String> chromosomeOrder) {
+        this.chromosomeOrder = chromosomeOrder;
+        releasedOrder = 0;
+    }
+
+    /**
+     * @param sweepCursor answer the queries of the reads with the {@link GeneSweepCursor} of the current tree, true by
+     *                    default. Reads behind the window of the cursor are queried on the tree
+     */
+    @Override
+    public void setSweepCursor(boolean sweepCursor) {
+        this.sweepCursor = sweepCursor;
+    }
+
+    /**
+     * @param geneLoader returns the genes of a chromosome
+     *                   Switches to lazy loading: nextTree builds only the tree of the selected chromosome from the loader
+     *                   and drops the trees of the other chromosomes
+     */
+    @Override
+    public void setGeneLoader(Function<String, Collection<Gene>> geneLoader) {
+        this.geneLoader = geneLoader;
     }
 }
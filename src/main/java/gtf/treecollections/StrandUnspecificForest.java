@@ -1,18 +1,50 @@
 package gtf.treecollections;
 
-import augmentedTree.IntervalTree;
 import bamfeatures.ReadAnnotation;
 import gtf.GTFAnnotation;
 import gtf.structs.Gene;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public class StrandUnspecificForest implements IntervalTreeForestManager {
-    HashMap<String, IntervalTree<Gene>> chromosomeToGeneTree = new HashMap<>();
-    IntervalTree<Gene> currentTree;
+    Map<String, IntervalIndex<Gene>> chromosomeToGeneTree = new ConcurrentHashMap<>();
+    Map<String, GeneDistanceIndex> chromosomeToGeneDistances = new ConcurrentHashMap<>();
+    Map<String, GeneSweepCursor<Gene>> chromosomeToGeneCursor = new ConcurrentHashMap<>();
+    IntervalIndex<Gene> currentTree;
+    GeneDistanceIndex currentDistances;
+    GeneSweepCursor<Gene> currentCursor;
+    Function<String, Collection<Gene>> geneLoader;
     List<Gene> resultGenes;
+    Supplier<IntervalIndex<Gene>> treeFactory;
+    boolean releaseFinishedChromosomes;
+    boolean sweepCursor = true;
+    // in release mode, the genes of the chromosomes whose trees are built on first use
+    Map<String, List<Gene>> unbuiltGenes = new ConcurrentHashMap<>();
+    Set<String> releasedChromosomes = new HashSet<>();
+    String selectedChromosome;
+    List<String> chromosomeOrder;
+    // the chromosomes before this position of the contig order are released
+    int releasedOrder;
+
+    public StrandUnspecificForest() {
+        this(DEFAULT_TREE_FACTORY);
+    }
+
+    /**
+     * @param treeFactory creates the trees, e.g. {@link AugmentedIntervalIndex} for the tree of the AugmentedTree jar
+     */
+    public StrandUnspecificForest(Supplier<IntervalIndex<Gene>> treeFactory) {
+        this.treeFactory = treeFactory;
+    }
 
     /**
      * @param chromosome the chromosome to be selected
@@ -20,8 +52,32 @@ public class StrandUnspecificForest implements IntervalTreeForestManager {
      */
     @Override
     public void nextTree(String chromosome) {
+        if (releaseFinishedChromosomes) {
+            releaseSelectedChromosome(chromosome);
+            releaseSkippedChromosomes(chromosome);
+        }
+        selectedChromosome = chromosome;
+        if (geneLoader != null) {
+            // Only the tree of the current chromosome is kept
+            chromosomeToGeneTree = new ConcurrentHashMap<>();
+            chromosomeToGeneDistances = new ConcurrentHashMap<>();
+            chromosomeToGeneCursor = new ConcurrentHashMap<>();
+            buildTrees(geneLoader.apply(chromosome));
+        } else if (unbuiltGenes.containsKey(chromosome)) {
+            buildTrees(unbuiltGenes.remove(chromosome));
+        }
         currentTree = chromosomeToGeneTree.get(chromosome);
-        // TODO: delete the current tree
+        currentDistances = chromosomeToGeneDistances.get(chromosome);
+        currentCursor = chromosomeToGeneCursor.get(chromosome);
+        if (currentTree == null) {
+            // Chromosome without genes
+            currentTree = treeFactory.get();
+            currentDistances = new GeneDistanceIndex();
+            currentCursor = new GeneSweepCursor<>();
+        }
+        currentTree.index();
+        currentDistances.index();
+        currentCursor.index();
     }
 
 
@@ -31,10 +87,10 @@ public class StrandUnspecificForest implements IntervalTreeForestManager {
      */
     @Override
     public boolean hasContainedGene(ReadAnnotation pair) {
-        List<Gene> resultGenes = new ArrayList<>();
-        currentTree.getIntervalsSpannedBy(pair.getAlignmentStart(), pair.getAlignmentEnd(), resultGenes);
-
-        return !resultGenes.isEmpty();
+        if (seek(pair)) {
+            return currentCursor.hasIntervalsSpannedBy(pair.getAlignmentStart(), pair.getAlignmentEnd());
+        }
+        return currentTree.hasIntervalsSpannedBy(pair.getAlignmentStart(), pair.getAlignmentEnd());
     }
 
     /**
@@ -42,10 +98,11 @@ public class StrandUnspecificForest implements IntervalTreeForestManager {
      * @return the genes that are enclosing the pair (pair is inside the gene)
      */
     @Override
-    public List<Gene> getGenesThatInclude(ReadAnnotation pair) {
-        List<Gene> resultGenes = new ArrayList<>();
-        currentTree.getIntervalsSpanning(pair.getAlignmentStart(), pair.getAlignmentEnd(), resultGenes);
-        return resultGenes;
+    public <C extends Collection<Gene>> C getGenesThatInclude(ReadAnnotation pair, C result) {
+        if (seek(pair)) {
+            return currentCursor.getIntervalsSpanning(pair.getAlignmentStart(), pair.getAlignmentEnd(), result);
+        }
+        return currentTree.getIntervalsSpanning(pair.getAlignmentStart(), pair.getAlignmentEnd(), result);
     }
 
     /**
@@ -54,9 +111,10 @@ public class StrandUnspecificForest implements IntervalTreeForestManager {
      */
     @Override
     public int getDistanceToNearestNeighborGene(ReadAnnotation pair) {
-        int leftDistance = IntervalTreeForestManager.getLeftDistance(currentTree, pair);
-        int rightDistance = IntervalTreeForestManager.getRightDistance(currentTree, pair);
-        return Math.min(leftDistance, rightDistance);
+        if (seek(pair)) {
+            return currentCursor.getDistance(pair.getAlignmentStart(), pair.getAlignmentEnd());
+        }
+        return currentDistances.getDistance(pair.getAlignmentStart(), pair.getAlignmentEnd());
     }
 
     /**
@@ -68,6 +126,26 @@ public class StrandUnspecificForest implements IntervalTreeForestManager {
         return false;
     }
 
+    /**
+     * @return true if the cursor answers the queries of the pair, false if the tree has to
+     */
+    private boolean seek(ReadAnnotation pair) {
+        return sweepCursor && currentCursor.seek(pair.getAlignmentStart());
+    }
+
+    /**
+     * @param pair   the pair to be checked
+     * @param result a buffer of the caller, cleared by the caller and reused for every pair
+     * @return the result of one pass of the cursor, antisense is never better
+     */
+    @Override
+    public GeneQueryResult<Gene> query(ReadAnnotation pair, GeneQueryResult<Gene> result) {
+        if (!seek(pair)) {
+            return IntervalTreeForestManager.super.query(pair, result);
+        }
+        return currentCursor.query(pair.getAlignmentStart(), pair.getAlignmentEnd(), result);
+    }
+
     /**
      * @param gtfAnnotation the annotation to be used
      *                      Initializes the IntervalTreeForestManager with the given annotation
@@ -75,13 +153,140 @@ public class StrandUnspecificForest implements IntervalTreeForestManager {
      */
     @Override
     public void init(GTFAnnotation gtfAnnotation) {
-        chromosomeToGeneTree = new HashMap<>();
-        for (Gene gene : gtfAnnotation.getGenes().values()) {
-            if (!chromosomeToGeneTree.containsKey(gene.getSeqname())) {
-                chromosomeToGeneTree.put(gene.getSeqname(), new IntervalTree<>());
+        long time = System.currentTimeMillis();
+        chromosomeToGeneTree = new ConcurrentHashMap<>();
+        chromosomeToGeneDistances = new ConcurrentHashMap<>();
+        chromosomeToGeneCursor = new ConcurrentHashMap<>();
+        unbuiltGenes = new ConcurrentHashMap<>();
+        if (releaseFinishedChromosomes) {
+            // only the genes are grouped, the trees are built by nextTree
+            for (Gene gene : gtfAnnotation.getGenes().values()) {
+                unbuiltGenes.computeIfAbsent(gene.getSeqname(), k -> new ArrayList<>()).add(gene);
             }
-            chromosomeToGeneTree.get(gene.getSeqname()).add(gene);
+        } else {
+            buildTrees(gtfAnnotation.getGenes().values());
         }
+        System.out.println("LOG: Time to build forest: " + (System.currentTimeMillis() - time) + " ms");
     }
 
+    /**
+     * Groups the genes by chromosome and loads the tree of every chromosome in bulk, the chromosomes in parallel
+     */
+    private void buildTrees(Collection<Gene> genes) {
+        Map<String, List<Gene>> genesByChromosome = genes.stream().collect(Collectors.groupingBy(Gene::getSeqname));
+        genesByChromosome.entrySet().parallelStream().forEach(chromosomeGenes -> {
+            IntervalIndex<Gene> tree = treeFactory.get();
+            tree.addAll(chromosomeGenes.getValue());
+            tree.index();
+            GeneDistanceIndex distances = new GeneDistanceIndex();
+            distances.addAll(chromosomeGenes.getValue());
+            distances.index();
+            GeneSweepCursor<Gene> cursor = new GeneSweepCursor<>();
+            cursor.addAll(chromosomeGenes.getValue());
+            cursor.index();
+            chromosomeToGeneTree.put(chromosomeGenes.getKey(), tree);
+            chromosomeToGeneDistances.put(chromosomeGenes.getKey(), distances);
+            chromosomeToGeneCursor.put(chromosomeGenes.getKey(), cursor);
+        });
+    }
+
+    /**
+     * @param gene the gene to be added
+     *             Adds a single gene to the tree of its chromosome, to build the forest while the GTF is streamed.
+     *             Can be called from another thread for chromosomes that are not selected yet
+     */
+    @Override
+    public void addGene(Gene gene) {
+        if (!chromosomeToGeneTree.containsKey(gene.getSeqname())) {
+            chromosomeToGeneTree.put(gene.getSeqname(), treeFactory.get());
+        }
+        chromosomeToGeneTree.get(gene.getSeqname()).add(gene);
+        chromosomeToGeneDistances.computeIfAbsent(gene.getSeqname(), k -> new GeneDistanceIndex()).add(gene);
+        chromosomeToGeneCursor.computeIfAbsent(gene.getSeqname(), k -> new GeneSweepCursor<>()).add(gene);
+    }
+
+    /**
+     * Drops the tree of the selected chromosome (and the references to its genes) when another chromosome is selected
+     *
+     * @throws IllegalStateException if the chromosome was released already, the reads are not sorted by coordinate
+     */
+    private void releaseSelectedChromosome(String chromosome) {
+        if (chromosome.equals(selectedChromosome)) {
+            return;
+        }
+        if (releasedChromosomes.contains(chromosome)) {
+            throw new IllegalStateException("The tree of chromosome " + chromosome + " was released already, the reads have to be sorted by coordinate");
+        }
+        if (selectedChromosome != null) {
+            chromosomeToGeneTree.remove(selectedChromosome);
+            chromosomeToGeneDistances.remove(selectedChromosome);
+            chromosomeToGeneCursor.remove(selectedChromosome);
+            releasedChromosomes.add(selectedChromosome);
+        }
+        currentTree = null;
+        currentDistances = null;
+        currentCursor = null;
+    }
+
+    /**
+     * Drops the genes of the chromosomes before the selected one in the contig order, they have no reads and their
+     * trees would never be built. Chromosomes that are not in the order release nothing
+     */
+    private void releaseSkippedChromosomes(String chromosome) {
+        if (chromosomeOrder == null) {
+            return;
+        }
+        int position = releasedOrder;
+        while (position < chromosomeOrder.size() && !chromosomeOrder.get(position).equals(chromosome)) {
+            position++;
+        }
+        if (position == chromosomeOrder.size()) {
+            return;
+        }
+        for (; releasedOrder < position; releasedOrder++) {
+            unbuiltGenes.remove(chromosomeOrder.get(releasedOrder));
+            releasedChromosomes.add(chromosomeOrder.get(releasedOrder));
+        }
+        // the selected chromosome is released when the next one is selected
+        releasedOrder++;
+    }
+
+    /**
+     * @param releaseFinishedChromosomes build the tree of a chromosome when it is selected first and drop it when the
+     *                                   next chromosome is selected, so only one chromosome is held at a time.
+     *                                   Chromosomes can not be selected again
+     */
+    @Override
+    public void setReleaseFinishedChromosomes(boolean releaseFinishedChromosomes) {
+        this.releaseFinishedChromosomes = releaseFinishedChromosomes;
+    }
+
+    /**
+     * @param chromosomeOrder the contig order of the reads, e.g. of the BAM header. In release mode, selecting a
+     *                        chromosome also drops the genes of the chromosomes before it, they have no reads
+     */
+    @Override
+    public void setChromosomeOrder(List<String> chromosomeOrder) {
+        this.chromosomeOrder = chromosomeOrder;
+        releasedOrder = 0;
+    }
+
+    /**
+     * @param sweepCursor answer the queries of the reads with the {@link GeneSweepCursor} of the current tree, true by
+     *                    default. Reads behind the window of the cursor are queried on the tree
+     */
+    @Override
+    public void setSweepCursor(boolean sweepCursor) {
+        this.sweepCursor = sweepCursor;
+    }
+
+    /**
+     * @param geneLoader returns the genes of a chromosome
+     *                   Switches to lazy loading: nextTree builds only the tree of the selected chromosome from the loader
+     *                   and drops the trees of the other chromosomes
+     */
+    @Override
+    public void setGeneLoader(Function<String, Collection<Gene>> geneLoader) {
+        this.geneLoader = geneLoader;
+    }
 }
@@ -1,17 +1,85 @@
 package gtf.treecollections;
 
-import augmentedTree.IntervalTree;
 import gtf.structs.Gene;
 import readsimulator.IdenticalPair;
 
-public class TreePair extends IdenticalPair<IntervalTree<Gene>> {
+import java.util.Collection;
+import java.util.function.Supplier;
 
+public final class TreePair extends IdenticalPair<IntervalIndex<Gene>> {
+    // the gene distances of the first and the second tree
+    private final GeneDistanceIndex firstDistances = new GeneDistanceIndex();
+    private final GeneDistanceIndex secondDistances = new GeneDistanceIndex();
+    // the sweep cursors of the first and the second tree
+    private final GeneSweepCursor<Gene> firstCursor = new GeneSweepCursor<>();
+    private final GeneSweepCursor<Gene> secondCursor = new GeneSweepCursor<>();
 
-    public TreePair(IntervalTree<Gene> first, IntervalTree<Gene> second) {
+    public TreePair(IntervalIndex<Gene> first, IntervalIndex<Gene> second) {
         super(first, second);
     }
 
-    public TreePair() {
-        super(new IntervalTree<>(), new IntervalTree<>());
+    public TreePair(Supplier<IntervalIndex<Gene>> treeFactory) {
+        super(treeFactory.get(), treeFactory.get());
+    }
+
+    /**
+     * Loads the genes of both trees in bulk and indexes them
+     */
+    public TreePair(Supplier<IntervalIndex<Gene>> treeFactory, Collection<Gene> firstGenes, Collection<Gene> secondGenes) {
+        this(treeFactory);
+        getFirst().addAll(firstGenes);
+        getSecond().addAll(secondGenes);
+        firstDistances.addAll(firstGenes);
+        secondDistances.addAll(secondGenes);
+        firstCursor.addAll(firstGenes);
+        secondCursor.addAll(secondGenes);
+        index();
+    }
+
+    /**
+     * Adds the gene to the first tree, its distance index and its cursor
+     */
+    public void addFirst(Gene gene) {
+        getFirst().add(gene);
+        firstDistances.add(gene);
+        firstCursor.add(gene);
+    }
+
+    /**
+     * Adds the gene to the second tree, its distance index and its cursor
+     */
+    public void addSecond(Gene gene) {
+        getSecond().add(gene);
+        secondDistances.add(gene);
+        secondCursor.add(gene);
+    }
+
+    /**
+     * Indexes both trees, distance indices and cursors, see {@link IntervalIndex#index()}. The cursors are moved back
+     * to the start of the chromosome
+     */
+    public void index() {
+        getFirst().index();
+        getSecond().index();
+        firstDistances.index();
+        secondDistances.index();
+        firstCursor.index();
+        secondCursor.index();
+    }
+
+    public GeneDistanceIndex getFirstDistances() {
+        return firstDistances;
+    }
+
+    public GeneDistanceIndex getSecondDistances() {
+        return secondDistances;
+    }
+
+    public GeneSweepCursor<Gene> getFirstCursor() {
+        return firstCursor;
+    }
+
+    public GeneSweepCursor<Gene> getSecondCursor() {
+        return secondCursor;
     }
 }
@@ -0,0 +1,97 @@
+package parsers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Declares which GTF attributes the parser decodes. IDs are always decoded, the names, extra attributes such as
+ * gene_biotype and the raw attribute column for lazy decoding of any other attribute are optional.
+ * The fewer attributes are needed, the earlier the parser stops scanning the attribute column.
+ */
+public class AttributeProjection {
+    /**
+     * IDs and names, the attributes of the annotation model
+     */
+    public static final AttributeProjection DEFAULT = new Builder().build();
+    /**
+     * Only gene, transcript and protein IDs, gene and transcript names stay null
+     */
+    public static final AttributeProjection IDS_ONLY = new Builder().setNames(false).build();
+
+    private final boolean names;
+    private final String[] attributes;
+    private final byte[][] attributeKeys;
+    private final boolean rawAttributes;
+
+    private AttributeProjection(Builder builder) {
+        this.names = builder.names;
+        this.attributes = builder.attributes;
+        this.attributeKeys = new byte[attributes.length][];
+        for (int i = 0; i < attributes.length; i++) {
+            attributeKeys[i] = attributes[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        this.rawAttributes = builder.rawAttributes;
+    }
+
+    public boolean hasNames() {
+        return names;
+    }
+
+    /**
+     * @return the extra attributes that are decoded while parsing
+     */
+    public String[] getAttributes() {
+        return attributes;
+    }
+
+    byte[][] getAttributeKeys() {
+        return attributeKeys;
+    }
+
+    public boolean keepsRawAttributes() {
+        return rawAttributes;
+    }
+
+    /**
+     * @return true if the annotation model can not hold the projected attributes, e.g. in a snapshot
+     */
+    public boolean hasExtraAttributes() {
+        return attributes.length > 0 || rawAttributes;
+    }
+
+    public static class Builder {
+        private boolean names = true;
+        private String[] attributes = new String[0];
+        private boolean rawAttributes = false;
+
+        public Builder() {
+        }
+
+        public Builder setNames(boolean names) {
+            this.names = names;
+            return this;
+        }
+
+        /**
+         * @param attributes attribute keys that are decoded while parsing, e.g. gene_biotype, only the first value of
+         *                   keys that occur several times is kept
+         */
+        public Builder setAttributes(String... attributes) {
+            this.attributes = Arrays.stream(attributes).distinct().toArray(String[]::new);
+            return this;
+        }
+
+        /**
+         * @param rawAttributes keep the attribute column undecoded so that any attribute can be decoded on access.
+         *                      For plain files the column is referenced in the mapped file, for compressed files it is copied.
+         */
+        public Builder setRawAttributes(boolean rawAttributes) {
+            this.rawAttributes = rawAttributes;
+            return this;
+        }
+
+        public AttributeProjection build() {
+            return new AttributeProjection(this);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package parsers;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a BGZF file (bgzip, a series of independent gzip blocks of at most 64 KB) and inflates the blocks in parallel
+ * on the common ForkJoin pool. The compressed blocks are read ahead in file order, the inflated blocks are returned in
+ * the same order.
+ */
+public class BGZFParallelInputStream extends InputStream {
+    private static final int HEADER_SIZE = 18;
+    // Blocks that are read and inflated ahead of the consumer
+    private static final int READ_AHEAD = Math.max(4, ForkJoinPool.getCommonPoolParallelism() * 4);
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final DataInputStream in;
+    private final ArrayDeque<CompletableFuture<byte[]>> blocks = new ArrayDeque<>();
+    private boolean endOfInput = false;
+    private byte[] current = new byte[0];
+    private int position = 0;
+
+    public BGZFParallelInputStream(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    /**
+     * @param header at least the first 18 bytes of a file
+     * @return true if the bytes start a BGZF block: a gzip header with the "BC" extra subfield
+     */
+    public static boolean isBGZF(byte[] header, int length) {
+        return length >= HEADER_SIZE && (header[0] & 0xFF) == 31 && (header[1] & 0xFF) == 139 && header[2] == 8
+                && (header[3] & 4) != 0 && header[12] == 'B' && header[13] == 'C' && header[14] == 2 && header[15] == 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * @return false if all blocks are consumed
+     */
+    private boolean fill() throws IOException {
+        while (position == current.length) {
+            while (!endOfInput && blocks.size() < READ_AHEAD) {
+                byte[] compressed = readBlock();
+                if (compressed == null) {
+                    endOfInput = true;
+                } else {
+                    blocks.add(CompletableFuture.supplyAsync(() -> inflate(compressed), ForkJoinPool.commonPool()));
+                }
+            }
+            if (blocks.isEmpty()) {
+                return false;
+            }
+            try {
+                current = blocks.poll().join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+            position = 0;
+        }
+        return true;
+    }
+
+    /**
+     * @return the whole block including header and trailer, null at the end of the file
+     */
+    private byte[] readBlock() throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        int read = in.readNBytes(header, 0, HEADER_SIZE);
+        if (read == 0) {
+            return null;
+        }
+        if (!isBGZF(header, read)) {
+            throw new IOException("Invalid BGZF block header");
+        }
+        int extraLength = (header[10] & 0xFF) | (header[11] & 0xFF) << 8;
+        // BSIZE is the total block size minus one
+        int blockSize = ((header[16] & 0xFF) | (header[17] & 0xFF) << 8) + 1;
+        if (extraLength != 6 || blockSize < HEADER_SIZE + 8) {
+            throw new IOException("Unsupported BGZF block header");
+        }
+        byte[] block = Arrays.copyOf(header, blockSize);
+        try {
+            in.readFully(block, HEADER_SIZE, blockSize - HEADER_SIZE);
+        } catch (EOFException e) {
+            throw new IOException("Truncated BGZF block", e);
+        }
+        return block;
+    }
+
+    private static byte[] inflate(byte[] block) {
+        int trailer = block.length - 8;
+        int expectedCrc = readInt(block, trailer);
+        int size = readInt(block, trailer + 4);
+        byte[] inflated = new byte[size];
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(block, HEADER_SIZE, trailer - HEADER_SIZE);
+        try {
+            int count = 0;
+            while (count < size && !inflater.finished()) {
+                int inflatedCount = inflater.inflate(inflated, count, size - count);
+                if (inflatedCount == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                count += inflatedCount;
+            }
+            if (count != size) {
+                throw new CompletionException(new IOException("BGZF block inflated to " + count + " instead of " + size + " bytes"));
+            }
+        } catch (DataFormatException e) {
+            throw new CompletionException(new IOException("Corrupt BGZF block", e));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(inflated);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new CompletionException(new IOException("BGZF block CRC mismatch"));
+        }
+        return inflated;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (CompletableFuture<byte[]> block : blocks) {
+            block.cancel(false);
+        }
+        blocks.clear();
+        in.close();
+    }
+}
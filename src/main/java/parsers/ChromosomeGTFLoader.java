@@ -0,0 +1,153 @@
+package parsers;
+
+import gtf.GTFAnnotation;
+import gtf.structs.Gene;
+import gtf.structs.Transcript;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the genes of one chromosome at a time through the {@link GTFIndex} of the GTF file, which is built on first
+ * use. When a chromosome is loaded, the next chromosome of the given order (e.g. the BAM header) is parsed on a
+ * background thread, so it is usually ready when it is requested.
+ * If the GTF file has a {@link GTFStore}, the genes are read from the mapped store instead.
+ * Files that can not be indexed (gzip without BGZF) are parsed once and served from memory.
+ */
+public class ChromosomeGTFLoader implements AutoCloseable {
+    private final String gtfFile;
+    private final List<String> chromosomeOrder;
+    // null if the GTF file has no store
+    private final GTFStore store;
+    // the chromosomes with genes, null if the file could not be indexed
+    private final Set<String> indexedChromosomes;
+    // the genes by chromosome if the file could not be indexed
+    private final Map<String, List<Gene>> allGenes;
+    // at most the chromosome after the last loaded one
+    private final Map<String, CompletableFuture<Collection<Gene>>> prefetched = new HashMap<>();
+    // the parsed chromosomes, they can not be loaded again without new indices
+    private final Set<String> parsedChromosomes = new HashSet<>();
+    // Genes of parsed chromosomes are numbered in load order, so the indices are unique within the run
+    private int nextGeneIndex;
+    private int nextTranscriptIndex;
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "gtf-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param gtfFile         the GTF file
+     * @param chromosomeOrder the order in which the chromosomes will be requested
+     */
+    public ChromosomeGTFLoader(String gtfFile, List<String> chromosomeOrder) {
+        this.gtfFile = gtfFile;
+        this.chromosomeOrder = chromosomeOrder;
+        store = GTFStore.open(gtfFile);
+        if (store != null) {
+            indexedChromosomes = store.getChromosomes();
+            allGenes = null;
+            return;
+        }
+        GTFIndex.createIfMissing(gtfFile);
+        GTFIndex index = GTFIndex.load(gtfFile);
+        if (index != null) {
+            indexedChromosomes = index.getChromosomes();
+            allGenes = null;
+        } else {
+            System.out.println("Warning, no GTF index for " + gtfFile + ", the whole file is parsed");
+            indexedChromosomes = null;
+            allGenes = new HashMap<>();
+            GTFAnnotation annotation = GTFParser.parseGTFParallel(gtfFile);
+            annotation.freeze();
+            for (Gene gene : annotation.getGenes().values()) {
+                allGenes.computeIfAbsent(gene.getSeqname(), k -> new ArrayList<>()).add(gene);
+            }
+        }
+    }
+
+    /**
+     * Returns the genes of the chromosome and starts to parse the next chromosome of the order in the background.
+     * The loader does not keep the genes, they are released once the caller drops them. A prefetched chromosome that
+     * is not requested next is dropped. The gene and transcript indices are unique over all chromosomes loaded by this
+     * loader.
+     *
+     * @return the genes of the chromosome, empty if it has no genes
+     * @throws IllegalStateException if a parsed chromosome is requested again, the reads have to be sorted by
+     *                               coordinate (chromosomes of a {@link GTFStore} can be loaded again)
+     */
+    public Collection<Gene> load(String chromosome) {
+        if (allGenes != null) {
+            return allGenes.getOrDefault(chromosome, List.of());
+        }
+        if (store == null && !parsedChromosomes.add(chromosome)) {
+            throw new IllegalStateException("The genes of chromosome " + chromosome + " were loaded already, the reads have to be sorted by coordinate");
+        }
+        CompletableFuture<Collection<Gene>> genes = prefetched.remove(chromosome);
+        if (genes == null) {
+            genes = submit(chromosome);
+        }
+        // the prefetched chromosome was skipped, its genes are not kept
+        for (CompletableFuture<Collection<Gene>> skipped : prefetched.values()) {
+            skipped.cancel(true);
+        }
+        prefetched.clear();
+        String next = nextChromosome(chromosome);
+        if (next != null && !parsedChromosomes.contains(next)) {
+            prefetched.put(next, submit(next));
+        }
+        Collection<Gene> loaded = genes.join();
+        if (store == null) {
+            number(loaded);
+        }
+        return loaded;
+    }
+
+    private void number(Collection<Gene> genes) {
+        List<Gene> sortedGenes = new ArrayList<>(genes);
+        sortedGenes.sort(GTFAnnotation.GENE_ORDER);
+        for (Gene gene : sortedGenes) {
+            gene.setIndex(nextGeneIndex++);
+            List<Transcript> transcripts = new ArrayList<>(gene.getTranscripts().values());
+            transcripts.sort(GTFAnnotation.TRANSCRIPT_ORDER);
+            for (Transcript transcript : transcripts) {
+                transcript.setIndex(nextTranscriptIndex++);
+            }
+        }
+    }
+
+    /**
+     * @return the chromosome with genes after the given one in the order or null
+     */
+    private String nextChromosome(String chromosome) {
+        int position = chromosomeOrder.indexOf(chromosome);
+        for (int i = position + 1; position >= 0 && i < chromosomeOrder.size(); i++) {
+            if (indexedChromosomes.contains(chromosomeOrder.get(i))) {
+                return chromosomeOrder.get(i);
+            }
+        }
+        return null;
+    }
+
+    private CompletableFuture<Collection<Gene>> submit(String chromosome) {
+        if (!indexedChromosomes.contains(chromosome)) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        if (store != null) {
+            return CompletableFuture.supplyAsync(() -> store.getGenes(chromosome), prefetcher);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            GTFAnnotation annotation = GTFParser.parseGTF(gtfFile, new GTFFilter.Builder().setChromosomes(List.of(chromosome)).build());
+            annotation.getGenes().values().forEach(Gene::freeze);
+            return annotation.getGenes().values();
+        }, prefetcher);
+    }
+
+    @Override
+    public void close() {
+        prefetched.clear();
+        prefetcher.shutdownNow();
+    }
+}
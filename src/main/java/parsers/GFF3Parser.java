@@ -0,0 +1,217 @@
+package parsers;
+
+import gtf.GTFAnnotation;
+import gtf.structs.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static parsers.GTFParser.*;
+
+/**
+ * Parses GFF3 files (plain or compressed) into the same model as {@link GTFParser}, on the same byte level tokenizer.
+ * <p>
+ * The ID/Parent hierarchy is resolved in a single pass: features without a parent whose type ends with "gene" are
+ * genes, features whose parent is a gene are transcripts (mRNA, lnc_RNA, ...) and exon and CDS features belong to
+ * their parent transcripts. Other features, e.g. UTRs or regions, are skipped.
+ * The model IDs are the gene_id, transcript_id, exon_id and protein_id attributes (Ensembl) and the GFF3 ID otherwise,
+ * names are the Name attribute and the exon number is the rank.
+ * Lines that come before their parent are the only ones that are buffered, they are processed as soon as the parent
+ * is read.
+ */
+public class GFF3Parser {
+    private static final String[] KEYS = {"ID", "Parent", "Name", GTFAttributes.GENE_ID, GTFAttributes.TRANSCRIPT_ID,
+            GTFAttributes.EXON_ID, GTFAttributes.PROTEIN_ID, "rank"};
+    private static final byte[][] KEY_BYTES = Arrays.stream(KEYS).map(key -> key.getBytes(StandardCharsets.US_ASCII)).toArray(byte[][]::new);
+    private static final int ID = 0;
+    private static final int PARENT = 1;
+    private static final int NAME = 2;
+    private static final int GENE_ID = 3;
+    private static final int TRANSCRIPT_ID = 4;
+    private static final int EXON_ID = 5;
+    private static final int PROTEIN_ID = 6;
+    private static final int RANK = 7;
+
+    private final GTFAnnotation gtfAnnotation = new GTFAnnotation();
+    // GFF3 IDs of the genes and transcripts read so far
+    private final Map<String, Gene> genes = new HashMap<>();
+    private final Map<String, Transcript> transcripts = new HashMap<>();
+    private final Map<String, Gene> transcriptGenes = new HashMap<>();
+    // IDs of skipped features, their children are skipped as well
+    private final Set<String> skippedIDs = new HashSet<>();
+    // lines whose parent was not read yet, by parent ID
+    private final Map<String, List<byte[]>> pendingLines = new HashMap<>();
+    private final String[] values = new String[KEYS.length];
+    private final GTFLineTokenizer pendingTokenizer = new GTFLineTokenizer();
+
+    private GFF3Parser() {
+    }
+
+    /**
+     * @param gff3File the GFF3 file to parse
+     * @return the parsed annotation, genes are keyed by their gene_id like in a GTF
+     */
+    public static GTFAnnotation parseGFF3(String gff3File) {
+        long startTime = System.currentTimeMillis();
+        GFF3Parser parser = new GFF3Parser();
+        try {
+            parseFile(gff3File, AttributeProjection.DEFAULT, parser::processLine);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        int orphans = parser.pendingLines.values().stream().mapToInt(List::size).sum();
+        if (orphans > 0) {
+            System.out.println("WARNING: " + orphans + " GFF3 lines reference a parent that does not exist");
+        }
+        GTFTimer.setGtfParseTime(System.currentTimeMillis() - startTime);
+        System.out.println("LOG: Total time to parse GFF3: " + GTFTimer.getGtfParseTime() + " ms");
+        return parser.gtfAnnotation;
+    }
+
+    /**
+     * @return true if the file name ends with .gff3 or .gff, optionally followed by .gz
+     */
+    public static boolean isGFF3(String file) {
+        String name = file.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        return name.endsWith(".gff3") || name.endsWith(".gff");
+    }
+
+    private void processLine(GTFLineTokenizer line) {
+        line.getGFF3Attributes(KEY_BYTES, values);
+        String id = values[ID];
+        String parents = values[PARENT];
+        String feature = line.getSymbol(FEATURE_COL);
+        if (parents == null) {
+            if (feature.endsWith("gene")) {
+                processGene(line, id);
+            } else if (id != null) {
+                skip(id);
+            }
+            return;
+        }
+        boolean exon = feature.equals("exon");
+        if (exon || feature.equals("CDS")) {
+            // Exons can be shared by several transcripts
+            for (String parent : parents.split(",")) {
+                Transcript transcript = transcripts.get(parent);
+                if (transcript == null) {
+                    pend(parent, line);
+                } else if (exon) {
+                    transcript.addExon(new Exon(line.getSymbol(SEQNAME_COL), line.getSymbol(SOURCE_COL), feature, parseInterval(line), line.getScore(), line.getStrand(), line.getFrame(), exonAttributes(parent)));
+                } else {
+                    transcript.addCds(new CodingSequence(line.getSymbol(SEQNAME_COL), line.getSymbol(SOURCE_COL), feature, parseInterval(line), line.getScore(), line.getStrand(), line.getFrame(), cdsAttributes(parent)));
+                }
+            }
+            return;
+        }
+        int comma = parents.indexOf(',');
+        String parent = comma < 0 ? parents : parents.substring(0, comma);
+        Gene gene = genes.get(parent);
+        if (gene != null && id != null) {
+            processTranscript(line, id, gene);
+        } else if (gene == null && id != null && !transcripts.containsKey(parent)) {
+            pend(parent, line);
+        } else if (id != null) {
+            // e.g. a UTR of a transcript
+            skip(id);
+        }
+    }
+
+    private void processGene(GTFLineTokenizer line, String id) {
+        GTFAttributes.Builder attributes = new GTFAttributes.Builder();
+        attributes.setGeneID(values[GENE_ID] != null ? values[GENE_ID] : id);
+        attributes.setGeneName(values[NAME]);
+        Gene gene = gtfAnnotation.getGene(values[GENE_ID] != null ? values[GENE_ID] : id);
+        if (gene == null) {
+            gene = new Gene(line.getSymbol(SEQNAME_COL), line.getSymbol(SOURCE_COL), line.getSymbol(FEATURE_COL), parseInterval(line), line.getScore(), line.getStrand(), line.getFrame(), attributes.build());
+            gtfAnnotation.addGene(gene);
+        } else {
+            gene.overwrite(line.getSymbol(SEQNAME_COL), line.getSymbol(SOURCE_COL), line.getSymbol(FEATURE_COL), parseInterval(line), line.getScore(), line.getStrand(), line.getFrame());
+        }
+        if (id != null) {
+            genes.put(id, gene);
+            processPending(id);
+        }
+    }
+
+    private void processTranscript(GTFLineTokenizer line, String id, Gene gene) {
+        GTFAttributes.Builder attributes = new GTFAttributes.Builder();
+        attributes.setGeneID(gene.getGeneID());
+        attributes.setGeneName(gene.getGeneName());
+        String transcriptID = values[TRANSCRIPT_ID] != null ? values[TRANSCRIPT_ID] : id;
+        attributes.setTranscriptID(transcriptID);
+        attributes.setTranscriptName(values[NAME]);
+        Transcript transcript = gene.getTranscript(transcriptID);
+        if (transcript == null) {
+            transcript = new Transcript(line.getSymbol(SEQNAME_COL), line.getSymbol(SOURCE_COL), line.getSymbol(FEATURE_COL), parseInterval(line), line.getScore(), line.getStrand(), line.getFrame(), attributes.build());
+            gene.addTranscript(transcript);
+        } else {
+            transcript.overwrite(line.getSymbol(SEQNAME_COL), line.getSymbol(SOURCE_COL), line.getSymbol(FEATURE_COL), parseInterval(line), line.getScore(), line.getStrand(), line.getFrame());
+        }
+        transcripts.put(id, transcript);
+        transcriptGenes.put(id, gene);
+        processPending(id);
+    }
+
+    private GTFAttributes exonAttributes(String parent) {
+        GTFAttributes.Builder attributes = transcriptAttributes(parent);
+        attributes.setExonID(values[EXON_ID] != null ? values[EXON_ID] : values[ID]);
+        attributes.setExonNumber(values[RANK]);
+        return attributes.build();
+    }
+
+    private GTFAttributes cdsAttributes(String parent) {
+        GTFAttributes.Builder attributes = transcriptAttributes(parent);
+        attributes.setProteinID(values[PROTEIN_ID] != null ? values[PROTEIN_ID] : values[ID]);
+        return attributes.build();
+    }
+
+    private GTFAttributes.Builder transcriptAttributes(String parent) {
+        Gene gene = transcriptGenes.get(parent);
+        Transcript transcript = transcripts.get(parent);
+        GTFAttributes.Builder attributes = new GTFAttributes.Builder();
+        attributes.setGeneID(gene.getGeneID());
+        attributes.setGeneName(gene.getGeneName());
+        attributes.setTranscriptID(transcript.getTranscriptID());
+        attributes.setTranscriptName(transcript.getTranscriptName());
+        return attributes;
+    }
+
+    private static Interval parseInterval(GTFLineTokenizer line) {
+        return new Interval(line.getInt(START_COL), line.getInt(END_COL));
+    }
+
+    private void pend(String parent, GTFLineTokenizer line) {
+        if (!skippedIDs.contains(parent)) {
+            pendingLines.computeIfAbsent(parent, k -> new ArrayList<>()).add(line.copyLine());
+        }
+    }
+
+    private void skip(String id) {
+        skippedIDs.add(id);
+        pendingLines.remove(id);
+    }
+
+    /**
+     * Processes the lines that were waiting for the feature, must be called after the current line is done
+     * because the nested lines overwrite the attribute values.
+     */
+    private void processPending(String id) {
+        List<byte[]> lines = pendingLines.remove(id);
+        if (lines == null) {
+            return;
+        }
+        for (byte[] pending : lines) {
+            ByteBuffer buffer = ByteBuffer.wrap(pending).order(ByteOrder.LITTLE_ENDIAN);
+            if (pendingTokenizer.reset(buffer, 0, pending.length)) {
+                processLine(pendingTokenizer);
+            }
+        }
+    }
+}
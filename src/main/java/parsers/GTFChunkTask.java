@@ -0,0 +1,60 @@
+package parsers;
+
+import gtf.GTFAnnotation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses a range of newline aligned chunks of a GTF file.
+ * Ranges are split in half until a single chunk is left, the partial annotations are merged back in file order
+ * so that the result is the same as parsing the whole file line by line.
+ */
+class GTFChunkTask extends RecursiveTask<GTFAnnotation> {
+    private static final long serialVersionUID = 1L;
+
+    // The task is never serialized, the file and the parse options stay with the running parse
+    private final transient FileChannel channel;
+    // chunk i spans [boundaries[i], boundaries[i + 1])
+    private final long[] boundaries;
+    private final int fromChunk;
+    private final int toChunk;
+    private final transient AttributeProjection projection;
+    private final transient GTFFilter filter;
+
+    GTFChunkTask(FileChannel channel, long[] boundaries, int fromChunk, int toChunk, AttributeProjection projection, GTFFilter filter) {
+        this.channel = channel;
+        this.boundaries = boundaries;
+        this.fromChunk = fromChunk;
+        this.toChunk = toChunk;
+        this.projection = projection;
+        this.filter = filter;
+    }
+
+    @Override
+    protected GTFAnnotation compute() {
+        if (toChunk - fromChunk == 1) {
+            return parseChunk(boundaries[fromChunk], boundaries[toChunk]);
+        }
+        int middle = (fromChunk + toChunk) >>> 1;
+        GTFChunkTask left = new GTFChunkTask(channel, boundaries, fromChunk, middle, projection, filter);
+        GTFChunkTask right = new GTFChunkTask(channel, boundaries, middle, toChunk, projection, filter);
+        right.fork();
+        GTFAnnotation leftAnnotation = left.compute();
+        // Left part comes first in the file, so the right part is merged into it
+        leftAnnotation.merge(right.join());
+        return leftAnnotation;
+    }
+
+    private GTFAnnotation parseChunk(long start, long end) {
+        GTFAnnotation chunkAnnotation = new GTFAnnotation();
+        try {
+            GTFParser.parseLines(GTFParser.map(channel, start, end), new GTFLineTokenizer(projection), GTFParser.filteredLineHandler(filter, chunkAnnotation));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return chunkAnnotation;
+    }
+}
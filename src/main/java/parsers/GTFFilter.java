@@ -0,0 +1,214 @@
+package parsers;
+
+import gtf.structs.GTFAttributes;
+import gtf.structs.SymbolTable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static parsers.GTFParser.*;
+
+/**
+ * Restricts which GTF lines are parsed. The filter is checked on the tokenized line before the attributes are parsed
+ * or any object is created, so rejected lines cost little more than finding their tabs.
+ * <p>
+ * All criteria are checked per line, like tabix: a region keeps the gene, transcript, exon and CDS lines that overlap
+ * it, so a gene that reaches out of the region keeps only the exons inside. Genes and transcripts that only have
+ * exon/CDS lines in the result are created from those lines as usual.
+ * The cheap column checks (feature, chromosome, region) run before the attribute checks (biotype, IDs).
+ */
+public class GTFFilter {
+    /**
+     * Accepts every line
+     */
+    public static final GTFFilter NONE = new Builder().build();
+    private static final byte[] GENE_BIOTYPE = GTFAttributes.GENE_BIOTYPE.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GENE_TYPE = GTFAttributes.GENE_TYPE.getBytes(StandardCharsets.US_ASCII);
+
+    private final Set<String> features;
+    private final Set<String> chromosomes;
+    // per chromosome sorted, disjoint regions: starts in [0], ends in [1]
+    private final Map<String, int[][]> regions;
+    private final Set<String> biotypes;
+    private final Set<String> geneIDs;
+    private final Set<String> transcriptIDs;
+
+    private GTFFilter(Builder builder) {
+        this.features = builder.features;
+        this.chromosomes = builder.chromosomes;
+        this.regions = mergeRegions(builder.regions);
+        this.biotypes = builder.biotypes;
+        this.geneIDs = builder.geneIDs;
+        this.transcriptIDs = builder.transcriptIDs;
+    }
+
+    /**
+     * @return the filter of {@link GTFParser#parseGTFForCounts}: the genes and transcripts of the read counts
+     */
+    public static GTFFilter forCounts(Map<String, Map<String, Integer>> geneTranscriptCounts) {
+        Set<String> transcriptIDs = new HashSet<>();
+        for (Map<String, Integer> transcriptCounts : geneTranscriptCounts.values()) {
+            transcriptIDs.addAll(transcriptCounts.keySet());
+        }
+        return new Builder().setGeneIDs(geneTranscriptCounts.keySet()).setTranscriptIDs(transcriptIDs).build();
+    }
+
+    public boolean acceptsAll() {
+        return features == null && chromosomes == null && regions == null && biotypes == null && geneIDs == null && transcriptIDs == null;
+    }
+
+    /**
+     * @return true if only lines on some chromosomes or in some regions are accepted, these can be read through a {@link GTFIndex}
+     */
+    public boolean restrictsLocation() {
+        return chromosomes != null || regions != null;
+    }
+
+    Set<String> getChromosomes() {
+        return chromosomes;
+    }
+
+    Map<String, int[][]> getRegions() {
+        return regions;
+    }
+
+    boolean accept(GTFLineTokenizer line) {
+        if (features != null && !features.contains(line.getSymbol(FEATURE_COL))) {
+            return false;
+        }
+        if (chromosomes != null || regions != null) {
+            String chromosome = line.getSymbol(SEQNAME_COL);
+            if (chromosomes != null && !chromosomes.contains(chromosome)) {
+                return false;
+            }
+            if (regions != null && !overlapsRegion(regions.get(chromosome), line.getInt(START_COL), line.getInt(END_COL))) {
+                return false;
+            }
+        }
+        if (biotypes != null) {
+            // GENCODE calls it gene_type, older Ensembl GTFs have the biotype in the source column
+            String biotype = line.getAttribute(GENE_BIOTYPE);
+            if (biotype == null) {
+                biotype = line.getAttribute(GENE_TYPE);
+            }
+            if (!biotypes.contains(biotype == null ? line.getSymbol(SOURCE_COL) : biotype)) {
+                return false;
+            }
+        }
+        if (geneIDs != null && !geneIDs.contains(line.getAttribute(GTFLineTokenizer.GENE_ID))) {
+            return false;
+        }
+        if (transcriptIDs != null) {
+            // Gene lines have no transcript, they are only restricted by the other criteria
+            String transcriptID = line.getAttribute(GTFLineTokenizer.TRANSCRIPT_ID);
+            return transcriptID == null || transcriptIDs.contains(transcriptID);
+        }
+        return true;
+    }
+
+    private static boolean overlapsRegion(int[][] chromosomeRegions, int start, int end) {
+        if (chromosomeRegions == null) {
+            return false;
+        }
+        // The last region that starts before the end of the line, the regions are disjoint so only it can overlap
+        int index = Arrays.binarySearch(chromosomeRegions[0], end);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return index >= 0 && chromosomeRegions[1][index] >= start;
+    }
+
+    private static Map<String, int[][]> mergeRegions(Map<String, List<int[]>> regions) {
+        if (regions == null) {
+            return null;
+        }
+        Map<String, int[][]> merged = new HashMap<>();
+        for (Map.Entry<String, List<int[]>> chromosomeRegions : regions.entrySet()) {
+            List<int[]> sorted = new ArrayList<>(chromosomeRegions.getValue());
+            sorted.sort(Comparator.comparingInt(region -> region[0]));
+            int[] starts = new int[sorted.size()];
+            int[] ends = new int[sorted.size()];
+            int count = 0;
+            for (int[] region : sorted) {
+                if (count > 0 && region[0] <= ends[count - 1] + 1) {
+                    ends[count - 1] = Math.max(ends[count - 1], region[1]);
+                } else {
+                    starts[count] = region[0];
+                    ends[count] = region[1];
+                    count++;
+                }
+            }
+            merged.put(chromosomeRegions.getKey(), new int[][]{Arrays.copyOf(starts, count), Arrays.copyOf(ends, count)});
+        }
+        return merged;
+    }
+
+    public static class Builder {
+        private Set<String> features;
+        private Set<String> chromosomes;
+        private Map<String, List<int[]>> regions;
+        private Set<String> biotypes;
+        private Set<String> geneIDs;
+        private Set<String> transcriptIDs;
+
+        public Builder() {
+        }
+
+        /**
+         * @param features the feature column values to keep, e.g. gene, transcript, exon, CDS
+         */
+        public Builder setFeatures(Collection<String> features) {
+            this.features = symbols(features);
+            return this;
+        }
+
+        public Builder setChromosomes(Collection<String> chromosomes) {
+            this.chromosomes = symbols(chromosomes);
+            return this;
+        }
+
+        /**
+         * Keeps the lines overlapping [start, end] (1-based, inclusive like the GTF), can be called several times
+         */
+        public Builder addRegion(String chromosome, int start, int end) {
+            if (start > end) {
+                throw new IllegalArgumentException("Region start " + start + " is after its end " + end);
+            }
+            if (regions == null) {
+                regions = new HashMap<>();
+            }
+            regions.computeIfAbsent(SymbolTable.intern(chromosome), k -> new ArrayList<>()).add(new int[]{start, end});
+            return this;
+        }
+
+        /**
+         * @param biotypes the gene_biotype values to keep, the source column if a line has no gene_biotype
+         */
+        public Builder setBiotypes(Collection<String> biotypes) {
+            this.biotypes = new HashSet<>(biotypes);
+            return this;
+        }
+
+        public Builder setGeneIDs(Collection<String> geneIDs) {
+            this.geneIDs = new HashSet<>(geneIDs);
+            return this;
+        }
+
+        public Builder setTranscriptIDs(Collection<String> transcriptIDs) {
+            this.transcriptIDs = new HashSet<>(transcriptIDs);
+            return this;
+        }
+
+        private static Set<String> symbols(Collection<String> values) {
+            Set<String> symbols = new HashSet<>();
+            for (String value : values) {
+                symbols.add(SymbolTable.intern(value));
+            }
+            return symbols;
+        }
+
+        public GTFFilter build() {
+            return new GTFFilter(this);
+        }
+    }
+}
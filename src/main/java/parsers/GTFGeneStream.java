@@ -0,0 +1,110 @@
+package parsers;
+
+import gtf.GTFAnnotation;
+import gtf.structs.Gene;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Streams the genes of a GTF file: every gene is handed to the consumer as soon as it is complete, with its
+ * transcripts, exons and CDS, instead of building the whole annotation first.
+ * <p>
+ * A gene counts as complete once lines of {@code lookahead} other genes were read after its last line. GTFs that list
+ * all lines of a gene together (Ensembl, GENCODE) need a lookahead of {@link #GROUPED_BY_GENE}, files where the lines
+ * of different genes interleave need a lookahead of at least the number of genes that interleave.
+ * Only the open genes and the IDs of the completed genes are kept in memory.
+ */
+public class GTFGeneStream {
+    public static final int GROUPED_BY_GENE = 1;
+
+    private final int lookahead;
+    private final Consumer<Gene> geneConsumer;
+    // the genes that can still get lines
+    private final GTFAnnotation openGenes = new GTFAnnotation();
+    // open genes, least recently read first
+    private final LinkedHashMap<String, Gene> recentGenes = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> completedGeneIDs = new HashSet<>();
+
+    private GTFGeneStream(int lookahead, Consumer<Gene> geneConsumer) {
+        if (lookahead < 1) {
+            throw new IllegalArgumentException("Lookahead has to be at least 1: " + lookahead);
+        }
+        this.lookahead = lookahead;
+        this.geneConsumer = geneConsumer;
+    }
+
+    /**
+     * Parses the GTF file (plain or compressed) and hands every gene to the consumer once it is complete.
+     * The consumer is called on the parsing thread, in the order in which the genes are completed.
+     *
+     * @param gtfFile      the GTF file to parse
+     * @param lookahead    the number of other genes after which a gene is complete, see {@link GTFGeneStream}
+     * @param geneConsumer receives every gene exactly once
+     * @throws IllegalStateException if a line belongs to a gene that was already completed, the lookahead is too small
+     * @throws UncheckedIOException  if the file cannot be read, the genes that are still open are not handed over
+     */
+    public static void streamGenes(String gtfFile, int lookahead, Consumer<Gene> geneConsumer) {
+        streamGenes(gtfFile, lookahead, AttributeProjection.DEFAULT, geneConsumer);
+    }
+
+    /**
+     * @param projection the attributes to decode
+     * @see #streamGenes(String, int, Consumer)
+     */
+    public static void streamGenes(String gtfFile, int lookahead, AttributeProjection projection, Consumer<Gene> geneConsumer) {
+        streamGenes(gtfFile, lookahead, projection, GTFFilter.NONE, geneConsumer);
+    }
+
+    /**
+     * @param projection the attributes to decode
+     * @param filter     the lines to keep, rejected lines do not count for the lookahead
+     * @see #streamGenes(String, int, Consumer)
+     */
+    public static void streamGenes(String gtfFile, int lookahead, AttributeProjection projection, GTFFilter filter, Consumer<Gene> geneConsumer) {
+        long startTime = System.currentTimeMillis();
+        GTFGeneStream stream = new GTFGeneStream(lookahead, geneConsumer);
+        try {
+            GTFParser.parseFile(gtfFile, projection, line -> {
+                if (filter.accept(line)) {
+                    stream.processLine(line);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + gtfFile, e);
+        }
+        stream.completeAll();
+        System.out.println("LOG: Total time to stream GTF: " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    private void processLine(GTFLineTokenizer line) {
+        Gene gene = GTFParser.processGTFLine(line, openGenes);
+        if (gene == null) {
+            return;
+        }
+        if (recentGenes.put(gene.getGeneID(), gene) == null && completedGeneIDs.contains(gene.getGeneID())) {
+            throw new IllegalStateException("Gene " + gene.getGeneID() + " has lines after it was completed, the lookahead of " + lookahead + " is too small for this GTF");
+        }
+        if (recentGenes.size() > lookahead) {
+            complete(recentGenes.pollFirstEntry().getValue());
+        }
+    }
+
+    private void complete(Gene gene) {
+        openGenes.getGenes().remove(gene.getGeneID());
+        completedGeneIDs.add(gene.getGeneID());
+        geneConsumer.accept(gene);
+    }
+
+    private void completeAll() {
+        Map.Entry<String, Gene> entry;
+        while ((entry = recentGenes.pollFirstEntry()) != null) {
+            complete(entry.getValue());
+        }
+    }
+}
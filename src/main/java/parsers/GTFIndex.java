@@ -0,0 +1,451 @@
+package parsers;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static parsers.GTFParser.*;
+
+/**
+ * Region index of a plain or BGZF compressed GTF file, stored next to it as {@code <gtf>.gtfi}.
+ * <p>
+ * Like a tabix index, every line is put into the smallest bin of the UCSC binning scheme that contains it, each bin
+ * lists the file chunks of its lines, and a linear index of 16 kb windows holds the smallest offset that can still
+ * overlap a window. Offsets are byte positions for plain files and BGZF virtual offsets for compressed files.
+ * A query reads only the chunks of the bins overlapping the region, then the lines are filtered exactly.
+ * Coordinate-sorted files give a compact index, other line orders are indexed correctly but with more chunks.
+ */
+public class GTFIndex {
+    public static final String INDEX_SUFFIX = ".gtfi";
+    private static final long MAGIC = 0x474F424947544649L; // "GOBIGTFI"
+    private static final int VERSION = 1;
+    // 16 kb windows and five bin levels above them, the same layout as tabix
+    private static final int MIN_SHIFT = 14;
+    private static final int MAX_POSITION = 1 << 29;
+    private static final int[] LEVEL_OFFSETS = {0, 1, 9, 73, 585, 4681};
+    private static final int[] LEVEL_SHIFTS = {29, 26, 23, 20, 17, 14};
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    // Larger chunks of plain files are mapped in pieces
+    private static final long MAX_MAPPED_SIZE = 1L << 30;
+
+    private final boolean bgzf;
+    private final Map<String, ChromosomeIndex> chromosomes;
+
+    private GTFIndex(boolean bgzf, Map<String, ChromosomeIndex> chromosomes) {
+        this.bgzf = bgzf;
+        this.chromosomes = chromosomes;
+    }
+
+    /**
+     * Bins and linear index of one chromosome
+     */
+    private static class ChromosomeIndex {
+        // bin -> chunks as [begin0, end0, begin1, end1, ...]
+        private final Map<Integer, long[]> bins;
+        // smallest offset of the lines that overlap window i or any later window
+        private final long[] linear;
+
+        private ChromosomeIndex(Map<Integer, long[]> bins, long[] linear) {
+            this.bins = bins;
+            this.linear = linear;
+        }
+    }
+
+    public static Path getIndexPath(String gtfFile) {
+        return Paths.get(gtfFile + INDEX_SUFFIX);
+    }
+
+    /**
+     * @return true if an index exists next to the GTF file and was built for the current content of the file
+     */
+    public static boolean hasValidIndex(String gtfFile) {
+        Path index = getIndexPath(gtfFile);
+        if (!Files.isRegularFile(index)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+            return in.readLong() == MAGIC && in.readInt() == VERSION && in.readLong() == GTFSnapshot.checksum(gtfFile);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the index of the GTF file or null if there is no index matching the current GTF file
+     */
+    public static GTFIndex load(String gtfFile) {
+        Path index = getIndexPath(gtfFile);
+        if (!Files.isRegularFile(index)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index), 1 << 16))) {
+            if (in.readLong() != MAGIC || in.readInt() != VERSION || in.readLong() != GTFSnapshot.checksum(gtfFile)) {
+                return null;
+            }
+            boolean bgzf = in.readBoolean();
+            int chromosomeCount = in.readInt();
+            Map<String, ChromosomeIndex> chromosomes = new HashMap<>(chromosomeCount * 2);
+            for (int c = 0; c < chromosomeCount; c++) {
+                String chromosome = in.readUTF();
+                int binCount = in.readInt();
+                Map<Integer, long[]> bins = new HashMap<>(binCount * 2);
+                for (int b = 0; b < binCount; b++) {
+                    int bin = in.readInt();
+                    long[] chunks = new long[in.readInt() * 2];
+                    for (int i = 0; i < chunks.length; i++) {
+                        chunks[i] = in.readLong();
+                    }
+                    bins.put(bin, chunks);
+                }
+                long[] linear = new long[in.readInt()];
+                for (int i = 0; i < linear.length; i++) {
+                    linear[i] = in.readLong();
+                }
+                chromosomes.put(chromosome, new ChromosomeIndex(bins, linear));
+            }
+            return new GTFIndex(bgzf, chromosomes);
+        } catch (IOException e) {
+            System.out.println("Warning, could not read GTF index " + index + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Builds the index of the GTF file and writes it next to the file, unless a valid index exists.
+     */
+    public static void createIfMissing(String gtfFile) {
+        if (hasValidIndex(gtfFile)) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            build(gtfFile).write(gtfFile);
+            System.out.println("LOG: Total time to write GTF index: " + (System.currentTimeMillis() - startTime) + " ms");
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Warning, could not write GTF index for " + gtfFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the whole file once and indexes every line.
+     *
+     * @throws IllegalArgumentException if the file is gzip but not BGZF compressed, it can not be accessed randomly
+     */
+    public static GTFIndex build(String gtfFile) throws IOException {
+        Builder builder = new Builder();
+        try (InputStream in = openCompressed(gtfFile)) {
+            if (in instanceof BGZFParallelInputStream) {
+                builder.bgzf = true;
+                try (BlockCompressedInputStream bgzfIn = new BlockCompressedInputStream(new File(gtfFile))) {
+                    indexBGZF(bgzfIn, builder);
+                }
+            } else if (in != null) {
+                throw new IllegalArgumentException(gtfFile + " is gzip compressed, only plain and BGZF files can be indexed");
+            } else {
+                indexPlain(gtfFile, builder);
+            }
+        }
+        return builder.build();
+    }
+
+    private static void indexPlain(String gtfFile, Builder builder) throws IOException {
+        GTFLineTokenizer tokenizer = new GTFLineTokenizer();
+        try (FileChannel channel = FileChannel.open(Paths.get(gtfFile))) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            // file offset of the first byte in the buffer
+            long bufferOffset = 0;
+            while (true) {
+                boolean endOfFile = channel.read(buffer, bufferOffset + buffer.position()) < 0;
+                int length = buffer.position();
+                int lineStart = 0;
+                while (lineStart < length) {
+                    int lineEnd = GTFLineTokenizer.indexOf(buffer, lineStart, length, (byte) '\n');
+                    if (lineEnd < 0) {
+                        if (!endOfFile) {
+                            break;
+                        }
+                        lineEnd = length;
+                    }
+                    int contentEnd = lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                    if (contentEnd > lineStart && buffer.get(lineStart) != '#' && tokenizer.reset(buffer, lineStart, contentEnd)) {
+                        builder.add(tokenizer, bufferOffset + lineStart, bufferOffset + Math.min(lineEnd + 1, length));
+                    }
+                    lineStart = lineEnd + 1;
+                }
+                if (endOfFile) {
+                    return;
+                }
+                if (lineStart == 0 && length == buffer.capacity()) {
+                    // A line longer than the buffer
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN).put(buffer.flip());
+                } else {
+                    // Move the incomplete last line to the front
+                    buffer.flip().position(Math.min(lineStart, length));
+                    buffer.compact();
+                    bufferOffset += Math.min(lineStart, length);
+                }
+            }
+        }
+    }
+
+    private static void indexBGZF(BlockCompressedInputStream in, Builder builder) throws IOException {
+        GTFLineTokenizer tokenizer = new GTFLineTokenizer();
+        long begin = in.getFilePointer();
+        String line;
+        while ((line = in.readLine()) != null) {
+            long end = in.getFilePointer();
+            if (!line.isEmpty() && line.charAt(0) != '#') {
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                if (tokenizer.reset(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN), 0, bytes.length)) {
+                    builder.add(tokenizer, begin, end);
+                }
+            }
+            begin = end;
+        }
+    }
+
+    /**
+     * Collects the bins and windows of the lines in file order
+     */
+    private static class Builder {
+        private boolean bgzf;
+        private final Map<String, Map<Integer, List<long[]>>> bins = new LinkedHashMap<>();
+        private final Map<String, long[]> windows = new HashMap<>();
+
+        private void add(GTFLineTokenizer line, long begin, long end) {
+            String chromosome = line.getSymbol(SEQNAME_COL);
+            // 0-based, half open like the binning scheme
+            int start = clamp(line.getInt(START_COL) - 1);
+            int stop = Math.max(start + 1, clamp(line.getInt(END_COL)));
+            List<long[]> chunks = bins.computeIfAbsent(chromosome, k -> new HashMap<>()).computeIfAbsent(reg2bin(start, stop), k -> new ArrayList<>());
+            long[] last = chunks.isEmpty() ? null : chunks.getLast();
+            if (last != null && last[1] == begin) {
+                // The previous line of the bin is directly in front, extend its chunk
+                last[1] = end;
+            } else {
+                chunks.add(new long[]{begin, end});
+            }
+            long[] linear = windows.get(chromosome);
+            int lastWindow = (stop - 1) >> MIN_SHIFT;
+            if (linear == null || linear.length <= lastWindow) {
+                long[] grown = new long[Math.max(lastWindow + 1, linear == null ? 0 : linear.length * 2)];
+                Arrays.fill(grown, Long.MAX_VALUE);
+                if (linear != null) {
+                    System.arraycopy(linear, 0, grown, 0, linear.length);
+                }
+                linear = grown;
+                windows.put(chromosome, linear);
+            }
+            for (int window = start >> MIN_SHIFT; window <= lastWindow; window++) {
+                linear[window] = Math.min(linear[window], begin);
+            }
+        }
+
+        private GTFIndex build() {
+            Map<String, ChromosomeIndex> chromosomes = new LinkedHashMap<>();
+            for (Map.Entry<String, Map<Integer, List<long[]>>> chromosome : bins.entrySet()) {
+                Map<Integer, long[]> flatBins = new HashMap<>();
+                for (Map.Entry<Integer, List<long[]>> bin : chromosome.getValue().entrySet()) {
+                    long[] flat = new long[bin.getValue().size() * 2];
+                    for (int i = 0; i < bin.getValue().size(); i++) {
+                        flat[2 * i] = bin.getValue().get(i)[0];
+                        flat[2 * i + 1] = bin.getValue().get(i)[1];
+                    }
+                    flatBins.put(bin.getKey(), flat);
+                }
+                long[] linear = windows.get(chromosome.getKey());
+                int length = linear.length;
+                while (length > 0 && linear[length - 1] == Long.MAX_VALUE) {
+                    length--;
+                }
+                linear = Arrays.copyOf(linear, length);
+                // Lines that overlap a later window also have to be found from this window, unsorted files need this
+                for (int i = length - 2; i >= 0; i--) {
+                    linear[i] = Math.min(linear[i], linear[i + 1]);
+                }
+                chromosomes.put(chromosome.getKey(), new ChromosomeIndex(flatBins, linear));
+            }
+            return new GTFIndex(bgzf, chromosomes);
+        }
+    }
+
+    /**
+     * Writes the index next to the GTF file, through a temporary file like {@link GTFSnapshot#write}.
+     */
+    public void write(String gtfFile) throws IOException {
+        Path index = getIndexPath(gtfFile);
+        Path temp = Files.createTempFile(index.toAbsolutePath().getParent(), index.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeLong(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(GTFSnapshot.checksum(gtfFile));
+                out.writeBoolean(bgzf);
+                out.writeInt(chromosomes.size());
+                for (Map.Entry<String, ChromosomeIndex> chromosome : chromosomes.entrySet()) {
+                    out.writeUTF(chromosome.getKey());
+                    out.writeInt(chromosome.getValue().bins.size());
+                    for (Map.Entry<Integer, long[]> bin : chromosome.getValue().bins.entrySet()) {
+                        out.writeInt(bin.getKey());
+                        out.writeInt(bin.getValue().length / 2);
+                        for (long offset : bin.getValue()) {
+                            out.writeLong(offset);
+                        }
+                    }
+                    out.writeInt(chromosome.getValue().linear.length);
+                    for (long offset : chromosome.getValue().linear) {
+                        out.writeLong(offset);
+                    }
+                }
+            }
+            Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public Set<String> getChromosomes() {
+        return chromosomes.keySet();
+    }
+
+    /**
+     * @param filter a filter with regions or chromosomes
+     * @return the file chunks that can hold lines accepted by the filter, sorted and merged, as [begin, end) pairs
+     */
+    long[] query(GTFFilter filter) {
+        List<long[]> chunks = new ArrayList<>();
+        Map<String, int[][]> regions = filter.getRegions();
+        if (regions != null) {
+            for (Map.Entry<String, int[][]> chromosomeRegions : regions.entrySet()) {
+                if (filter.getChromosomes() != null && !filter.getChromosomes().contains(chromosomeRegions.getKey())) {
+                    continue;
+                }
+                int[][] startsEnds = chromosomeRegions.getValue();
+                for (int i = 0; i < startsEnds[0].length; i++) {
+                    query(chromosomeRegions.getKey(), startsEnds[0][i], startsEnds[1][i], chunks);
+                }
+            }
+        } else {
+            for (String chromosome : filter.getChromosomes()) {
+                query(chromosome, 1, MAX_POSITION, chunks);
+            }
+        }
+        chunks.sort(Comparator.comparingLong(chunk -> chunk[0]));
+        long[] merged = new long[chunks.size() * 2];
+        int count = 0;
+        for (long[] chunk : chunks) {
+            if (count > 0 && chunk[0] <= merged[count - 1]) {
+                merged[count - 1] = Math.max(merged[count - 1], chunk[1]);
+            } else {
+                merged[count++] = chunk[0];
+                merged[count++] = chunk[1];
+            }
+        }
+        return Arrays.copyOf(merged, count);
+    }
+
+    /**
+     * Adds the chunks of the bins overlapping [start, end] (1-based, inclusive) that are not before the linear index
+     */
+    private void query(String chromosome, int start, int end, List<long[]> chunks) {
+        ChromosomeIndex index = chromosomes.get(chromosome);
+        int begin = clamp(start - 1);
+        int stop = Math.max(begin + 1, clamp(end));
+        if (index == null || begin >> MIN_SHIFT >= index.linear.length) {
+            return;
+        }
+        long minOffset = index.linear[begin >> MIN_SHIFT];
+        for (int bin : reg2bins(begin, stop)) {
+            long[] binChunks = index.bins.get(bin);
+            if (binChunks == null) {
+                continue;
+            }
+            for (int i = 0; i < binChunks.length; i += 2) {
+                if (binChunks[i + 1] > minOffset) {
+                    chunks.add(new long[]{binChunks[i], binChunks[i + 1]});
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses the lines of the chunks that can overlap the regions or chromosomes of the filter, each line once.
+     */
+    void parse(String gtfFile, GTFLineTokenizer tokenizer, GTFFilter filter, Consumer<GTFLineTokenizer> lineHandler) throws IOException {
+        long[] chunks = query(filter);
+        if (bgzf) {
+            try (BlockCompressedInputStream in = new BlockCompressedInputStream(new File(gtfFile))) {
+                for (int i = 0; i < chunks.length; i += 2) {
+                    in.seek(chunks[i]);
+                    String line;
+                    while (in.getFilePointer() < chunks[i + 1] && (line = in.readLine()) != null) {
+                        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                        parseLines(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN), tokenizer, lineHandler);
+                    }
+                }
+            }
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(gtfFile))) {
+            for (int i = 0; i < chunks.length; i += 2) {
+                long position = chunks[i];
+                while (position < chunks[i + 1]) {
+                    long end = Math.min(chunks[i + 1], position + MAX_MAPPED_SIZE);
+                    MappedByteBuffer buffer = map(channel, position, end);
+                    int length = buffer.limit();
+                    if (end < chunks[i + 1]) {
+                        // Only complete lines, the rest is mapped with the next piece
+                        while (length > 0 && buffer.get(length - 1) != '\n') {
+                            length--;
+                        }
+                    }
+                    parseLines(buffer.limit(length), tokenizer, lineHandler);
+                    position += length;
+                }
+            }
+        }
+    }
+
+    private static int clamp(int position) {
+        return Math.max(0, Math.min(position, MAX_POSITION - 1));
+    }
+
+    /**
+     * @return the smallest bin that contains [start, end), 0-based
+     */
+    static int reg2bin(int start, int end) {
+        end--;
+        for (int level = LEVEL_SHIFTS.length - 1; level > 0; level--) {
+            if (start >> LEVEL_SHIFTS[level] == end >> LEVEL_SHIFTS[level]) {
+                return LEVEL_OFFSETS[level] + (start >> LEVEL_SHIFTS[level]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return all bins that can hold lines overlapping [start, end), 0-based
+     */
+    static List<Integer> reg2bins(int start, int end) {
+        List<Integer> bins = new ArrayList<>();
+        end--;
+        bins.add(0);
+        for (int level = 1; level < LEVEL_SHIFTS.length; level++) {
+            for (int bin = LEVEL_OFFSETS[level] + (start >> LEVEL_SHIFTS[level]); bin <= LEVEL_OFFSETS[level] + (end >> LEVEL_SHIFTS[level]); bin++) {
+                bins.add(bin);
+            }
+        }
+        return bins;
+    }
+}
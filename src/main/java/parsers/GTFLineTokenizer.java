@@ -0,0 +1,479 @@
+package parsers;
+
+import gtf.structs.AnnotationTypes;
+import gtf.structs.GTFAttributes;
+import gtf.structs.ProjectedAttributes;
+import gtf.structs.SymbolTable;
+import gtf.types.FrameStarts;
+import gtf.types.StrandDirection;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static parsers.GTFParser.*;
+
+/**
+ * Splits a GTF line into its columns directly on the bytes of a (memory-mapped) buffer.
+ * Numbers, strand and frame are parsed from the bytes, attribute keys are compared byte by byte and Strings are only
+ * created for the values that are kept.
+ * One tokenizer is reused for all lines of a thread, it is not thread safe.
+ */
+public final class GTFLineTokenizer {
+    private static final int COLUMN_COUNT = 9;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final int SYMBOL_CACHE_SIZE = 1024;
+    static final byte[] GENE_ID = bytes(GTFAttributes.GENE_ID);
+    private static final byte[] GENE_NAME = bytes(GTFAttributes.GENE_NAME);
+    static final byte[] TRANSCRIPT_ID = bytes(GTFAttributes.TRANSCRIPT_ID);
+    private static final byte[] TRANSCRIPT_NAME = bytes(GTFAttributes.TRANSCRIPT_NAME);
+    private static final byte[] EXON_ID = bytes(GTFAttributes.EXON_ID);
+    private static final byte[] EXON_NUMBER = bytes(GTFAttributes.EXON_NUMBER);
+    private static final byte[] PROTEIN_ID = bytes(GTFAttributes.PROTEIN_ID);
+    private static final byte[] CCDS_ID = bytes(GTFAttributes.CCDS_ID);
+    private static final byte[] CCDS_ID2 = bytes(GTFAttributes.CCDS_ID2);
+
+    private final AttributeProjection projection;
+    private ByteBuffer buffer;
+    // column i spans [columnStarts[i], columnStarts[i + 1] - 1), the last column ends at lineEnd
+    private final int[] columnStarts = new int[COLUMN_COUNT + 1];
+    // the current attribute of nextAttribute
+    private int attributePosition;
+    private int keyStart;
+    private int keyEnd;
+    private int valueStart;
+    private int valueEnd;
+    private byte[] stringBytes = new byte[256];
+    // Direct mapped cache from the bytes of a symbol to its canonical String, see getSymbol
+    private final byte[][] symbolKeys = new byte[SYMBOL_CACHE_SIZE][];
+    private final String[] symbolValues = new String[SYMBOL_CACHE_SIZE];
+
+    public GTFLineTokenizer() {
+        this(AttributeProjection.DEFAULT);
+    }
+
+    public GTFLineTokenizer(AttributeProjection projection) {
+        this.projection = projection;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Finds the first occurrence of a byte in [from, to), eight bytes are compared at once.
+     *
+     * @return the index of the byte or -1 if it does not occur
+     */
+    static int indexOf(ByteBuffer buffer, int from, int to, byte b) {
+        long pattern = ONES * (b & 0xFF);
+        int i = from;
+        if (buffer.order() == ByteOrder.LITTLE_ENDIAN) {
+            for (; i + Long.BYTES <= to; i += Long.BYTES) {
+                long word = buffer.getLong(i) ^ pattern;
+                // The lowest high bit marks the first zero byte, i.e. the first match
+                long found = (word - ONES) & ~word & HIGH_BITS;
+                if (found != 0) {
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+                }
+            }
+        }
+        for (; i < to; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Points the tokenizer to the line [lineStart, lineEnd) of the buffer, the line must not contain the line terminator.
+     * The buffer should be in little endian order, otherwise the columns are searched byte by byte.
+     *
+     * @return false if the line has less than nine columns
+     */
+    public boolean reset(ByteBuffer buffer, int lineStart, int lineEnd) {
+        this.buffer = buffer;
+        columnStarts[0] = lineStart;
+        int position = lineStart;
+        for (int column = 1; column < COLUMN_COUNT; column++) {
+            int tab = indexOf(buffer, position, lineEnd, (byte) '\t');
+            if (tab < 0) {
+                return false;
+            }
+            position = tab + 1;
+            columnStarts[column] = position;
+        }
+        // Like String.split, a tab inside the attributes ends the column
+        int tab = indexOf(buffer, position, lineEnd, (byte) '\t');
+        columnStarts[COLUMN_COUNT] = (tab < 0 ? lineEnd : tab) + 1;
+        return true;
+    }
+
+    private int columnEnd(int column) {
+        return columnStarts[column + 1] - 1;
+    }
+
+    public byte firstByte(int column) {
+        return buffer.get(columnStarts[column]);
+    }
+
+    public String getString(int column) {
+        return decode(columnStarts[column], columnEnd(column));
+    }
+
+    /**
+     * Like {@link #getString(int)} for the low cardinality columns, returns the {@link SymbolTable} instance.
+     * Repeated values are found in a small per-tokenizer cache without creating a String.
+     */
+    public String getSymbol(int column) {
+        int start = columnStarts[column];
+        int end = columnEnd(column);
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & (SYMBOL_CACHE_SIZE - 1);
+        byte[] key = symbolKeys[slot];
+        if (key != null && equals(key, start, end)) {
+            return symbolValues[slot];
+        }
+        key = new byte[end - start];
+        buffer.get(start, key);
+        String symbol = SymbolTable.intern(new String(key, StandardCharsets.UTF_8));
+        symbolKeys[slot] = key;
+        symbolValues[slot] = symbol;
+        return symbol;
+    }
+
+    public int getInt(int column) {
+        int start = columnStarts[column];
+        int end = columnEnd(column);
+        boolean negative = start < end && buffer.get(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) {
+            throw new NumberFormatException("For input string: \"" + getString(column) + "\"");
+        }
+        // accumulated negative like Integer.parseInt, so Integer.MIN_VALUE fits
+        int value = 0;
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9 || value < limit / 10 || value * 10 < limit + digit) {
+                throw new NumberFormatException("For input string: \"" + getString(column) + "\"");
+            }
+            value = value * 10 - digit;
+        }
+        return negative ? value : -value;
+    }
+
+    public double getScore() {
+        int start = columnStarts[SCORE_COL];
+        if (columnEnd(SCORE_COL) - start == 1 && buffer.get(start) == '.') {
+            return 0;
+        }
+        return Double.parseDouble(getString(SCORE_COL));
+    }
+
+    public StrandDirection getStrand() {
+        if (columnEnd(STRAND_COL) - columnStarts[STRAND_COL] == 1) {
+            switch (buffer.get(columnStarts[STRAND_COL])) {
+                case '+':
+                    return StrandDirection.FORWARD;
+                case '-':
+                    return StrandDirection.REVERSE;
+            }
+        }
+        throw new IllegalArgumentException("Invalid strand direction: " + getString(STRAND_COL));
+    }
+
+    public FrameStarts getFrame() {
+        if (columnEnd(FRAME_COL) - columnStarts[FRAME_COL] == 1) {
+            switch (buffer.get(columnStarts[FRAME_COL])) {
+                case '.':
+                    return FrameStarts.NONE;
+                case '0':
+                    return FrameStarts.ZERO;
+                case '1':
+                    return FrameStarts.ONE;
+                case '2':
+                    return FrameStarts.TWO;
+            }
+        }
+        throw new IllegalArgumentException("Invalid frame start: " + getString(FRAME_COL));
+    }
+
+    /**
+     * Byte level counterpart of {@link GTFAttributes#parseAttributes(String, AnnotationTypes)}: stops as soon as the
+     * attributes the type needs and the extra attributes of the projection are found.
+     */
+    public GTFAttributes getAttributes(AnnotationTypes type) {
+        GTFAttributes.Builder attribute = new GTFAttributes.Builder();
+        byte[][] extraKeys = projection.getAttributeKeys();
+        String[] extraValues = extraKeys.length == 0 ? null : new String[extraKeys.length];
+        int missingExtras = extraKeys.length;
+        // Once the attributes of the type are complete, the model attributes after them are not set, only extras are searched
+        boolean complete = false;
+        attributePosition = columnStarts[ATTRIBUTE_COL];
+        while (nextAttribute()) {
+            if (complete || !setAttribute(attribute)) {
+                int extra = indexOfKey(extraKeys);
+                if (extra < 0 || extraValues[extra] != null) {
+                    continue;
+                }
+                extraValues[extra] = decode(valueStart, valueEnd);
+                missingExtras--;
+            }
+            complete = complete || (projection.hasNames() ? hasAttributes(attribute, type) : attribute.hasIDAttributes(type));
+            if (complete && missingExtras == 0) {
+                break;
+            }
+        }
+        if (projection.hasExtraAttributes()) {
+            attribute.setProjectedAttributes(getProjectedAttributes(extraValues));
+        }
+        return attribute.build();
+    }
+
+    private ProjectedAttributes getProjectedAttributes(String[] extraValues) {
+        String[] keys = projection.getAttributes();
+        String[] values = extraValues == null ? new String[0] : extraValues;
+        if (!projection.keepsRawAttributes()) {
+            return new ProjectedAttributes(keys, values, null, 0, 0);
+        }
+        int start = columnStarts[ATTRIBUTE_COL];
+        int length = columnEnd(ATTRIBUTE_COL) - start;
+        if (buffer instanceof MappedByteBuffer) {
+            // Mapped chunks are never reused, the entry can reference the column in place
+            return new ProjectedAttributes(keys, values, buffer, start, length);
+        }
+        byte[] column = new byte[length];
+        buffer.get(start, column);
+        return new ProjectedAttributes(keys, values, ByteBuffer.wrap(column), 0, length);
+    }
+
+    private int indexOfKey(byte[][] keys) {
+        for (int i = 0; i < keys.length; i++) {
+            if (equals(keys[i], keyStart, keyEnd)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the value of the first attribute with the given key or null, only this value is turned into a String
+     */
+    public String getAttribute(byte[] key) {
+        attributePosition = columnStarts[ATTRIBUTE_COL];
+        while (nextAttribute()) {
+            if (equals(key, keyStart, keyEnd)) {
+                return decode(valueStart, valueEnd);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads GFF3 attributes ({@code key=value;key=value}) in one pass, only the values of the given keys are turned
+     * into Strings. Percent-encoded characters are decoded, lists of values stay comma separated.
+     *
+     * @param values receives the value of every key, null if the line does not have it
+     */
+    void getGFF3Attributes(byte[][] keys, String[] values) {
+        Arrays.fill(values, null);
+        int missing = keys.length;
+        int i = columnStarts[ATTRIBUTE_COL];
+        int end = columnEnd(ATTRIBUTE_COL);
+        while (i < end && missing > 0) {
+            int separator = indexOf(buffer, i, end, (byte) ';');
+            int attributeEnd = separator < 0 ? end : separator;
+            while (i < attributeEnd && buffer.get(i) == ' ') {
+                i++;
+            }
+            int equalsSign = indexOf(buffer, i, attributeEnd, (byte) '=');
+            if (equalsSign > 0) {
+                for (int key = 0; key < keys.length; key++) {
+                    if (values[key] == null && equals(keys[key], i, equalsSign)) {
+                        values[key] = decodeEscaped(equalsSign + 1, attributeEnd);
+                        missing--;
+                        break;
+                    }
+                }
+            }
+            i = attributeEnd + 1;
+        }
+    }
+
+    /**
+     * @return a copy of the current line, e.g. to process it again after the tokenizer moved on
+     */
+    byte[] copyLine() {
+        byte[] line = new byte[columnEnd(ATTRIBUTE_COL) - columnStarts[0]];
+        buffer.get(columnStarts[0], line);
+        return line;
+    }
+
+    /**
+     * Moves to the next key value pair of the attribute column, quotes around the value are dropped.
+     *
+     * @return false if there are no more attributes
+     */
+    private boolean nextAttribute() {
+        int i = attributePosition;
+        int end = columnEnd(ATTRIBUTE_COL);
+        // Skip the separators in front of the key
+        while (i < end && (buffer.get(i) == ' ' || buffer.get(i) == ';')) {
+            i++;
+        }
+        if (i == end) {
+            return false;
+        }
+        keyStart = i;
+        while (i < end && buffer.get(i) != ' ') {
+            i++;
+        }
+        keyEnd = i;
+        while (i < end && buffer.get(i) == ' ') {
+            i++;
+        }
+        if (i < end && buffer.get(i) == '"') {
+            valueStart = ++i;
+            i = indexOf(buffer, i, end, (byte) '"');
+            if (i < 0) {
+                return false; // Malformed input
+            }
+            valueEnd = i++;
+        } else {
+            valueStart = i;
+            while (i < end && buffer.get(i) != ' ' && buffer.get(i) != ';') {
+                i++;
+            }
+            valueEnd = i;
+        }
+        attributePosition = i;
+        return true;
+    }
+
+    private boolean setAttribute(GTFAttributes.Builder attribute) {
+        // The key length tells the candidate keys apart, only the candidates are compared byte by byte
+        switch (keyEnd - keyStart) {
+            case 7 -> {
+                if (equals(GENE_ID, keyStart, keyEnd)) {
+                    attribute.setGeneID(decode(valueStart, valueEnd));
+                } else if (equals(EXON_ID, keyStart, keyEnd)) {
+                    attribute.setExonID(decode(valueStart, valueEnd));
+                } else if (equals(CCDS_ID, keyStart, keyEnd)) {
+                    attribute.setCcdsID(decode(valueStart, valueEnd));
+                } else {
+                    return false;
+                }
+            }
+            case 9 -> {
+                if (projection.hasNames() && equals(GENE_NAME, keyStart, keyEnd)) {
+                    attribute.setGeneName(decode(valueStart, valueEnd));
+                } else {
+                    return false;
+                }
+            }
+            case 13 -> {
+                if (equals(TRANSCRIPT_ID, keyStart, keyEnd)) {
+                    attribute.setTranscriptID(decode(valueStart, valueEnd));
+                } else {
+                    return false;
+                }
+            }
+            case 15 -> {
+                if (projection.hasNames() && equals(TRANSCRIPT_NAME, keyStart, keyEnd)) {
+                    attribute.setTranscriptName(decode(valueStart, valueEnd));
+                } else {
+                    return false;
+                }
+            }
+            case 11 -> {
+                if (equals(EXON_NUMBER, keyStart, keyEnd)) {
+                    attribute.setExonNumber(decode(valueStart, valueEnd));
+                } else {
+                    return false;
+                }
+            }
+            case 10 -> {
+                if (equals(PROTEIN_ID, keyStart, keyEnd)) {
+                    attribute.setProteinID(decode(valueStart, valueEnd));
+                } else {
+                    return false;
+                }
+            }
+            case 6 -> {
+                if (equals(CCDS_ID2, keyStart, keyEnd)) {
+                    attribute.setCcdsID(decode(valueStart, valueEnd));
+                } else {
+                    return false;
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasAttributes(GTFAttributes.Builder attribute, AnnotationTypes type) {
+        return switch (type) {
+            case GENE -> attribute.hasGeneAttributes();
+            case TRANSCRIPT -> attribute.hasTranscriptAttributes();
+            case EXON -> attribute.hasExonAttributes();
+            case CDS -> attribute.hasCDSAttributes();
+        };
+    }
+
+    private boolean equals(byte[] key, int start, int end) {
+        if (end - start != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Like {@link #decode(int, int)} but decodes %XX escapes, as GFF3 uses for reserved characters in values
+     */
+    private String decodeEscaped(int start, int end) {
+        if (indexOf(buffer, start, end, (byte) '%') < 0) {
+            return decode(start, end);
+        }
+        if (stringBytes.length < end - start) {
+            stringBytes = new byte[Math.max(end - start, stringBytes.length * 2)];
+        }
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '%' && i + 2 < end) {
+                int high = Character.digit(buffer.get(i + 1), 16);
+                int low = Character.digit(buffer.get(i + 2), 16);
+                if (high >= 0 && low >= 0) {
+                    b = (byte) (high << 4 | low);
+                    i += 2;
+                }
+            }
+            stringBytes[length++] = b;
+        }
+        return new String(stringBytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private String decode(int start, int end) {
+        int length = end - start;
+        if (stringBytes.length < length) {
+            stringBytes = new byte[Math.max(length, stringBytes.length * 2)];
+        }
+        buffer.get(start, stringBytes, 0, length);
+        return new String(stringBytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
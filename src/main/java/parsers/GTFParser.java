@@ -5,12 +5,23 @@ import gtf.structs.*;
 import gtf.types.FrameStarts;
 import gtf.types.StrandDirection;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 import static gtf.structs.GTFAttributes.parseAttributes;
 
@@ -26,18 +37,51 @@ public class GTFParser {
     public static final int SCORE_COL = 5;
     public static final int FRAME_COL = 7;
     public static final int ATTRIBUTE_COL = 8;
+    // Chunks of the parallel parser are mapped separately, so they have to stay below the 2 GB mapping limit
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+    // Below this size the fork/merge overhead is larger than the parsing work of a chunk
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    private static final int STREAM_BUFFER_SIZE = 1 << 20;
 
 
     public static GTFAnnotation parseGTF(String gtfFile) {
+        return parseGTF(gtfFile, AttributeProjection.DEFAULT);
+    }
+
+    /**
+     * @param gtfFile    the GTF file to parse
+     * @param projection the attributes to decode, a snapshot is only used if the projection needs nothing beyond IDs and names
+     * @return the parsed annotation
+     */
+    public static GTFAnnotation parseGTF(String gtfFile, AttributeProjection projection) {
+        return parseGTF(gtfFile, projection, GTFFilter.NONE);
+    }
+
+    /**
+     * @param gtfFile the GTF file to parse
+     * @param filter  the lines to keep, rejected lines are skipped before their attributes are parsed
+     * @return the annotation of the accepted lines
+     */
+    public static GTFAnnotation parseGTF(String gtfFile, GTFFilter filter) {
+        return parseGTF(gtfFile, AttributeProjection.DEFAULT, filter);
+    }
+
+    /**
+     * @param gtfFile    the GTF file to parse
+     * @param projection the attributes to decode
+     * @param filter     the lines to keep, a snapshot is only used without a filter. If the filter restricts chromosomes
+     *                   or regions and the file has a {@link GTFIndex}, only the indexed chunks of the regions are read
+     * @return the annotation of the accepted lines
+     */
+    public static GTFAnnotation parseGTF(String gtfFile, AttributeProjection projection, GTFFilter filter) {
         long startTime = System.currentTimeMillis();
-        GTFAnnotation GTFAnnotation = new GTFAnnotation();
-        try (BufferedReader br = Files.newBufferedReader(Paths.get(gtfFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.charAt(0) != '#') {
-                    processGTFLine(line, GTFAnnotation);
-                }
-            }
+        GTFAnnotation GTFAnnotation = filter.acceptsAll() ? loadSnapshot(gtfFile, projection, startTime) : parseIndexed(gtfFile, projection, filter, startTime);
+        if (GTFAnnotation != null) {
+            return GTFAnnotation;
+        }
+        GTFAnnotation = new GTFAnnotation();
+        try {
+            parseFile(gtfFile, projection, filteredLineHandler(filter, GTFAnnotation));
             GTFTimer.setGtfParseTime(System.currentTimeMillis() - startTime);
             System.out.println("LOG: Total time to parse GTF: " + GTFTimer.getGtfParseTime() + " ms");
 
@@ -47,130 +91,428 @@ public class GTFParser {
         return GTFAnnotation;
     }
 
-    public static GTFAnnotation parseGTFForCounts(String gtfFile, Map<String, Map<String, Integer>> geneTranscriptCounts) {
-        long startTime = System.currentTimeMillis();
+    /**
+     * Parses the GTF file line by line through {@link #processGTFLine(String, GTFAnnotation)}, the parser before
+     * {@link GTFLineTokenizer}. Only kept to compare against in {@link runners.GTFParserBenchmark}.
+     */
+    @Deprecated
+    public static GTFAnnotation parseGTFWithSplit(String gtfFile) {
         GTFAnnotation GTFAnnotation = new GTFAnnotation();
         try (BufferedReader br = Files.newBufferedReader(Paths.get(gtfFile))) {
             String line;
             while ((line = br.readLine()) != null) {
-                if (line.charAt(0) != '#') {
-                    // Filter line for gene and transcript IDs
-                    if (filterGTFLineForCounts(line, geneTranscriptCounts)) {
-                        processGTFLine(line, GTFAnnotation);
-                    }
+                if (!line.isEmpty() && line.charAt(0) != '#') {
+                    processGTFLine(line, GTFAnnotation);
                 }
             }
-            GTFTimer.setGtfParseTime(System.currentTimeMillis() - startTime);
-            // System.out.println("LOG: Total time to parse GTF: " + GTFTimer.getGtfParseTime() + " ms");
-
         } catch (IOException e) {
             e.printStackTrace();
         }
         return GTFAnnotation;
     }
 
+    /**
+     * Parses a plain, gzip or BGZF compressed GTF file. Plain files are memory-mapped, BGZF blocks are inflated in
+     * parallel by {@link BGZFParallelInputStream}.
+     */
+    static void parseFile(String gtfFile, AttributeProjection projection, Consumer<GTFLineTokenizer> lineHandler) throws IOException {
+        GTFLineTokenizer tokenizer = new GTFLineTokenizer(projection);
+        InputStream in = openCompressed(gtfFile);
+        if (in != null) {
+            try (in) {
+                parseStream(in, tokenizer, lineHandler);
+            }
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(gtfFile))) {
+            // One chunk per mapping, files above the mapping limit are read in several chunks
+            long[] boundaries = computeChunkBoundaries(channel, 1);
+            for (int i = 0; i + 1 < boundaries.length; i++) {
+                parseLines(map(channel, boundaries[i], boundaries[i + 1]), tokenizer, lineHandler);
+            }
+        }
+    }
 
-    private static boolean filterGTFLineForCounts(String line, Map<String, Map<String, Integer>> geneTranscriptCounts) {
-        int tabCount = 0;
-        int len = line.length();
-        int i = 0;
+    /**
+     * @return a decompressing stream if the file is gzip or BGZF compressed, null for plain files
+     */
+    static InputStream openCompressed(String gtfFile) throws IOException {
+        byte[] header = new byte[18];
+        int headerLength;
+        try (InputStream in = Files.newInputStream(Paths.get(gtfFile))) {
+            headerLength = in.readNBytes(header, 0, header.length);
+        }
+        if (BGZFParallelInputStream.isBGZF(header, headerLength)) {
+            return new BGZFParallelInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(gtfFile)), STREAM_BUFFER_SIZE));
+        }
+        if (headerLength >= 2 && (header[0] & 0xFF) == 0x1f && (header[1] & 0xFF) == 0x8b) {
+            return new GZIPInputStream(Files.newInputStream(Paths.get(gtfFile)), STREAM_BUFFER_SIZE);
+        }
+        return null;
+    }
 
-        // Find the 8th tab to get to the attributes column
-        for (; i < len; i++) {
-            if (line.charAt(i) == '\t') {
-                tabCount++;
-                if (tabCount == 8) {
-                    i++; // Move to the start of the attributes string
-                    break;
+    /**
+     * Parses the lines of a stream, the bytes are collected in a buffer and the complete lines are parsed in place.
+     */
+    static void parseStream(InputStream in, GTFLineTokenizer tokenizer, Consumer<GTFLineTokenizer> lineHandler) throws IOException {
+        byte[] bytes = new byte[STREAM_BUFFER_SIZE];
+        int filled = 0;
+        int read;
+        while ((read = in.read(bytes, filled, bytes.length - filled)) != -1) {
+            filled += read;
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, filled).order(ByteOrder.LITTLE_ENDIAN);
+            int lastNewline = filled - 1;
+            while (lastNewline >= 0 && bytes[lastNewline] != '\n') {
+                lastNewline--;
+            }
+            if (lastNewline < 0) {
+                if (filled == bytes.length) {
+                    // A line longer than the buffer
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
                 }
+                continue;
             }
+            parseLines(buffer.limit(lastNewline + 1), tokenizer, lineHandler);
+            filled -= lastNewline + 1;
+            System.arraycopy(bytes, lastNewline + 1, bytes, 0, filled);
         }
-        // If we didn't find 8 tabs, return false (malformed input)
-        if (tabCount < 8) {
-            return false;
+        // Last line without a newline
+        parseLines(ByteBuffer.wrap(bytes, 0, filled).order(ByteOrder.LITTLE_ENDIAN), tokenizer, lineHandler);
+    }
+
+    static MappedByteBuffer map(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        // GTFLineTokenizer compares eight bytes at once in little endian order
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Hands every line of the buffer to the line handler, comment lines and empty lines are skipped.
+     * The tokenizer passed to the handler points to the line and is only valid during the call.
+     */
+    static void parseLines(ByteBuffer buffer, GTFLineTokenizer tokenizer, Consumer<GTFLineTokenizer> lineHandler) {
+        int length = buffer.limit();
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = GTFLineTokenizer.indexOf(buffer, lineStart, length, (byte) '\n');
+            if (lineEnd < 0) {
+                lineEnd = length;
+            }
+            int contentEnd = lineEnd;
+            // Same line terminators as BufferedReader.readLine: drop the '\r' of "\r\n"
+            if (contentEnd > lineStart && buffer.get(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+            if (contentEnd > lineStart && buffer.get(lineStart) != '#' && tokenizer.reset(buffer, lineStart, contentEnd)) {
+                lineHandler.accept(tokenizer);
+            }
+            lineStart = lineEnd + 1;
         }
+    }
 
-        // Extract the attribute string
-        String attributeString = line.substring(i).trim();
+    /**
+     * Parses the GTF file in parallel: the file is memory-mapped, split into chunks at line boundaries and the chunks
+     * are parsed on the common ForkJoin pool. The result is the same as {@link #parseGTF(String)}.
+     *
+     * @param gtfFile the GTF file to parse
+     * @return the parsed annotation
+     */
+    public static GTFAnnotation parseGTFParallel(String gtfFile) {
+        return parseGTFParallel(gtfFile, GTFFilter.NONE);
+    }
 
-        // Parse the attribute string like in the original method
-        int attrLen = attributeString.length();
-        if (attrLen > 0 && attributeString.charAt(attrLen - 1) == ';') {
-            attributeString = attributeString.substring(0, attrLen - 1);
-            attrLen--;
+    /**
+     * @param gtfFile the GTF file to parse
+     * @param filter  the lines to keep
+     * @return the parsed annotation, the same as {@link #parseGTF(String, GTFFilter)}
+     */
+    public static GTFAnnotation parseGTFParallel(String gtfFile, GTFFilter filter) {
+        long fileSize;
+        try {
+            fileSize = Files.size(Paths.get(gtfFile));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new GTFAnnotation();
         }
+        long chunkCount = Math.max(ForkJoinPool.getCommonPoolParallelism() * 4L, fileSize / MAX_CHUNK_SIZE + 1);
+        chunkCount = Math.min(chunkCount, Math.max(1, fileSize / MIN_CHUNK_SIZE));
+        return parseGTFParallel(gtfFile, (int) chunkCount, AttributeProjection.DEFAULT, filter);
+    }
 
-        // Variables to hold gene_id and transcript_id
-        String geneID = null;
-        String transcriptID = null;
+    /**
+     * @param gtfFile    the GTF file to parse
+     * @param chunkCount the number of chunks the file is split into, chunks are never larger than 1 GB
+     * @return the parsed annotation, the same as {@link #parseGTF(String)}
+     */
+    public static GTFAnnotation parseGTFParallel(String gtfFile, int chunkCount) {
+        return parseGTFParallel(gtfFile, chunkCount, AttributeProjection.DEFAULT);
+    }
 
-        int j = 0;
-        while (j < attrLen) {
-            // Skip leading spaces
-            while (j < attrLen && attributeString.charAt(j) == ' ') {
-                j++;
-            }
+    /**
+     * @param gtfFile    the GTF file to parse
+     * @param chunkCount the number of chunks the file is split into, chunks are never larger than 1 GB
+     * @param projection the attributes to decode
+     * @return the parsed annotation, the same as {@link #parseGTF(String, AttributeProjection)}
+     */
+    public static GTFAnnotation parseGTFParallel(String gtfFile, int chunkCount, AttributeProjection projection) {
+        return parseGTFParallel(gtfFile, chunkCount, projection, GTFFilter.NONE);
+    }
 
-            // Find the end of the key
-            int start = j;
-            while (j < attrLen && attributeString.charAt(j) != ' ') {
-                j++;
-            }
-            if (start == j) {
-                break; // No more key-value pairs
+    /**
+     * @param gtfFile    the GTF file to parse
+     * @param chunkCount the number of chunks the file is split into, chunks are never larger than 1 GB
+     * @param projection the attributes to decode
+     * @param filter     the lines to keep, a snapshot is only used without a filter
+     * @return the parsed annotation, the same as {@link #parseGTF(String, AttributeProjection, GTFFilter)}
+     */
+    public static GTFAnnotation parseGTFParallel(String gtfFile, int chunkCount, AttributeProjection projection, GTFFilter filter) {
+        long startTime = System.currentTimeMillis();
+        GTFAnnotation GTFAnnotation = filter.acceptsAll() ? loadSnapshot(gtfFile, projection, startTime) : parseIndexed(gtfFile, projection, filter, startTime);
+        if (GTFAnnotation != null) {
+            return GTFAnnotation;
+        }
+        GTFAnnotation = new GTFAnnotation();
+        try (InputStream in = openCompressed(gtfFile)) {
+            // Compressed files can not be split at line boundaries, only the BGZF blocks are inflated in parallel
+            if (in != null) {
+                parseStream(in, new GTFLineTokenizer(projection), filteredLineHandler(filter, GTFAnnotation));
+                GTFTimer.setGtfParseTime(System.currentTimeMillis() - startTime);
+                System.out.println("LOG: Total time to parse compressed GTF: " + GTFTimer.getGtfParseTime() + " ms");
+                return GTFAnnotation;
             }
-            String key = attributeString.substring(start, j);
-
-            // Skip space between key and value
-            while (j < attrLen && attributeString.charAt(j) == ' ') {
-                j++;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return GTFAnnotation;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(gtfFile))) {
+            long[] boundaries = computeChunkBoundaries(channel, chunkCount);
+            if (boundaries.length > 1) {
+                GTFAnnotation = ForkJoinPool.commonPool().invoke(new GTFChunkTask(channel, boundaries, 0, boundaries.length - 1, projection, filter));
             }
+            GTFTimer.setGtfParseTime(System.currentTimeMillis() - startTime);
+            System.out.println("LOG: Total time to parse GTF in " + (boundaries.length - 1) + " chunks: " + GTFTimer.getGtfParseTime() + " ms");
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+        }
+        return GTFAnnotation;
+    }
 
-            // Determine if the value is quoted
-            String value;
-            if (j < attrLen && attributeString.charAt(j) == '"') {
-                int valueStart = ++j; // Skip the opening quote
-                while (j < attrLen && attributeString.charAt(j) != '"') {
-                    j++;
-                }
-                if (j >= attrLen) {
-                    break; // Malformed input
+    /**
+     * Splits the file into roughly equal chunks, every chunk except the last one ends directly after a newline.
+     *
+     * @return the chunk boundaries, chunk i spans [boundaries[i], boundaries[i + 1])
+     */
+    private static long[] computeChunkBoundaries(FileChannel channel, int chunkCount) throws IOException {
+        long fileSize = channel.size();
+        chunkCount = (int) Math.max(chunkCount, fileSize / MAX_CHUNK_SIZE + 1);
+        long[] boundaries = new long[chunkCount + 1];
+        int boundaryCount = 1;
+        ByteBuffer probe = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 1; i < chunkCount; i++) {
+            long position = Math.max(fileSize / chunkCount * i, boundaries[boundaryCount - 1]);
+            long lineStart = fileSize;
+            // Search the next newline, the chunk boundary is the start of the following line
+            while (position < fileSize) {
+                probe.clear();
+                int read = channel.read(probe, position);
+                if (read <= 0) {
+                    break;
                 }
-                value = attributeString.substring(valueStart, j++);
-            } else {
-                int valueStart = j;
-                while (j < attrLen && attributeString.charAt(j) != ' ' && attributeString.charAt(j) != ';') {
-                    j++;
+                int newline = GTFLineTokenizer.indexOf(probe, 0, read, (byte) '\n');
+                if (newline >= 0) {
+                    lineStart = position + newline + 1;
+                    break;
                 }
-                value = attributeString.substring(valueStart, j);
+                position += read;
             }
-
-            // Check for the gene_id and transcript_id and extract them
-            if (key.equals("gene_id")) {
-                geneID = value;
-                if (!geneTranscriptCounts.containsKey(geneID)) {
-                    return false;
-                }
-            } else if (key.equals("transcript_id")) {
-                transcriptID = value;
-                return geneTranscriptCounts.get(geneID).containsKey(transcriptID);
+            if (lineStart >= fileSize) {
+                break;
             }
+            if (lineStart > boundaries[boundaryCount - 1]) {
+                boundaries[boundaryCount++] = lineStart;
+            }
+        }
+        if (fileSize > boundaries[boundaryCount - 1]) {
+            boundaries[boundaryCount++] = fileSize;
+        }
+        return Arrays.copyOf(boundaries, boundaryCount);
+    }
 
-            // Skip any space after the value
-            while (j < attrLen && attributeString.charAt(j) == ' ') {
-                j++;
+    /**
+     * Parses only the genes and transcripts of the read counts, see {@link GTFFilter#forCounts(Map)}.
+     */
+    public static GTFAnnotation parseGTFForCounts(String gtfFile, Map<String, Map<String, Integer>> geneTranscriptCounts) {
+        long startTime = System.currentTimeMillis();
+        GTFAnnotation GTFAnnotation = loadSnapshot(gtfFile, AttributeProjection.DEFAULT, startTime);
+        if (GTFAnnotation != null) {
+            return filterForCounts(GTFAnnotation, geneTranscriptCounts);
+        }
+        GTFAnnotation = new GTFAnnotation();
+        try {
+            parseFile(gtfFile, AttributeProjection.DEFAULT, filteredLineHandler(GTFFilter.forCounts(geneTranscriptCounts), GTFAnnotation));
+            // Gene lines pass the filter on their own, genes without a counted transcript are dropped like in filterForCounts
+            GTFAnnotation.getGenes().values().removeIf(gene -> gene.getTranscripts().isEmpty());
+            GTFTimer.setGtfParseTime(System.currentTimeMillis() - startTime);
+            // System.out.println("LOG: Total time to parse GTF: " + GTFTimer.getGtfParseTime() + " ms");
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return GTFAnnotation;
+    }
+
+    static Consumer<GTFLineTokenizer> filteredLineHandler(GTFFilter filter, GTFAnnotation gtfAnnotation) {
+        if (filter.acceptsAll()) {
+            return line -> processGTFLine(line, gtfAnnotation);
+        }
+        return line -> {
+            if (filter.accept(line)) {
+                processGTFLine(line, gtfAnnotation);
             }
+        };
+    }
+
+
+    /**
+     * @return the annotation of the chromosomes or regions of the filter, read through the index next to the GTF file,
+     * or null if the filter is not restricted to a location or there is no valid index
+     */
+    private static GTFAnnotation parseIndexed(String gtfFile, AttributeProjection projection, GTFFilter filter, long startTime) {
+        if (!filter.restrictsLocation()) {
+            return null;
+        }
+        GTFIndex index = GTFIndex.load(gtfFile);
+        if (index == null) {
+            return null;
+        }
+        GTFAnnotation GTFAnnotation = new GTFAnnotation();
+        try {
+            index.parse(gtfFile, new GTFLineTokenizer(projection), filter, filteredLineHandler(filter, GTFAnnotation));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        GTFTimer.setGtfParseTime(System.currentTimeMillis() - startTime);
+        System.out.println("LOG: Total time to parse indexed GTF regions: " + GTFTimer.getGtfParseTime() + " ms");
+        return GTFAnnotation;
+    }
 
-            // Skip the semicolon separating attributes
-            if (j < attrLen && attributeString.charAt(j) == ';') {
-                j++;
+    /**
+     * @return the annotation from the snapshot next to the GTF file or null if there is no valid snapshot
+     */
+    private static GTFAnnotation loadSnapshot(String gtfFile, AttributeProjection projection, long startTime) {
+        // Snapshots only hold IDs and names
+        if (projection.hasExtraAttributes()) {
+            return null;
+        }
+        GTFAnnotation GTFAnnotation = GTFSnapshot.load(gtfFile);
+        if (GTFAnnotation != null) {
+            GTFTimer.setGtfParseTime(System.currentTimeMillis() - startTime);
+            System.out.println("LOG: Total time to load GTF snapshot: " + GTFTimer.getGtfParseTime() + " ms");
+        }
+        return GTFAnnotation;
+    }
+
+    /**
+     * Keeps only the genes and transcripts of the read counts, the in-memory counterpart of {@link GTFFilter#forCounts(Map)}.
+     */
+    private static GTFAnnotation filterForCounts(GTFAnnotation gtfAnnotation, Map<String, Map<String, Integer>> geneTranscriptCounts) {
+        GTFAnnotation filtered = new GTFAnnotation();
+        for (Map.Entry<String, Map<String, Integer>> geneCounts : geneTranscriptCounts.entrySet()) {
+            Gene gene = gtfAnnotation.getGene(geneCounts.getKey());
+            if (gene != null) {
+                gene.getTranscripts().keySet().retainAll(geneCounts.getValue().keySet());
+                if (!gene.getTranscripts().isEmpty()) {
+                    filtered.addGene(gene);
+                }
             }
         }
-        return false;
+        return filtered;
+    }
+
+    /**
+     * @return the gene the line belongs to, null if the feature type is not part of the annotation model
+     */
+    static Gene processGTFLine(GTFLineTokenizer tokenizer, GTFAnnotation gtfAnnotation) {
+        return switch (tokenizer.firstByte(FEATURE_COL)) {
+            case 'g' -> processGene(tokenizer, gtfAnnotation);
+            case 't' -> processTranscript(tokenizer, gtfAnnotation);
+            case 'e' -> processExon(tokenizer, gtfAnnotation);
+            case 'C' -> processCDS(tokenizer, gtfAnnotation);
+            default -> null;
+        };
+    }
+
+    private static Interval parseInterval(GTFLineTokenizer tokenizer) {
+        return new Interval(tokenizer.getInt(START_COL), tokenizer.getInt(END_COL));
+    }
+
+    private static Gene processCDS(GTFLineTokenizer tokenizer, GTFAnnotation gtfAnnotation) {
+        GTFAttributes attributes = tokenizer.getAttributes(AnnotationTypes.CDS);
+        Gene gene = getOrCreateGene(gtfAnnotation, tokenizer, attributes);
+        Transcript transcript = getOrCreateTranscript(gene, tokenizer, attributes);
+        transcript.addCds(new CodingSequence(tokenizer.getSymbol(SEQNAME_COL), tokenizer.getSymbol(SOURCE_COL), tokenizer.getSymbol(FEATURE_COL), parseInterval(tokenizer), tokenizer.getScore(), tokenizer.getStrand(), tokenizer.getFrame(), attributes));
+        return gene;
+    }
+
+    private static Gene processExon(GTFLineTokenizer tokenizer, GTFAnnotation gtfAnnotation) {
+        GTFAttributes attributes = tokenizer.getAttributes(AnnotationTypes.EXON);
+        Gene gene = getOrCreateGene(gtfAnnotation, tokenizer, attributes);
+        Transcript transcript = getOrCreateTranscript(gene, tokenizer, attributes);
+        transcript.addExon(new Exon(tokenizer.getSymbol(SEQNAME_COL), tokenizer.getSymbol(SOURCE_COL), tokenizer.getSymbol(FEATURE_COL), parseInterval(tokenizer), tokenizer.getScore(), tokenizer.getStrand(), tokenizer.getFrame(), attributes));
+        return gene;
+    }
+
+    private static Transcript getOrCreateTranscript(Gene gene, GTFLineTokenizer tokenizer, GTFAttributes attributes) {
+        Transcript transcript = gene.getTranscript(attributes.getTranscriptID());
+        if (transcript == null) {
+            transcript = new Transcript(tokenizer.getSymbol(SEQNAME_COL), tokenizer.getSymbol(SOURCE_COL), tokenizer.getStrand(), attributes);
+            gene.addTranscript(transcript);
+        }
+        return transcript;
+    }
+
+    private static Gene processTranscript(GTFLineTokenizer tokenizer, GTFAnnotation gtfAnnotation) {
+        GTFAttributes attributes = tokenizer.getAttributes(AnnotationTypes.TRANSCRIPT);
+        Gene gene = getOrCreateGene(gtfAnnotation, tokenizer, attributes);
+        Transcript transcript = gene.getTranscript(attributes.getTranscriptID());
+        if (transcript == null) {
+            gene.addTranscript(new Transcript(tokenizer.getSymbol(SEQNAME_COL), tokenizer.getSymbol(SOURCE_COL), tokenizer.getSymbol(FEATURE_COL), parseInterval(tokenizer), tokenizer.getScore(), tokenizer.getStrand(), tokenizer.getFrame(), attributes));
+        } else {
+            transcript.overwrite(tokenizer.getSymbol(SEQNAME_COL), tokenizer.getSymbol(SOURCE_COL), tokenizer.getSymbol(FEATURE_COL), parseInterval(tokenizer), tokenizer.getScore(), tokenizer.getStrand(), tokenizer.getFrame());
+            transcript.setProjectedAttributes(attributes.getProjectedAttributes());
+        }
+        return gene;
     }
 
+    private static Gene getOrCreateGene(GTFAnnotation gtfAnnotation, GTFLineTokenizer tokenizer, GTFAttributes attributes) {
+        Gene gene = gtfAnnotation.getGenes().get(attributes.getGeneID());
+        if (gene == null) {
+            gene = new Gene(tokenizer.getSymbol(SEQNAME_COL), tokenizer.getSymbol(SOURCE_COL), tokenizer.getStrand(), attributes);
+            gtfAnnotation.addGene(gene);
+        }
+        return gene;
+    }
+
+    private static Gene processGene(GTFLineTokenizer tokenizer, GTFAnnotation gtfAnnotation) {
+        GTFAttributes attributes = tokenizer.getAttributes(AnnotationTypes.GENE);
+        Gene thisGene = gtfAnnotation.getGenes().get(attributes.getGeneID());
+        if (thisGene == null) {
+            thisGene = new Gene(tokenizer.getSymbol(SEQNAME_COL), tokenizer.getSymbol(SOURCE_COL), tokenizer.getSymbol(FEATURE_COL), parseInterval(tokenizer), tokenizer.getScore(), tokenizer.getStrand(), tokenizer.getFrame(), attributes);
+            gtfAnnotation.addGene(thisGene);
+        } else {
+            // Overwrite the gtf.structs.AnnotationEntry fields with the new one
+            thisGene.overwrite(tokenizer.getSymbol(SEQNAME_COL), tokenizer.getSymbol(SOURCE_COL), tokenizer.getSymbol(FEATURE_COL), parseInterval(tokenizer), tokenizer.getScore(), tokenizer.getStrand(), tokenizer.getFrame());
+            thisGene.setProjectedAttributes(attributes.getProjectedAttributes());
+        }
+        return thisGene;
+    }
 
-    private static void processGTFLine(String line, GTFAnnotation GTFAnnotation) {
+    /**
+     * The String based parser before {@link GTFLineTokenizer}, see {@link #parseGTFWithSplit(String)}.
+     */
+    @Deprecated
+    static void processGTFLine(String line, GTFAnnotation GTFAnnotation) {
         // TODO: Don't need the whole string comparison, just the first character
         String[] data = line.split("\t");
         switch (data[FEATURE_COL].charAt(0)) {
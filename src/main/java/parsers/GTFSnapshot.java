@@ -0,0 +1,334 @@
+package parsers;
+
+import gtf.GTFAnnotation;
+import gtf.structs.*;
+import gtf.types.FrameStarts;
+import gtf.types.StrandDirection;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary snapshot of a parsed {@link GTFAnnotation}, stored next to the GTF file as {@code <gtf>.snapshot}.
+ * <p>
+ * Layout (big endian): magic, version, checksum of the GTF file, a table of all distinct strings and then the genes
+ * with their transcripts, exons and CDS. Strings are stored as indices into the table, so repeated seqnames, sources
+ * and features cost four bytes each.
+ */
+public class GTFSnapshot {
+    public static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final long MAGIC = 0x474F4249534E4150L; // "GOBISNAP"
+    private static final int VERSION = 1;
+    // Bytes at the head and tail of the GTF file that go into the checksum
+    private static final int CHECKSUM_SAMPLE_SIZE = 1 << 20;
+    private static final int NO_STRING = -1;
+    private static final byte NO_INTERVAL = 0;
+    private static final byte HAS_INTERVAL = 1;
+    private static final StrandDirection[] STRANDS = StrandDirection.values();
+    private static final FrameStarts[] FRAMES = FrameStarts.values();
+
+    public static Path getSnapshotPath(String gtfFile) {
+        return Paths.get(gtfFile + SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * Checksum of the GTF file: file size, modification time and the first and last megabyte of the file.
+     * Reading the whole file would take as long as a large part of the parsing we want to skip.
+     *
+     * @param gtfFile the GTF file
+     * @return the checksum the snapshot has to match
+     */
+    public static long checksum(String gtfFile) throws IOException {
+        Path path = Paths.get(gtfFile);
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(path)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(2 * Long.BYTES);
+            header.putLong(size).putLong(Files.getLastModifiedTime(path).toMillis()).flip();
+            crc.update(header);
+            long headLength = Math.min(size, CHECKSUM_SAMPLE_SIZE);
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, headLength));
+            long tailStart = Math.max(headLength, size - CHECKSUM_SAMPLE_SIZE);
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, tailStart, size - tailStart));
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * @param gtfFile the GTF file
+     * @return true if a snapshot exists next to the GTF file and was written for the current content of the file
+     */
+    public static boolean hasValidSnapshot(String gtfFile) {
+        Path snapshot = getSnapshotPath(gtfFile);
+        if (!Files.isRegularFile(snapshot)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot)) {
+            ByteBuffer header = ByteBuffer.allocate(Long.BYTES + Integer.BYTES + Long.BYTES);
+            if (channel.read(header, 0) < header.capacity()) {
+                return false;
+            }
+            header.flip();
+            return header.getLong() == MAGIC && header.getInt() == VERSION && header.getLong() == checksum(gtfFile);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Loads the snapshot of the GTF file.
+     *
+     * @param gtfFile the GTF file
+     * @return the annotation or null if there is no snapshot matching the current GTF file
+     */
+    public static GTFAnnotation load(String gtfFile) {
+        Path snapshot = getSnapshotPath(gtfFile);
+        if (!Files.isRegularFile(snapshot)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getLong() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != checksum(gtfFile)) {
+                return null;
+            }
+            return readAnnotation(buffer);
+        } catch (IOException | BufferUnderflowException e) {
+            System.out.println("Warning, could not read GTF snapshot " + snapshot + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot next to the GTF file. The snapshot is written to a temporary file first and then moved,
+     * so concurrent jobs never see a partially written snapshot.
+     *
+     * @param gtfAnnotation the complete (unfiltered) annotation of the GTF file
+     * @param gtfFile       the GTF file the annotation was parsed from
+     */
+    public static void write(GTFAnnotation gtfAnnotation, String gtfFile) throws IOException {
+        Path snapshot = getSnapshotPath(gtfFile);
+        Path temp = Files.createTempFile(snapshot.toAbsolutePath().getParent(), snapshot.getFileName().toString(), ".tmp");
+        try {
+            Map<String, Integer> strings = collectStrings(gtfAnnotation);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeLong(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(checksum(gtfFile));
+                out.writeInt(strings.size());
+                for (String string : strings.keySet()) {
+                    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+                out.writeInt(gtfAnnotation.getGenes().size());
+                for (Gene gene : gtfAnnotation.getGenes().values()) {
+                    writeGene(out, gene, strings);
+                }
+            }
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Parses the GTF file and writes its snapshot, unless a valid snapshot already exists.
+     *
+     * @param gtfFile the GTF file
+     */
+    public static void createIfMissing(String gtfFile) {
+        if (hasValidSnapshot(gtfFile)) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            write(GTFParser.parseGTFParallel(gtfFile), gtfFile);
+            System.out.println("LOG: Total time to write GTF snapshot: " + (System.currentTimeMillis() - startTime) + " ms");
+        } catch (IOException e) {
+            System.out.println("Warning, could not write GTF snapshot for " + gtfFile + ": " + e.getMessage());
+        }
+    }
+
+    private static Map<String, Integer> collectStrings(GTFAnnotation gtfAnnotation) {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (Gene gene : gtfAnnotation.getGenes().values()) {
+            collectEntryStrings(strings, gene);
+            collect(strings, gene.getGeneID());
+            collect(strings, gene.getGeneName());
+            for (Transcript transcript : gene.getTranscripts().values()) {
+                collectEntryStrings(strings, transcript);
+                collect(strings, transcript.getTranscriptID());
+                collect(strings, transcript.getTranscriptName());
+                // the entries of frozen transcripts one at a time, not as a new set
+                Iterator<Exon> exons = transcript.isFrozen() ? null : transcript.getExons().iterator();
+                for (int i = 0; i < transcript.getExonCount(); i++) {
+                    Exon exon = exons == null ? transcript.getExon(i) : exons.next();
+                    collectEntryStrings(strings, exon);
+                    collect(strings, exon.getExonID());
+                    collect(strings, exon.getExonNumber());
+                }
+                Iterator<CodingSequence> cdsIterator = transcript.isFrozen() ? null : transcript.getCds().iterator();
+                for (int i = 0; i < transcript.getCdsCount(); i++) {
+                    CodingSequence cds = cdsIterator == null ? transcript.getCds(i) : cdsIterator.next();
+                    collectEntryStrings(strings, cds);
+                    collect(strings, cds.getProteinID());
+                    collect(strings, cds.getCcdsID());
+                    collect(strings, cds.getExonNumber());
+                }
+            }
+        }
+        return strings;
+    }
+
+    private static void collectEntryStrings(Map<String, Integer> strings, AnnotationEntry entry) {
+        collect(strings, entry.getSeqname());
+        collect(strings, entry.getSource());
+        collect(strings, entry.getFeature());
+    }
+
+    private static void collect(Map<String, Integer> strings, String string) {
+        if (string != null) {
+            strings.putIfAbsent(string, strings.size());
+        }
+    }
+
+    private static void writeGene(DataOutputStream out, Gene gene, Map<String, Integer> strings) throws IOException {
+        writeEntry(out, gene, strings);
+        writeString(out, gene.getGeneID(), strings);
+        writeString(out, gene.getGeneName(), strings);
+        out.writeInt(gene.getTranscripts().size());
+        for (Transcript transcript : gene.getTranscripts().values()) {
+            writeEntry(out, transcript, strings);
+            writeString(out, transcript.getTranscriptID(), strings);
+            writeString(out, transcript.getTranscriptName(), strings);
+            out.writeInt(transcript.getExonCount());
+            Iterator<Exon> exons = transcript.isFrozen() ? null : transcript.getExons().iterator();
+            for (int i = 0; i < transcript.getExonCount(); i++) {
+                Exon exon = exons == null ? transcript.getExon(i) : exons.next();
+                writeEntry(out, exon, strings);
+                writeString(out, exon.getExonID(), strings);
+                writeString(out, exon.getExonNumber(), strings);
+            }
+            out.writeInt(transcript.getCdsCount());
+            Iterator<CodingSequence> cdsIterator = transcript.isFrozen() ? null : transcript.getCds().iterator();
+            for (int i = 0; i < transcript.getCdsCount(); i++) {
+                CodingSequence cds = cdsIterator == null ? transcript.getCds(i) : cdsIterator.next();
+                writeEntry(out, cds, strings);
+                writeString(out, cds.getProteinID(), strings);
+                writeString(out, cds.getCcdsID(), strings);
+                writeString(out, cds.getExonNumber(), strings);
+            }
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, AnnotationEntry entry, Map<String, Integer> strings) throws IOException {
+        writeString(out, entry.getSeqname(), strings);
+        writeString(out, entry.getSource(), strings);
+        writeString(out, entry.getFeature(), strings);
+        Interval interval = entry.getInterval();
+        if (interval == null) {
+            out.writeByte(NO_INTERVAL);
+        } else {
+            out.writeByte(HAS_INTERVAL);
+            out.writeInt(interval.getStart());
+            out.writeInt(interval.getEnd());
+        }
+        out.writeDouble(entry.getScore());
+        out.writeByte(entry.getStrand() == null ? -1 : entry.getStrand().ordinal());
+        out.writeByte(entry.getFrame() == null ? -1 : entry.getFrame().ordinal());
+    }
+
+    private static void writeString(DataOutputStream out, String string, Map<String, Integer> strings) throws IOException {
+        out.writeInt(string == null ? NO_STRING : strings.get(string));
+    }
+
+    private static GTFAnnotation readAnnotation(ByteBuffer buffer) {
+        String[] strings = new String[buffer.getInt()];
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < strings.length; i++) {
+            int length = buffer.getInt();
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            buffer.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        GTFAnnotation gtfAnnotation = new GTFAnnotation();
+        int geneCount = buffer.getInt();
+        for (int g = 0; g < geneCount; g++) {
+            EntryFields geneFields = readEntry(buffer, strings);
+            GTFAttributes.Builder geneAttributes = new GTFAttributes.Builder();
+            geneAttributes.setGeneID(readString(buffer, strings));
+            geneAttributes.setGeneName(readString(buffer, strings));
+            Gene gene = new Gene(geneFields.seqname, geneFields.source, geneFields.feature, geneFields.interval, geneFields.score, geneFields.strand, geneFields.frame, geneAttributes.build());
+            int transcriptCount = buffer.getInt();
+            for (int t = 0; t < transcriptCount; t++) {
+                EntryFields transcriptFields = readEntry(buffer, strings);
+                GTFAttributes.Builder transcriptAttributes = new GTFAttributes.Builder();
+                transcriptAttributes.setTranscriptID(readString(buffer, strings));
+                transcriptAttributes.setTranscriptName(readString(buffer, strings));
+                Transcript transcript = new Transcript(transcriptFields.seqname, transcriptFields.source, transcriptFields.feature, transcriptFields.interval, transcriptFields.score, transcriptFields.strand, transcriptFields.frame, transcriptAttributes.build());
+                int exonCount = buffer.getInt();
+                for (int e = 0; e < exonCount; e++) {
+                    EntryFields exonFields = readEntry(buffer, strings);
+                    GTFAttributes.Builder exonAttributes = new GTFAttributes.Builder();
+                    exonAttributes.setExonID(readString(buffer, strings));
+                    exonAttributes.setExonNumber(readString(buffer, strings));
+                    transcript.addExon(new Exon(exonFields.seqname, exonFields.source, exonFields.feature, exonFields.interval, exonFields.score, exonFields.strand, exonFields.frame, exonAttributes.build()));
+                }
+                int cdsCount = buffer.getInt();
+                for (int c = 0; c < cdsCount; c++) {
+                    EntryFields cdsFields = readEntry(buffer, strings);
+                    GTFAttributes.Builder cdsAttributes = new GTFAttributes.Builder();
+                    cdsAttributes.setProteinID(readString(buffer, strings));
+                    cdsAttributes.setCcdsID(readString(buffer, strings));
+                    cdsAttributes.setExonNumber(readString(buffer, strings));
+                    transcript.addCds(new CodingSequence(cdsFields.seqname, cdsFields.source, cdsFields.feature, cdsFields.interval, cdsFields.score, cdsFields.strand, cdsFields.frame, cdsAttributes.build()));
+                }
+                gene.addTranscript(transcript);
+            }
+            gtfAnnotation.addGene(gene);
+        }
+        return gtfAnnotation;
+    }
+
+    private static EntryFields readEntry(ByteBuffer buffer, String[] strings) {
+        String seqname = SymbolTable.intern(readString(buffer, strings));
+        String source = SymbolTable.intern(readString(buffer, strings));
+        String feature = SymbolTable.intern(readString(buffer, strings));
+        Interval interval = null;
+        if (buffer.get() == HAS_INTERVAL) {
+            interval = new Interval(buffer.getInt(), buffer.getInt());
+        }
+        double score = buffer.getDouble();
+        byte strand = buffer.get();
+        byte frame = buffer.get();
+        return new EntryFields(seqname, source, feature, interval, score, strand < 0 ? null : STRANDS[strand], frame < 0 ? null : FRAMES[frame]);
+    }
+
+    private static String readString(ByteBuffer buffer, String[] strings) {
+        int index = buffer.getInt();
+        return index == NO_STRING ? null : strings[index];
+    }
+
+    private record EntryFields(String seqname, String source, String feature, Interval interval, double score,
+                               StrandDirection strand, FrameStarts frame) {
+    }
+}
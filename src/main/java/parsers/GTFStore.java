@@ -0,0 +1,566 @@
+package parsers;
+
+import gtf.GTFAnnotation;
+import gtf.structs.*;
+import gtf.types.FrameStarts;
+import gtf.types.StrandDirection;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Read-only annotation store that stays in a memory-mapped file ({@code <gtf>.gtfstore}) instead of the heap.
+ * Every process that opens the store maps the same file, so the pages are shared by the page cache and several
+ * annotator JVMs on one machine hold the annotation once.
+ * <p>
+ * All records have a fixed size and are read with absolute gets, genes are grouped by chromosome.
+ * {@link #getAnnotation()} returns a {@link GTFAnnotation} whose genes are created from the mapped records when they are
+ * accessed: each access creates a new frozen {@link Gene}, which the caller can drop when it is done with it.
+ * Genes and transcripts are stored in the order of the dense indices of a frozen annotation, the record numbers are
+ * their indices.
+ * Projected attributes are not stored.
+ * <p>
+ * Layout (big endian): header, string offsets, string data, chromosomes, gene IDs by gene ID, genes, transcripts and
+ * exons/CDS.
+ */
+public class GTFStore {
+    public static final String STORE_SUFFIX = ".gtfstore";
+    private static final long MAGIC = 0x474F424953544F52L; // "GOBISTOR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 2 * Long.BYTES + 6 * Integer.BYTES;
+    private static final int NO_STRING = -1;
+    private static final StrandDirection[] STRANDS = StrandDirection.values();
+    private static final FrameStarts[] FRAMES = FrameStarts.values();
+    // seqname, source, feature, start, end, score, strand, frame, has interval, padding
+    private static final int ENTRY_SIZE = 5 * Integer.BYTES + Double.BYTES + 4;
+    // entry, gene ID, gene name, first transcript, transcript count
+    private static final int GENE_SIZE = ENTRY_SIZE + 4 * Integer.BYTES;
+    // entry, transcript ID, transcript name, first exon, exon count, first CDS, CDS count
+    private static final int TRANSCRIPT_SIZE = ENTRY_SIZE + 6 * Integer.BYTES;
+    // entry, exon ID and number or protein ID, CCDS ID and exon number
+    private static final int FEATURE_SIZE = ENTRY_SIZE + 3 * Integer.BYTES;
+    // seqname, first gene, gene count
+    private static final int CHROMOSOME_SIZE = 3 * Integer.BYTES;
+
+    private final MappedByteBuffer buffer;
+    private final int geneCount;
+    private final int transcriptCount;
+    private final int stringOffsets;
+    private final int stringData;
+    private final int chromosomes;
+    private final int geneIDIndex;
+    private final int genes;
+    private final int transcripts;
+    private final int features;
+    private final Map<String, int[]> chromosomeGenes = new LinkedHashMap<>();
+
+    private GTFStore(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        int position = 2 * Long.BYTES + Integer.BYTES;
+        int stringCount = buffer.getInt(position);
+        int chromosomeCount = buffer.getInt(position + Integer.BYTES);
+        geneCount = buffer.getInt(position + 2 * Integer.BYTES);
+        transcriptCount = buffer.getInt(position + 3 * Integer.BYTES);
+        stringOffsets = HEADER_SIZE;
+        stringData = stringOffsets + (stringCount + 1) * Integer.BYTES;
+        chromosomes = stringData + buffer.getInt(stringOffsets + stringCount * Integer.BYTES);
+        geneIDIndex = chromosomes + chromosomeCount * CHROMOSOME_SIZE;
+        genes = geneIDIndex + geneCount * Integer.BYTES;
+        transcripts = genes + geneCount * GENE_SIZE;
+        features = transcripts + transcriptCount * TRANSCRIPT_SIZE;
+        for (int c = 0; c < chromosomeCount; c++) {
+            int record = chromosomes + c * CHROMOSOME_SIZE;
+            chromosomeGenes.put(SymbolTable.intern(getString(record)), new int[]{buffer.getInt(record + Integer.BYTES), buffer.getInt(record + 2 * Integer.BYTES)});
+        }
+    }
+
+    public static Path getStorePath(String gtfFile) {
+        return Paths.get(gtfFile + STORE_SUFFIX);
+    }
+
+    /**
+     * @param gtfFile the GTF file
+     * @return true if a store exists next to the GTF file and was written for the current content of the file
+     */
+    public static boolean hasValidStore(String gtfFile) {
+        Path store = getStorePath(gtfFile);
+        if (!Files.isRegularFile(store)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(store)) {
+            ByteBuffer header = ByteBuffer.allocate(Long.BYTES + Integer.BYTES + Long.BYTES);
+            if (channel.read(header, 0) < header.capacity()) {
+                return false;
+            }
+            header.flip();
+            return header.getLong() == MAGIC && header.getInt() == VERSION && header.getLong() == GTFSnapshot.checksum(gtfFile);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Maps the store of the GTF file read-only.
+     *
+     * @param gtfFile the GTF file
+     * @return the store or null if there is no store matching the current GTF file
+     */
+    public static GTFStore open(String gtfFile) {
+        if (!hasValidStore(gtfFile)) {
+            return null;
+        }
+        Path store = getStorePath(gtfFile);
+        try (FileChannel channel = FileChannel.open(store)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                System.out.println("Warning, GTF store " + store + " is larger than 2 GB");
+                return null;
+            }
+            // The mapping stays valid after the channel is closed
+            return new GTFStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            System.out.println("Warning, could not map GTF store " + store + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Parses the GTF file and writes its store, unless a valid store already exists.
+     *
+     * @param gtfFile the GTF file
+     */
+    public static void createIfMissing(String gtfFile) {
+        if (hasValidStore(gtfFile)) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            write(GTFParser.parseGTFParallel(gtfFile), gtfFile);
+            System.out.println("LOG: Total time to write GTF store: " + (System.currentTimeMillis() - startTime) + " ms");
+        } catch (IOException e) {
+            System.out.println("Warning, could not write GTF store for " + gtfFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the store next to the GTF file, through a temporary file like {@link GTFSnapshot#write}.
+     *
+     * @param gtfAnnotation the complete (unfiltered) annotation of the GTF file
+     * @param gtfFile       the GTF file the annotation was parsed from
+     */
+    public static void write(GTFAnnotation gtfAnnotation, String gtfFile) throws IOException {
+        // Same order as the dense indices of a frozen annotation, so the record numbers are the indices
+        List<Gene> sortedGenes = new ArrayList<>(gtfAnnotation.getGenes().values());
+        sortedGenes.sort(GTFAnnotation.GENE_ORDER);
+        Map<Gene, List<Transcript>> sortedTranscripts = new IdentityHashMap<>();
+        for (Gene gene : sortedGenes) {
+            List<Transcript> transcripts = new ArrayList<>(gene.getTranscripts().values());
+            transcripts.sort(GTFAnnotation.TRANSCRIPT_ORDER);
+            sortedTranscripts.put(gene, transcripts);
+        }
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        int transcriptCount = 0;
+        int featureCount = 0;
+        for (Gene gene : sortedGenes) {
+            collectEntry(strings, gene);
+            collect(strings, gene.getGeneID());
+            collect(strings, gene.getGeneName());
+            for (Transcript transcript : sortedTranscripts.get(gene)) {
+                transcriptCount++;
+                featureCount += transcript.getExonCount() + transcript.getCdsCount();
+                collectEntry(strings, transcript);
+                collect(strings, transcript.getTranscriptID());
+                collect(strings, transcript.getTranscriptName());
+                // the entries of frozen transcripts one at a time, not as a new set
+                Iterator<Exon> exons = transcript.isFrozen() ? null : transcript.getExons().iterator();
+                for (int i = 0; i < transcript.getExonCount(); i++) {
+                    Exon exon = exons == null ? transcript.getExon(i) : exons.next();
+                    collectEntry(strings, exon);
+                    collect(strings, exon.getExonID());
+                    collect(strings, exon.getExonNumber());
+                }
+                Iterator<CodingSequence> cdsIterator = transcript.isFrozen() ? null : transcript.getCds().iterator();
+                for (int i = 0; i < transcript.getCdsCount(); i++) {
+                    CodingSequence cds = cdsIterator == null ? transcript.getCds(i) : cdsIterator.next();
+                    collectEntry(strings, cds);
+                    collect(strings, cds.getProteinID());
+                    collect(strings, cds.getCcdsID());
+                    collect(strings, cds.getExonNumber());
+                }
+            }
+        }
+        Map<String, int[]> chromosomeGenes = new LinkedHashMap<>();
+        for (int g = 0; g < sortedGenes.size(); g++) {
+            int index = g;
+            chromosomeGenes.computeIfAbsent(sortedGenes.get(g).getSeqname(), k -> new int[]{index, 0})[1]++;
+        }
+        Integer[] byGeneID = new Integer[sortedGenes.size()];
+        for (int g = 0; g < byGeneID.length; g++) {
+            byGeneID[g] = g;
+        }
+        Arrays.sort(byGeneID, Comparator.comparing(g -> sortedGenes.get(g).getGeneID()));
+
+        Path store = getStorePath(gtfFile);
+        Path temp = Files.createTempFile(store.toAbsolutePath().getParent(), store.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeLong(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(GTFSnapshot.checksum(gtfFile));
+                out.writeInt(strings.size());
+                out.writeInt(chromosomeGenes.size());
+                out.writeInt(sortedGenes.size());
+                out.writeInt(transcriptCount);
+                out.writeInt(featureCount);
+                List<byte[]> stringBytes = new ArrayList<>(strings.size());
+                int offset = 0;
+                for (String string : strings.keySet()) {
+                    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    stringBytes.add(bytes);
+                    out.writeInt(offset);
+                    offset += bytes.length;
+                }
+                out.writeInt(offset);
+                for (byte[] bytes : stringBytes) {
+                    out.write(bytes);
+                }
+                for (Map.Entry<String, int[]> chromosome : chromosomeGenes.entrySet()) {
+                    writeString(out, chromosome.getKey(), strings);
+                    out.writeInt(chromosome.getValue()[0]);
+                    out.writeInt(chromosome.getValue()[1]);
+                }
+                for (int g : byGeneID) {
+                    out.writeInt(g);
+                }
+                int nextTranscript = 0;
+                for (Gene gene : sortedGenes) {
+                    writeEntry(out, gene, strings);
+                    writeString(out, gene.getGeneID(), strings);
+                    writeString(out, gene.getGeneName(), strings);
+                    out.writeInt(nextTranscript);
+                    out.writeInt(gene.getTranscripts().size());
+                    nextTranscript += gene.getTranscripts().size();
+                }
+                int nextFeature = 0;
+                for (Gene gene : sortedGenes) {
+                    for (Transcript transcript : sortedTranscripts.get(gene)) {
+                        writeEntry(out, transcript, strings);
+                        writeString(out, transcript.getTranscriptID(), strings);
+                        writeString(out, transcript.getTranscriptName(), strings);
+                        out.writeInt(nextFeature);
+                        out.writeInt(transcript.getExonCount());
+                        out.writeInt(nextFeature + transcript.getExonCount());
+                        out.writeInt(transcript.getCdsCount());
+                        nextFeature += transcript.getExonCount() + transcript.getCdsCount();
+                    }
+                }
+                for (Gene gene : sortedGenes) {
+                    for (Transcript transcript : sortedTranscripts.get(gene)) {
+                        Iterator<Exon> exons = transcript.isFrozen() ? null : transcript.getExons().iterator();
+                        for (int i = 0; i < transcript.getExonCount(); i++) {
+                            Exon exon = exons == null ? transcript.getExon(i) : exons.next();
+                            writeEntry(out, exon, strings);
+                            writeString(out, exon.getExonID(), strings);
+                            writeString(out, exon.getExonNumber(), strings);
+                            writeString(out, null, strings);
+                        }
+                        Iterator<CodingSequence> cdsIterator = transcript.isFrozen() ? null : transcript.getCds().iterator();
+                        for (int i = 0; i < transcript.getCdsCount(); i++) {
+                            CodingSequence cds = cdsIterator == null ? transcript.getCds(i) : cdsIterator.next();
+                            writeEntry(out, cds, strings);
+                            writeString(out, cds.getProteinID(), strings);
+                            writeString(out, cds.getCcdsID(), strings);
+                            writeString(out, cds.getExonNumber(), strings);
+                        }
+                    }
+                }
+            }
+            Files.move(temp, store, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return an annotation backed by the store, genes are created on access and can not be added
+     */
+    public GTFAnnotation getAnnotation() {
+        return new StoredAnnotation();
+    }
+
+    /**
+     * @return the genes of the chromosome, empty if it has no genes
+     */
+    public List<Gene> getGenes(String chromosome) {
+        int[] range = chromosomeGenes.get(chromosome);
+        if (range == null) {
+            return List.of();
+        }
+        List<Gene> chromosomeGeneList = new ArrayList<>(range[1]);
+        for (int g = range[0]; g < range[0] + range[1]; g++) {
+            chromosomeGeneList.add(readGene(g));
+        }
+        return chromosomeGeneList;
+    }
+
+    public Set<String> getChromosomes() {
+        return Collections.unmodifiableSet(chromosomeGenes.keySet());
+    }
+
+    public int getGeneCount() {
+        return geneCount;
+    }
+
+    /**
+     * @return the index of the gene record or -1
+     */
+    private int findGene(String geneID) {
+        int low = 0;
+        int high = geneCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int gene = buffer.getInt(geneIDIndex + middle * Integer.BYTES);
+            int comparison = getString(genes + gene * GENE_SIZE + ENTRY_SIZE).compareTo(geneID);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return gene;
+            }
+        }
+        return -1;
+    }
+
+    private Gene readGene(int index) {
+        int record = genes + index * GENE_SIZE;
+        GTFAttributes.Builder geneAttributes = new GTFAttributes.Builder();
+        geneAttributes.setGeneID(getString(record + ENTRY_SIZE));
+        geneAttributes.setGeneName(getString(record + ENTRY_SIZE + Integer.BYTES));
+        Gene gene = new Gene(getSymbol(record), getSymbol(record + Integer.BYTES), getSymbol(record + 2 * Integer.BYTES), getInterval(record), getScore(record), getStrand(record), getFrame(record), geneAttributes.build());
+        int firstTranscript = buffer.getInt(record + ENTRY_SIZE + 2 * Integer.BYTES);
+        int transcriptCount = buffer.getInt(record + ENTRY_SIZE + 3 * Integer.BYTES);
+        for (int t = firstTranscript; t < firstTranscript + transcriptCount; t++) {
+            gene.addTranscript(readTranscript(transcripts + t * TRANSCRIPT_SIZE));
+        }
+        gene.setIndex(index);
+        for (int t = firstTranscript; t < firstTranscript + transcriptCount; t++) {
+            gene.getTranscript(getString(transcripts + t * TRANSCRIPT_SIZE + ENTRY_SIZE)).setIndex(t);
+        }
+        gene.freeze();
+        return gene;
+    }
+
+    private Transcript readTranscript(int record) {
+        GTFAttributes.Builder transcriptAttributes = new GTFAttributes.Builder();
+        transcriptAttributes.setTranscriptID(getString(record + ENTRY_SIZE));
+        transcriptAttributes.setTranscriptName(getString(record + ENTRY_SIZE + Integer.BYTES));
+        Transcript transcript = new Transcript(getSymbol(record), getSymbol(record + Integer.BYTES), getSymbol(record + 2 * Integer.BYTES), getInterval(record), getScore(record), getStrand(record), getFrame(record), transcriptAttributes.build());
+        int firstExon = buffer.getInt(record + ENTRY_SIZE + 2 * Integer.BYTES);
+        int exonCount = buffer.getInt(record + ENTRY_SIZE + 3 * Integer.BYTES);
+        for (int e = firstExon; e < firstExon + exonCount; e++) {
+            int exon = features + e * FEATURE_SIZE;
+            GTFAttributes.Builder exonAttributes = new GTFAttributes.Builder();
+            exonAttributes.setExonID(getString(exon + ENTRY_SIZE));
+            exonAttributes.setExonNumber(getString(exon + ENTRY_SIZE + Integer.BYTES));
+            transcript.addExon(new Exon(getSymbol(exon), getSymbol(exon + Integer.BYTES), getSymbol(exon + 2 * Integer.BYTES), getInterval(exon), getScore(exon), getStrand(exon), getFrame(exon), exonAttributes.build()));
+        }
+        int firstCds = buffer.getInt(record + ENTRY_SIZE + 4 * Integer.BYTES);
+        int cdsCount = buffer.getInt(record + ENTRY_SIZE + 5 * Integer.BYTES);
+        for (int c = firstCds; c < firstCds + cdsCount; c++) {
+            int cds = features + c * FEATURE_SIZE;
+            GTFAttributes.Builder cdsAttributes = new GTFAttributes.Builder();
+            cdsAttributes.setProteinID(getString(cds + ENTRY_SIZE));
+            cdsAttributes.setCcdsID(getString(cds + ENTRY_SIZE + Integer.BYTES));
+            cdsAttributes.setExonNumber(getString(cds + ENTRY_SIZE + 2 * Integer.BYTES));
+            transcript.addCds(new CodingSequence(getSymbol(cds), getSymbol(cds + Integer.BYTES), getSymbol(cds + 2 * Integer.BYTES), getInterval(cds), getScore(cds), getStrand(cds), getFrame(cds), cdsAttributes.build()));
+        }
+        return transcript;
+    }
+
+    /**
+     * @param position position of the string index in the buffer
+     */
+    private String getString(int position) {
+        int index = buffer.getInt(position);
+        if (index == NO_STRING) {
+            return null;
+        }
+        int start = buffer.getInt(stringOffsets + index * Integer.BYTES);
+        int end = buffer.getInt(stringOffsets + (index + 1) * Integer.BYTES);
+        byte[] bytes = new byte[end - start];
+        buffer.get(stringData + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String getSymbol(int position) {
+        return SymbolTable.intern(getString(position));
+    }
+
+    private Interval getInterval(int record) {
+        if (buffer.get(record + 5 * Integer.BYTES + Double.BYTES + 2) == 0) {
+            return null;
+        }
+        return new Interval(buffer.getInt(record + 3 * Integer.BYTES), buffer.getInt(record + 4 * Integer.BYTES));
+    }
+
+    private double getScore(int record) {
+        return buffer.getDouble(record + 5 * Integer.BYTES);
+    }
+
+    private StrandDirection getStrand(int record) {
+        byte strand = buffer.get(record + 5 * Integer.BYTES + Double.BYTES);
+        return strand < 0 ? null : STRANDS[strand];
+    }
+
+    private FrameStarts getFrame(int record) {
+        byte frame = buffer.get(record + 5 * Integer.BYTES + Double.BYTES + 1);
+        return frame < 0 ? null : FRAMES[frame];
+    }
+
+    private static void writeEntry(DataOutputStream out, AnnotationEntry entry, Map<String, Integer> strings) throws IOException {
+        writeString(out, entry.getSeqname(), strings);
+        writeString(out, entry.getSource(), strings);
+        writeString(out, entry.getFeature(), strings);
+        Interval interval = entry.getInterval();
+        out.writeInt(interval == null ? 0 : interval.getStart());
+        out.writeInt(interval == null ? 0 : interval.getEnd());
+        out.writeDouble(entry.getScore());
+        out.writeByte(entry.getStrand() == null ? -1 : entry.getStrand().ordinal());
+        out.writeByte(entry.getFrame() == null ? -1 : entry.getFrame().ordinal());
+        out.writeByte(interval == null ? 0 : 1);
+        out.writeByte(0);
+    }
+
+    private static void collectEntry(Map<String, Integer> strings, AnnotationEntry entry) {
+        collect(strings, entry.getSeqname());
+        collect(strings, entry.getSource());
+        collect(strings, entry.getFeature());
+    }
+
+    private static void collect(Map<String, Integer> strings, String string) {
+        if (string != null) {
+            strings.putIfAbsent(string, strings.size());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string, Map<String, Integer> strings) throws IOException {
+        out.writeInt(string == null ? NO_STRING : strings.get(string));
+    }
+
+    /**
+     * @return the index of the gene record the transcript record belongs to
+     */
+    private int findGeneOfTranscript(int transcript) {
+        int low = 0;
+        int high = geneCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (buffer.getInt(genes + middle * GENE_SIZE + ENTRY_SIZE + 2 * Integer.BYTES) <= transcript) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Frozen annotation over the store, the dense indices are the record numbers.
+     */
+    private class StoredAnnotation extends GTFAnnotation {
+        StoredAnnotation() {
+            super(new StoredGenes());
+        }
+
+        @Override
+        public void freeze() {
+        }
+
+        @Override
+        public boolean isFrozen() {
+            return true;
+        }
+
+        @Override
+        public Gene getGene(int index) {
+            return readGene(index);
+        }
+
+        @Override
+        public Transcript getTranscript(int index) {
+            return getGeneOfTranscript(index).getTranscript(getString(transcripts + index * TRANSCRIPT_SIZE + ENTRY_SIZE));
+        }
+
+        @Override
+        public Gene getGeneOfTranscript(int transcriptIndex) {
+            return readGene(findGeneOfTranscript(transcriptIndex));
+        }
+
+        @Override
+        public int getTranscriptCount() {
+            return transcriptCount;
+        }
+    }
+
+    /**
+     * Read-only gene map over the store, in the order of the store.
+     */
+    private class StoredGenes extends AbstractMap<String, Gene> {
+        @Override
+        public Gene get(Object key) {
+            int gene = key instanceof String geneID ? findGene(geneID) : -1;
+            return gene < 0 ? null : readGene(gene);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String geneID && findGene(geneID) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return geneCount;
+        }
+
+        @Override
+        public Set<Entry<String, Gene>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Gene>> iterator() {
+                    return new Iterator<>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < geneCount;
+                        }
+
+                        @Override
+                        public Entry<String, Gene> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Gene gene = readGene(next++);
+                            return new SimpleImmutableEntry<>(gene.getGeneID(), gene);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return geneCount;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package parsers;
+
+import gtf.GTFAnnotation;
+import gtf.structs.Gene;
+import gtf.structs.Transcript;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Parses a GTF file on one thread and hands the completed genes to the consumer (e.g. a forest builder) on a second
+ * thread, so the interval trees are built while the file is still streamed.
+ * <p>
+ * The GTF has to list the lines of a gene together and the genes of a chromosome together (sorted GTFs). A chromosome
+ * is sealed as soon as the first gene of another chromosome completes, from then on the consumer gets no more genes of
+ * it and {@link #awaitChromosome(String)} returns. The genes are frozen and numbered in completion order.
+ */
+public class PipelinedGeneLoader implements AutoCloseable {
+    private static final int BATCH_SIZE = 256;
+    private static final List<Gene> END = List.of();
+
+    private final String gtfFile;
+    private final Consumer<Gene> geneConsumer;
+    private final BlockingQueue<List<Gene>> batches = new ArrayBlockingQueue<>(64);
+    private final Map<String, CompletableFuture<Void>> sealedChromosomes = new ConcurrentHashMap<>();
+    // completes when all genes were handed over, or exceptionally if parsing or building failed
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+    private final Thread parserThread;
+    private final Thread builderThread;
+    private final long startTime = System.currentTimeMillis();
+    // only used by the builder thread
+    private String currentChromosome;
+    private int nextGeneIndex;
+    private int nextTranscriptIndex;
+
+    /**
+     * Starts parsing and building in the background.
+     *
+     * @param gtfFile      the GTF file, sorted by chromosome
+     * @param geneConsumer receives every gene on the builder thread
+     */
+    public PipelinedGeneLoader(String gtfFile, Consumer<Gene> geneConsumer) {
+        this.gtfFile = gtfFile;
+        this.geneConsumer = geneConsumer;
+        parserThread = new Thread(this::parse, "gtf-parse");
+        builderThread = new Thread(this::build, "gtf-index");
+        parserThread.setDaemon(true);
+        builderThread.setDaemon(true);
+        builderThread.start();
+        parserThread.start();
+    }
+
+    private void parse() {
+        List<Gene> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            GTFGeneStream.streamGenes(gtfFile, GTFGeneStream.GROUPED_BY_GENE, gene -> {
+                batch.add(gene);
+                if (batch.size() == BATCH_SIZE) {
+                    put(new ArrayList<>(batch));
+                    batch.clear();
+                }
+            });
+            if (!batch.isEmpty()) {
+                put(batch);
+            }
+        } catch (RuntimeException e) {
+            finished.completeExceptionally(e);
+        } finally {
+            if (!Thread.currentThread().isInterrupted()) {
+                put(END);
+            }
+        }
+    }
+
+    private void put(List<Gene> batch) {
+        try {
+            batches.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing " + gtfFile, e);
+        }
+    }
+
+    private void build() {
+        try {
+            List<Gene> batch;
+            while ((batch = batches.take()) != END) {
+                // after a failure the batches are only drained, so the parser thread can finish
+                if (finished.isDone()) {
+                    continue;
+                }
+                try {
+                    for (Gene gene : batch) {
+                        addGene(gene);
+                    }
+                } catch (RuntimeException e) {
+                    finished.completeExceptionally(e);
+                }
+            }
+            if (finished.isDone()) {
+                return;
+            }
+            if (currentChromosome != null) {
+                seal(currentChromosome);
+            }
+            finished.complete(null);
+            System.out.println("LOG: Time to parse and index GTF: " + (System.currentTimeMillis() - startTime) + " ms");
+        } catch (InterruptedException e) {
+            finished.completeExceptionally(e);
+        }
+    }
+
+    private void addGene(Gene gene) {
+        if (!gene.getSeqname().equals(currentChromosome)) {
+            CompletableFuture<Void> sealed = sealedChromosomes.get(gene.getSeqname());
+            if (sealed != null && sealed.isDone()) {
+                throw new IllegalStateException("Gene " + gene.getGeneID() + " comes after chromosome " + gene.getSeqname() + " was sealed, " + gtfFile + " is not sorted by chromosome");
+            }
+            if (currentChromosome != null) {
+                seal(currentChromosome);
+            }
+            currentChromosome = gene.getSeqname();
+        }
+        gene.freeze();
+        gene.setIndex(nextGeneIndex++);
+        List<Transcript> transcripts = new ArrayList<>(gene.getTranscripts().values());
+        transcripts.sort(GTFAnnotation.TRANSCRIPT_ORDER);
+        for (Transcript transcript : transcripts) {
+            transcript.setIndex(nextTranscriptIndex++);
+        }
+        geneConsumer.accept(gene);
+    }
+
+    private void seal(String chromosome) {
+        sealedChromosomes.computeIfAbsent(chromosome, k -> new CompletableFuture<>()).complete(null);
+    }
+
+    /**
+     * Blocks until all genes of the chromosome were handed to the consumer. The consumer does not get genes of the
+     * chromosome afterwards, so its structures of the chromosome can be read without locking. For a chromosome without
+     * genes this waits until the whole file is parsed.
+     *
+     * @throws IllegalStateException if parsing or building failed
+     * @throws java.io.UncheckedIOException if the GTF cannot be read
+     */
+    public void awaitChromosome(String chromosome) {
+        join(CompletableFuture.anyOf(sealedChromosomes.computeIfAbsent(chromosome, k -> new CompletableFuture<>()), finished));
+    }
+
+    /**
+     * Blocks until all genes were handed to the consumer.
+     *
+     * @throws IllegalStateException if parsing or building failed
+     * @throws java.io.UncheckedIOException if the GTF cannot be read
+     */
+    public void awaitAll() {
+        join(finished);
+    }
+
+    private static void join(CompletableFuture<?> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        parserThread.interrupt();
+        builderThread.interrupt();
+    }
+}
@@ -1,6 +1,7 @@
 package readsimulator;
 
 import gtf.GTFAnnotation;
+import gtf.structs.Gene;
 import gtf.structs.Interval;
 import gtf.structs.Transcript;
 import parsers.GenomeSequenceExtractor;
@@ -22,6 +23,8 @@ public class ReadSimulator {
     private final GTFAnnotation gtfAnnotation;
     private final GenomeSequenceExtractor genomeSequenceExtractor;
     private final Map<String, Map<String, Integer>> readCounts;
+    // Read counts by transcript index, the IDs are only resolved once
+    private final int[] transcriptReadCounts;
     private final SplittableRandom random;
     private final String qualityScore;
     private final double L;
@@ -35,11 +38,34 @@ public class ReadSimulator {
         this.gtfAnnotation = builder.gtfAnnotation;
         this.genomeSequenceExtractor = builder.genomeSequenceExtractor;
         this.readCounts = builder.readCounts;
+        this.transcriptReadCounts = gtfAnnotation == null || readCounts == null ? new int[0] : countsByTranscriptIndex(gtfAnnotation, readCounts);
         this.random = new SplittableRandom();
         this.qualityScore = "I".repeat(readLength);
         L = Math.exp(-(mutationRate * readLength));
     }
 
+    /**
+     * @param gtfAnnotation the frozen annotation
+     * @param readCounts    the read counts by gene and transcript ID
+     * @return the read counts by transcript index, transcripts that are not in the annotation are skipped
+     */
+    static int[] countsByTranscriptIndex(GTFAnnotation gtfAnnotation, Map<String, Map<String, Integer>> readCounts) {
+        int[] counts = new int[gtfAnnotation.getTranscriptCount()];
+        for (Map.Entry<String, Map<String, Integer>> geneCounts : readCounts.entrySet()) {
+            Gene gene = gtfAnnotation.getGene(geneCounts.getKey());
+            if (gene == null) {
+                continue;
+            }
+            for (Map.Entry<String, Integer> transcriptCount : geneCounts.getValue().entrySet()) {
+                Transcript transcript = gene.getTranscript(transcriptCount.getKey());
+                if (transcript != null) {
+                    counts[transcript.getIndex()] = transcriptCount.getValue();
+                }
+            }
+        }
+        return counts;
+    }
+
     private static void writeToReadMap(BufferedWriter mappingWriter, int readID, SimulatedReadPair rp) throws IOException {
         // Initialize StringBuilder for efficient string concatenation
         StringBuilder lineBuilder = new StringBuilder();
@@ -292,49 +318,53 @@ Interval already has a toString method that outputs the interval but it's int th
             mappingWriter.write("readid\tchr\tgene\ttranscript\tfw_regvec\trw_regvec\tt_fw_regvec\tt_rw_regvec\tfw_mut\trw_mut");
             int readID = 0;
 // TODO Move to byte[]
-            for (String geneID : readCounts.keySet()) {
-                for (String transcriptID : readCounts.get(geneID).keySet()) {
-                    int readCount = readCounts.get(geneID).get(transcriptID);
-                    Transcript transcript = gtfAnnotation.getGene(geneID).getTranscript(transcriptID);
+            for (int transcriptIndex = 0; transcriptIndex < transcriptReadCounts.length; transcriptIndex++) {
+                int readCount = transcriptReadCounts[transcriptIndex];
+                if (readCount == 0) {
+                    continue;
+                }
+                Transcript transcript = gtfAnnotation.getTranscript(transcriptIndex);
+                Gene gene = gtfAnnotation.getGeneOfTranscript(transcriptIndex);
+                String geneID = gene.getGeneID();
+                String transcriptID = transcript.getTranscriptID();
 //                    startTime = System.currentTimeMillis();
-                    String sequence = genomeSequenceExtractor.getSequenceForExonsInOneRead(gtfAnnotation.getGene(geneID).getSeqname(), transcript.getExons(), gtfAnnotation.getGene(geneID).getStrand());
+                String sequence = genomeSequenceExtractor.getSequenceForExonsInOneRead(gene.getSeqname(), transcript.getExons(), gene.getStrand());
 //                    sequenceExtractionTime += System.currentTimeMillis() - startTime;
-                    String reverseSequence = GenomeSequenceExtractor.reverseComplement(sequence);
-                    for (int i = 0; i < readCount; i++) {
+                String reverseSequence = GenomeSequenceExtractor.reverseComplement(sequence);
+                for (int i = 0; i < readCount; i++) {
 //                        startTime = System.currentTimeMillis();
-                        int fragmentLength;
-                        do {
-                            fragmentLength = (int) Math.round(sampleFragmentLength());
-                        } while (fragmentLength > sequence.length() || fragmentLength < readLength);
-                        int diff = sequence.length() - fragmentLength;
-                        int fragmentStart;
-                        if (diff == 0) {
-                            fragmentStart = 0;
-                        } else {
-                            fragmentStart = random.nextInt(diff);
-                        }
+                    int fragmentLength;
+                    do {
+                        fragmentLength = (int) Math.round(sampleFragmentLength());
+                    } while (fragmentLength > sequence.length() || fragmentLength < readLength);
+                    int diff = sequence.length() - fragmentLength;
+                    int fragmentStart;
+                    if (diff == 0) {
+                        fragmentStart = 0;
+                    } else {
+                        fragmentStart = random.nextInt(diff);
+                    }
 //                        fragmentLengthSamplingTime += System.currentTimeMillis() - startTime;
 //                        startTime = System.currentTimeMillis();
-                        SimulatedReadPair rp = new SimulatedReadPair(sequence, fragmentStart, fragmentLength, readLength, transcript.getSeqname(), geneID, transcriptID, transcript.getStrand(), reverseSequence);
+                    SimulatedReadPair rp = new SimulatedReadPair(sequence, fragmentStart, fragmentLength, readLength, transcript.getSeqname(), geneID, transcriptID, transcript.getStrand(), reverseSequence);
 //                        readCreationTime += System.currentTimeMillis() - startTime;
 
 //                        startTime = System.currentTimeMillis();
 
-                        rp.mutateReadPairs(mutationRate, random, samplePoisson(), samplePoisson());
+                    rp.mutateReadPairs(mutationRate, random, samplePoisson(), samplePoisson());
 //                        mutationTime += System.currentTimeMillis() - startTime;
 
 //                        startTime = System.currentTimeMillis();
-                        rp.calculateGenomicPositions(transcript.getExons());
+                    rp.calculateGenomicPositions(transcript);
 //                        genomicPositionCalculationTime += System.currentTimeMillis() - startTime;
 
 //                        startTime = System.currentTimeMillis();
-                        writeToReadMap(mappingWriter, readID, rp);
+                    writeToReadMap(mappingWriter, readID, rp);
 //                        mappingInfoWritingTime += System.currentTimeMillis() - startTime;
 //                        startTime = System.currentTimeMillis();
-                        writeReadsToFASTQ(rp, readID, fwWriter, rwWriter);
+                    writeReadsToFASTQ(rp, readID, fwWriter, rwWriter);
 //                        fastqWritingTime += System.currentTimeMillis() - startTime;
-                        readID++;
-                    }
+                    readID++;
                 }
             }
             // manually flush
@@ -428,6 +458,7 @@ Interval already has a toString method that outputs the interval but it's int th
 
         public Builder setGtfAnnotation(String gtfPath) {
             this.gtfAnnotation = parseGTFForCounts(gtfPath, readCounts);
+            this.gtfAnnotation.freeze();
 //            this.gtfAnnotation = parseGTF(gtfPath);
             return this;
         }
@@ -103,13 +103,17 @@ public class SimulatedRead {
     }
 
     public void calculateGenomicPositions(TreeSet<Exon> exons, StrandDirection direction) {
+        calculateGenomicPositions(exons.stream().mapToInt(exon -> exon.getInterval().getStart()).toArray(), exons.stream().mapToInt(exon -> exon.getInterval().getEnd()).toArray(), direction);
+    }
+
+    public void calculateGenomicPositions(int[] exonStarts, int[] exonEnds, StrandDirection direction) {
         if (direction == StrandDirection.FORWARD) {
 
-            chromosomalCoordinates = getCoveredRegion(exons, transcriptCoordinates);
+            chromosomalCoordinates = getCoveredRegion(exonStarts, exonEnds, transcriptCoordinates);
 
         } else {
             Interval reversedCoordinates = new Interval(transcriptSeqLength - transcriptCoordinates.getEnd() - 1, transcriptSeqLength - transcriptCoordinates.getStart() - 1);
-            chromosomalCoordinates = getCoveredRegion(exons, reversedCoordinates);
+            chromosomalCoordinates = getCoveredRegion(exonStarts, exonEnds, reversedCoordinates);
         }
     }
 }
@@ -1,6 +1,7 @@
 package readsimulator;
 
 import gtf.structs.Exon;
+import gtf.structs.Transcript;
 import gtf.types.StrandDirection;
 
 import java.util.SplittableRandom;
@@ -46,4 +47,12 @@ public class SimulatedReadPair extends Pair<SimulatedRead, SimulatedRead> {
         this.getSecond().calculateGenomicPositions(exons, this.strandDirection);
     }
 
+    /**
+     * @param transcript the frozen transcript the pair was simulated from
+     */
+    public void calculateGenomicPositions(Transcript transcript) {
+        this.getFirst().calculateGenomicPositions(transcript.getExonStarts(), transcript.getExonEnds(), this.strandDirection);
+        this.getSecond().calculateGenomicPositions(transcript.getExonStarts(), transcript.getExonEnds(), this.strandDirection);
+    }
+
 }
@@ -6,10 +6,13 @@ import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.ValidationStringency;
 import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.impl.type.FileArgumentType;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
+import parsers.GTFSnapshot;
+import parsers.GTFStore;
 
 import java.io.File;
 
@@ -35,6 +38,15 @@ sample inputs along with the strandness information and path to the reference ou
         parser.addArgument("-o").required(true).help("Output file").metavar("<output_tsv>");
         parser.addArgument("-frstrand").help("true/false").metavar("<true/false>");
         parser.addArgument("-analysis").help("Path to the analysis file").metavar("<analysis-file-path>");
+        parser.addArgument("-write-snapshot").action(Arguments.storeTrue()).help("Write a binary snapshot of the parsed GTF next to the GTF file, later runs load it instead of parsing");
+        parser.addArgument("-write-store").action(Arguments.storeTrue()).help("Write a memory-mapped store of the GTF next to the GTF file, later runs (also concurrent ones) map it and build the trees of one chromosome at a time from it instead of keeping the annotation on the heap");
+        parser.addArgument("-parallel-gtf").action(Arguments.storeTrue()).help("Parse the GTF file in parallel chunks");
+        parser.addArgument("-lazy-gtf").action(Arguments.storeTrue()).help("Load the genes of each chromosome when its reads come, through a region index written next to the GTF file");
+        parser.addArgument("-pipeline-gtf").action(Arguments.storeTrue()).help("Build the interval trees while the GTF file is parsed, reads of a chromosome are annotated once its genes are parsed (GTF sorted by chromosome)");
+        parser.addArgument("-release-chromosomes").action(Arguments.storeTrue()).help("Build the trees of a chromosome when its first read comes and release its genes after its last read, with -lazy-gtf only one chromosome is held at a time (BAM sorted by coordinate)");
+        parser.addArgument("-tree-queries").action(Arguments.storeTrue()).help("Query the interval trees for every read pair instead of sweeping over the genes along the sorted reads");
+        parser.addArgument("-augmented-tree").action(Arguments.storeTrue()).help("Use the interval trees of the AugmentedTree jar instead of the implicit interval trees");
+        parser.addArgument("-footprint").action(Arguments.storeTrue()).help("Print the estimated memory footprint of the annotation and the shape of its interval trees (not with -lazy-gtf or -pipeline-gtf)");
         if (args.length == 0) {
             parser.printHelp();
             System.exit(1);
@@ -48,6 +60,12 @@ sample inputs along with the strandness information and path to the reference ou
     }
 
     private static void start(Namespace res) {
+        if (res.getBoolean("write_snapshot")) {
+            GTFSnapshot.createIfMissing(res.getString("gtf"));
+        }
+        if (res.getBoolean("write_store")) {
+            GTFStore.createIfMissing(res.getString("gtf"));
+        }
         SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(new File(res.getString("bam")));
         StrandDirection strandSpecific = (res.getString("frstrand") == null) ? StrandDirection.UNSPECIFIED : (res.getString("frstrand").equals("true") ? StrandDirection.FORWARD : StrandDirection.REVERSE);
         ReadAnnotator readAnnotator = new ReadAnnotator.Builder()
@@ -56,6 +74,13 @@ sample inputs along with the strandness information and path to the reference ou
                 .setOutputFile(new File(res.getString("o")))
                 .setStrandSpecificity(strandSpecific)
                 .setAnalysisFilePath(res.getString("analysis"))
+                .setParallelGtfParsing(res.getBoolean("parallel_gtf"))
+                .setLazyGtfLoading(res.getBoolean("lazy_gtf"))
+                .setPipelinedGtfLoading(res.getBoolean("pipeline_gtf"))
+                .setAugmentedTrees(res.getBoolean("augmented_tree"))
+                .setTreeQueries(res.getBoolean("tree_queries"))
+                .setReleaseFinishedChromosomes(res.getBoolean("release_chromosomes"))
+                .setFootprintReport(res.getBoolean("footprint"))
                 .build();
         long start = System.currentTimeMillis();
         readAnnotator.annotateReads();
@@ -3,13 +3,22 @@ package runners;
 import gtf.ExonSkip;
 import gtf.GTFAnnotation;
 import gtf.structs.GTFTimer;
+import gtf.structs.AnnotationFootprint;
 import gtf.structs.Gene;
 import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
+import parsers.AttributeProjection;
+import parsers.GFF3Parser;
+import parsers.GTFFilter;
+import parsers.GTFGeneStream;
+import parsers.GTFIndex;
 import parsers.GTFParser;
+import parsers.GTFSnapshot;
 
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -17,8 +26,14 @@ public class ExonSkipRunner {
     public static void main(String[] args) {
         ArgumentParser parser = ArgumentParsers.newFor("ExonSkipRunner").build().defaultHelp(true)
                 .description("Run ExonSkipRunner");
-        parser.addArgument("-gtf").required(true).help("GTF file").metavar("<GTF file>");
+        parser.addArgument("-gtf").required(true).help("GTF file, or GFF3 file if it ends with .gff3 (not with -stream-gtf or -chromosomes)").metavar("<GTF file>");
         parser.addArgument("-o").required(true).help("Output file").metavar("<output file path>");
+        parser.addArgument("-parallel-gtf").action(Arguments.storeTrue()).help("Parse the GTF file in parallel chunks");
+        parser.addArgument("-stream-gtf").type(Integer.class).help("Find the events while the GTF is streamed, a gene is complete after lines of <lookahead> other genes, 1 for GTFs that list the lines of a gene together").metavar("<lookahead>");
+        parser.addArgument("-chromosomes").nargs("+").help("Only parse the genes on these chromosomes").metavar("<chromosome>");
+        parser.addArgument("-write-index").action(Arguments.storeTrue()).help("Write a region index next to the GTF file, later runs with -chromosomes only read these chromosomes");
+        parser.addArgument("-write-snapshot").action(Arguments.storeTrue()).help("Write a binary snapshot of the parsed GTF next to the GTF file, later runs load it instead of parsing");
+        parser.addArgument("-footprint").action(Arguments.storeTrue()).help("Print the estimated memory footprint of the annotation kept in memory and the shape of its interval trees");
         parser.addArgument("-a", "--analysis").required(false).help("(optional) File Path to the analysis file, gives meta stats about exon skipping in this file").metavar("<analysis file path>");
         if (args.length == 0) {
             parser.printHelp();
@@ -34,17 +49,55 @@ public class ExonSkipRunner {
 
     public static void start(Namespace res) {
         long totalStartTime = System.currentTimeMillis();
-        GTFAnnotation GTFAnnotation = GTFParser.parseGTF(res.getString("gtf"));
+        if (res.getBoolean("write_snapshot")) {
+            GTFSnapshot.createIfMissing(res.getString("gtf"));
+        }
+        if (res.getBoolean("write_index")) {
+            GTFIndex.createIfMissing(res.getString("gtf"));
+        }
+        List<String> chromosomes = res.getList("chromosomes");
+        GTFFilter filter = chromosomes == null ? GTFFilter.NONE : new GTFFilter.Builder().setChromosomes(chromosomes).build();
+        GTFAnnotation GTFAnnotation;
+        List<ExonSkip> exonSkips;
+        long startTime;
+        if (res.getInt("stream_gtf") != null) {
+            // The genes are only kept if the analysis needs them
+            GTFAnnotation = new GTFAnnotation();
+            GTFAnnotation keptGenes = res.getString("analysis") != null ? GTFAnnotation : null;
+            exonSkips = new ArrayList<>();
+            startTime = System.currentTimeMillis();
+            GTFGeneStream.streamGenes(res.getString("gtf"), res.getInt("stream_gtf"), AttributeProjection.DEFAULT, filter, gene -> {
+                // ExonSkip reads the CDS arrays of the frozen transcripts
+                gene.freeze();
+                gene.processIntrons();
+                ExonSkip.findExonSkippingEvents(gene, exonSkips);
+                if (keptGenes != null) {
+                    keptGenes.addGene(gene);
+                }
+            });
+            GTFTimer.setGtfParseTime(System.currentTimeMillis() - startTime);
+            System.out.println("LOG: Total time to stream GTF and find exon skipping events: " + GTFTimer.getGtfParseTime() + " ms");
+        } else {
+            if (GFF3Parser.isGFF3(res.getString("gtf"))) {
+                GTFAnnotation = GFF3Parser.parseGFF3(res.getString("gtf"));
+            } else {
+                GTFAnnotation = res.getBoolean("parallel_gtf") ? GTFParser.parseGTFParallel(res.getString("gtf"), filter) : GTFParser.parseGTF(res.getString("gtf"), filter);
+            }
 
-        long startTime = System.currentTimeMillis();
-        GTFAnnotation.getGenes().values().parallelStream().forEach(Gene::processIntrons);
+            startTime = System.currentTimeMillis();
+            // ExonSkip reads the CDS arrays of the frozen transcripts
+            GTFAnnotation.getGenes().values().parallelStream().forEach(gene -> {
+                gene.freeze();
+                gene.processIntrons();
+            });
 
-        GTFTimer.setIntronProcessTime(System.currentTimeMillis() - startTime);
-        System.out.println("LOG: Total time to process introns: " + GTFTimer.getIntronProcessTime() + " ms");
+            GTFTimer.setIntronProcessTime(System.currentTimeMillis() - startTime);
+            System.out.println("LOG: Total time to process introns: " + GTFTimer.getIntronProcessTime() + " ms");
 
-        List<ExonSkip> exonSkips = ExonSkip.findExonSkippingEvents(GTFAnnotation);
-        GTFTimer.setExonProcessTime((System.currentTimeMillis() - startTime));
-        System.out.println("LOG: Total time to find exon skipping events: " + GTFTimer.getExonProcessTime() + " ms");
+            exonSkips = ExonSkip.findExonSkippingEvents(GTFAnnotation);
+            GTFTimer.setExonProcessTime((System.currentTimeMillis() - startTime));
+            System.out.println("LOG: Total time to find exon skipping events: " + GTFTimer.getExonProcessTime() + " ms");
+        }
 
         // Output to file
         startTime = System.currentTimeMillis();
@@ -54,6 +107,10 @@ public class ExonSkipRunner {
         GTFTimer.setTotalTime(System.currentTimeMillis() - totalStartTime);
         System.out.println("LOG: Total time: " + GTFTimer.getTotalTime() + " ms");
 
+        if (res.getBoolean("footprint")) {
+            AnnotationFootprint.measure(GTFAnnotation).print(System.out);
+        }
+
         // Analysis (optional)
         if (res.getString("analysis") != null) {
             startTime = System.currentTimeMillis();
@@ -0,0 +1,69 @@
+package runners;
+
+import gtf.GTFAnnotation;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import parsers.AttributeProjection;
+import parsers.GTFParser;
+import parsers.GTFSnapshot;
+
+import java.util.function.Function;
+
+
+/**
+ * Compares the String based GTF parser with the byte level tokenizer, sequential, parallel and with IDs only, on the
+ * same file.
+ */
+public class GTFParserBenchmark {
+    public static void main(String[] args) {
+        ArgumentParser parser = ArgumentParsers.newFor("GTFParserBenchmark").build().defaultHelp(true)
+                .description("Benchmark the GTF parsers");
+        parser.addArgument("-gtf").required(true).help("GTF file, ideally a full genome annotation").metavar("<GTF file>");
+        parser.addArgument("-iterations").type(Integer.class).setDefault(5).help("Measured runs per parser").metavar("<iterations>");
+        parser.addArgument("-warmup").type(Integer.class).setDefault(2).help("Unmeasured runs per parser before measuring").metavar("<warmup>");
+        if (args.length == 0) {
+            parser.printHelp();
+            System.exit(1);
+        }
+        try {
+            Namespace res = parser.parseArgs(args);
+            start(res);
+        } catch (ArgumentParserException e) {
+            parser.printHelp();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public static void start(Namespace res) {
+        String gtf = res.getString("gtf");
+        if (GTFSnapshot.hasValidSnapshot(gtf)) {
+            System.out.println("WARNING: " + GTFSnapshot.getSnapshotPath(gtf) + " exists, the tokenizer runs measure loading the snapshot");
+        }
+        int iterations = res.getInt("iterations");
+        int warmup = res.getInt("warmup");
+        benchmark("split", GTFParser::parseGTFWithSplit, gtf, warmup, iterations);
+        benchmark("tokenizer", GTFParser::parseGTF, gtf, warmup, iterations);
+        benchmark("tokenizer parallel", GTFParser::parseGTFParallel, gtf, warmup, iterations);
+        benchmark("tokenizer ids only", file -> GTFParser.parseGTF(file, AttributeProjection.IDS_ONLY), gtf, warmup, iterations);
+    }
+
+    private static void benchmark(String name, Function<String, GTFAnnotation> parse, String gtf, int warmup, int iterations) {
+        int genes = 0;
+        for (int i = 0; i < warmup; i++) {
+            genes = parse.apply(gtf).getGenes().size();
+        }
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            long startTime = System.nanoTime();
+            genes = parse.apply(gtf).getGenes().size();
+            long time = System.nanoTime() - startTime;
+            best = Math.min(best, time);
+            total += time;
+        }
+        System.out.println("BENCHMARK: " + name + ": " + genes + " genes, best " + best / 1_000_000 + " ms, mean "
+                + (iterations > 0 ? total / iterations / 1_000_000 : 0) + " ms over " + iterations + " runs");
+    }
+}
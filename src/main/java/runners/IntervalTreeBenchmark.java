@@ -0,0 +1,214 @@
+package runners;
+
+import gtf.GTFAnnotation;
+import gtf.structs.Gene;
+import gtf.treecollections.AugmentedIntervalIndex;
+import gtf.treecollections.GeneDistanceIndex;
+import gtf.treecollections.GeneSweepCursor;
+import gtf.treecollections.ImplicitIntervalTree;
+import gtf.treecollections.IntervalIndex;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import parsers.GTFParser;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+
+/**
+ * Compares the interval tree of the AugmentedTree jar with the implicit interval tree on the genes of a GTF file: the
+ * time to build the trees of all chromosomes and strands and the time of the queries the forests run, for random
+ * read sized queries around the genes. The results of both trees are checked to be the same.
+ * The same queries sorted by position, like the reads of a sorted BAM, compare the implicit tree with the
+ * {@link GeneSweepCursor}.
+ */
+public class IntervalTreeBenchmark {
+    private static final int READ_LENGTH = 300;
+
+    public static void main(String[] args) {
+        ArgumentParser parser = ArgumentParsers.newFor("IntervalTreeBenchmark").build().defaultHelp(true)
+                .description("Benchmark the interval trees");
+        parser.addArgument("-gtf").required(true).help("GTF file, ideally a full genome annotation (e.g. GENCODE)").metavar("<GTF file>");
+        parser.addArgument("-queries").type(Integer.class).setDefault(1_000_000).help("Queries per run").metavar("<queries>");
+        parser.addArgument("-iterations").type(Integer.class).setDefault(5).help("Measured runs per tree").metavar("<iterations>");
+        parser.addArgument("-warmup").type(Integer.class).setDefault(2).help("Unmeasured runs per tree before measuring").metavar("<warmup>");
+        if (args.length == 0) {
+            parser.printHelp();
+            System.exit(1);
+        }
+        try {
+            Namespace res = parser.parseArgs(args);
+            start(res);
+        } catch (ArgumentParserException e) {
+            parser.printHelp();
+        }
+    }
+
+    public static void start(Namespace res) {
+        GTFAnnotation gtfAnnotation = GTFParser.parseGTF(res.getString("gtf"));
+        // the genes of every chromosome and strand, like the trees of the strand specific forest
+        Map<String, List<Gene>> genesByTree = new HashMap<>();
+        for (Gene gene : gtfAnnotation.getGenes().values()) {
+            if (gene.getInterval() != null) {
+                genesByTree.computeIfAbsent(gene.getSeqname() + gene.getStrand(), k -> new ArrayList<>()).add(gene);
+            }
+        }
+        List<String> trees = new ArrayList<>(genesByTree.keySet());
+        // queries around random genes, half of them inside the gene
+        Random random = new Random(42);
+        int queryCount = res.getInt("queries");
+        String[] queryTrees = new String[queryCount];
+        int[] queryStarts = new int[queryCount];
+        for (int i = 0; i < queryCount; i++) {
+            queryTrees[i] = trees.get(random.nextInt(trees.size()));
+            List<Gene> genes = genesByTree.get(queryTrees[i]);
+            Gene gene = genes.get(random.nextInt(genes.size()));
+            int length = gene.getStop() - gene.getStart() + 1;
+            queryStarts[i] = random.nextBoolean() ? gene.getStart() + random.nextInt(length) : gene.getStart() - 100_000 + random.nextInt(200_000 + length);
+        }
+        int warmup = res.getInt("warmup");
+        int iterations = res.getInt("iterations");
+        long augmentedChecksum = benchmark("augmented tree (jar)", AugmentedIntervalIndex::new, genesByTree, queryTrees, queryStarts, warmup, iterations);
+        long implicitChecksum = benchmark("implicit interval tree", ImplicitIntervalTree::new, genesByTree, queryTrees, queryStarts, warmup, iterations);
+        if (augmentedChecksum != implicitChecksum) {
+            System.out.println("Warning, the trees returned different results: " + augmentedChecksum + " vs " + implicitChecksum);
+        }
+        // sorted by tree and start, the queries of a tree are run in a row like the reads of a chromosome
+        Integer[] order = new Integer[queryCount];
+        for (int i = 0; i < queryCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer, String>comparing(i -> queryTrees[i]).thenComparingInt(i -> queryStarts[i]));
+        String[] sortedTrees = new String[queryCount];
+        int[] sortedStarts = new int[queryCount];
+        for (int i = 0; i < queryCount; i++) {
+            sortedTrees[i] = queryTrees[order[i]];
+            sortedStarts[i] = queryStarts[order[i]];
+        }
+        long treeChecksum = benchmarkSorted("implicit interval tree, sorted queries", false, genesByTree, sortedTrees, sortedStarts, warmup, iterations);
+        long cursorChecksum = benchmarkSorted("sweep cursor, sorted queries", true, genesByTree, sortedTrees, sortedStarts, warmup, iterations);
+        if (treeChecksum != cursorChecksum) {
+            System.out.println("Warning, the cursor returned different results: " + treeChecksum + " vs " + cursorChecksum);
+        }
+    }
+
+    /**
+     * Runs the queries of a pair that is not in a gene on sorted queries: spanning, spanned by and the distance
+     *
+     * @return the sum of the result sizes and the distances
+     */
+    private static long benchmarkSorted(String name, boolean sweepCursor, Map<String, List<Gene>> genesByTree, String[] queryTrees, int[] queryStarts, int warmup, int iterations) {
+        Map<String, IntervalIndex<Gene>> forest = new HashMap<>();
+        Map<String, GeneDistanceIndex> distances = new HashMap<>();
+        Map<String, GeneSweepCursor<Gene>> cursors = new HashMap<>();
+        for (Map.Entry<String, List<Gene>> genes : genesByTree.entrySet()) {
+            IntervalIndex<Gene> tree = new ImplicitIntervalTree<>();
+            tree.addAll(genes.getValue());
+            tree.index();
+            forest.put(genes.getKey(), tree);
+            GeneDistanceIndex distanceIndex = new GeneDistanceIndex();
+            distanceIndex.addAll(genes.getValue());
+            distanceIndex.index();
+            distances.put(genes.getKey(), distanceIndex);
+            GeneSweepCursor<Gene> cursor = new GeneSweepCursor<>();
+            cursor.addAll(genes.getValue());
+            cursors.put(genes.getKey(), cursor);
+        }
+        long checksum = 0;
+        long bestQuery = Long.MAX_VALUE;
+        List<Gene> result = new ArrayList<>();
+        for (int run = 0; run < warmup + iterations; run++) {
+            checksum = 0;
+            long startTime = System.nanoTime();
+            String currentTree = null;
+            IntervalIndex<Gene> tree = null;
+            GeneDistanceIndex distanceIndex = null;
+            GeneSweepCursor<Gene> cursor = null;
+            for (int i = 0; i < queryTrees.length; i++) {
+                if (!queryTrees[i].equals(currentTree)) {
+                    currentTree = queryTrees[i];
+                    tree = forest.get(currentTree);
+                    distanceIndex = distances.get(currentTree);
+                    cursor = cursors.get(currentTree);
+                    cursor.index();
+                }
+                int start = queryStarts[i];
+                int stop = start + READ_LENGTH;
+                result.clear();
+                if (sweepCursor && cursor.seek(start)) {
+                    checksum += cursor.getIntervalsSpanning(start, stop, result).size();
+                    checksum += cursor.hasIntervalsSpannedBy(start, stop) ? 1 : 0;
+                    checksum += cursor.getDistance(start, stop);
+                } else {
+                    checksum += tree.getIntervalsSpanning(start, stop, result).size();
+                    checksum += tree.hasIntervalsSpannedBy(start, stop) ? 1 : 0;
+                    checksum += distanceIndex.getDistance(start, stop);
+                }
+            }
+            long queryTime = System.nanoTime() - startTime;
+            if (run >= warmup) {
+                bestQuery = Math.min(bestQuery, queryTime);
+            }
+        }
+        System.out.println("BENCHMARK: " + name + ": " + queryTrees.length + " queries best " + bestQuery / 1_000_000
+                + " ms over " + iterations + " runs");
+        return checksum;
+    }
+
+    private static long benchmark(String name, Supplier<IntervalIndex<Gene>> treeFactory, Map<String, List<Gene>> genesByTree, String[] queryTrees, int[] queryStarts, int warmup, int iterations) {
+        long checksum = 0;
+        long bestBuild = Long.MAX_VALUE;
+        long bestQuery = Long.MAX_VALUE;
+        for (int i = 0; i < warmup + iterations; i++) {
+            long startTime = System.nanoTime();
+            Map<String, IntervalIndex<Gene>> forest = new HashMap<>();
+            for (Map.Entry<String, List<Gene>> genes : genesByTree.entrySet()) {
+                IntervalIndex<Gene> tree = treeFactory.get();
+                for (Gene gene : genes.getValue()) {
+                    tree.add(gene);
+                }
+                tree.index();
+                forest.put(genes.getKey(), tree);
+            }
+            long buildTime = System.nanoTime() - startTime;
+            startTime = System.nanoTime();
+            checksum = query(forest, queryTrees, queryStarts);
+            long queryTime = System.nanoTime() - startTime;
+            if (i >= warmup) {
+                bestBuild = Math.min(bestBuild, buildTime);
+                bestQuery = Math.min(bestQuery, queryTime);
+            }
+        }
+        System.out.println("BENCHMARK: " + name + ": build best " + bestBuild / 1_000_000 + " ms, " + queryTrees.length
+                + " queries best " + bestQuery / 1_000_000 + " ms over " + iterations + " runs");
+        return checksum;
+    }
+
+    /**
+     * Runs the queries of the forests for every read: spanning, spanned by and the distance to the neighbors.
+     *
+     * @return the sum of the result sizes and the nearest neighbor positions, the same for trees with the same results
+     */
+    private static long query(Map<String, IntervalIndex<Gene>> forest, String[] queryTrees, int[] queryStarts) {
+        long checksum = 0;
+        List<Gene> result = new ArrayList<>();
+        for (int i = 0; i < queryTrees.length; i++) {
+            IntervalIndex<Gene> tree = forest.get(queryTrees[i]);
+            int start = queryStarts[i];
+            int stop = start + READ_LENGTH;
+            result.clear();
+            checksum += tree.getIntervalsSpanning(start, stop, result).size();
+            result.clear();
+            checksum += tree.getIntervalsSpannedBy(start, stop, result).size();
+            result.clear();
+            tree.getIntervalsLeftNeighbor(start, stop, result);
+            checksum += result.stream().mapToInt(Gene::getStop).max().orElse(0);
+            result.clear();
+            tree.getIntervalsRightNeighbor(start, stop, result);
+            checksum += result.stream().mapToInt(Gene::getStart).min().orElse(0);
+        }
+        return checksum;
+    }
+}
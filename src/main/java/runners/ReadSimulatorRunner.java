@@ -3,10 +3,12 @@ package runners;
 import gtf.structs.Exon;
 import gtf.structs.Interval;
 import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.impl.type.FileArgumentType;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
+import parsers.GTFSnapshot;
 import parsers.GenomeSequenceExtractor;
 import readsimulator.ReadSimulator;
 
@@ -28,6 +30,7 @@ public class ReadSimulatorRunner {
         parser.addArgument("-fasta").required(true).help("Path to genome FASTA file").metavar("<genome FASTA file>").type(new FileArgumentType().verifyIsFile());
         parser.addArgument("-fidx").required(true).help("Path to genome FASTA file index").metavar("<genome FASTA file index>").type(new FileArgumentType().verifyIsFile());
         parser.addArgument("-gtf").required(true).help("Path to annotation file").metavar("<annotation file>").type(new FileArgumentType().verifyIsFile());
+        parser.addArgument("-write-snapshot").action(Arguments.storeTrue()).help("Write a binary snapshot of the parsed GTF next to the GTF file, later runs load it instead of parsing");
         parser.addArgument("-od").required(true).help("Output directory").metavar("<output directory>");
         parser.addArgument("-analysis-script").help("Path to the analysis file to analyze the results directly").metavar("<path-to-script>").type(new FileArgumentType().verifyIsFile());
         if (args.length == 0) {
@@ -44,6 +47,9 @@ public class ReadSimulatorRunner {
 
     private static void start(Namespace res) {
         long totalStartTime = System.currentTimeMillis();
+        if (res.getBoolean("write_snapshot")) {
+            GTFSnapshot.createIfMissing(res.getString("gtf"));
+        }
         long startTime = System.currentTimeMillis();
         ReadSimulator readSimulator = new ReadSimulator.Builder()
                 .setReadLength(res.getInt("length"))
@@ -100,15 +106,25 @@ public class ReadSimulatorRunner {
 
 
     public static TreeSet<Interval> getCoveredRegion(TreeSet<Exon> exons, Interval localRegion) {
+        int[] exonStarts = exons.stream().mapToInt(exon -> exon.getInterval().getStart()).toArray();
+        int[] exonEnds = exons.stream().mapToInt(exon -> exon.getInterval().getEnd()).toArray();
+        return getCoveredRegion(exonStarts, exonEnds, localRegion);
+    }
+
+    /**
+     * @param exonStarts the exon starts of a frozen transcript ({@link gtf.structs.Transcript#getExonStarts()})
+     * @param exonEnds   the exon ends of a frozen transcript
+     */
+    public static TreeSet<Interval> getCoveredRegion(int[] exonStarts, int[] exonEnds, Interval localRegion) {
         TreeSet<Interval> coveredRegions = new TreeSet<>();
         int localStart = localRegion.getStart();
         int localEnd = localRegion.getEnd();
         int currentPos = 0;
-        for (Exon exon : exons) {
-            int regionLength = exon.getInterval().getLength();
+        for (int i = 0; i < exonStarts.length; i++) {
+            int regionLength = exonEnds[i] - exonStarts[i] + 1;
             if (currentPos + regionLength > localStart) {
-                int start = Math.max(exon.getInterval().getStart(), exon.getInterval().getStart() + (localStart - currentPos));
-                int end = Math.min(exon.getInterval().getEnd(), exon.getInterval().getStart() + (localEnd - currentPos));
+                int start = Math.max(exonStarts[i], exonStarts[i] + (localStart - currentPos));
+                int end = Math.min(exonEnds[i], exonStarts[i] + (localEnd - currentPos));
                 coveredRegions.add(new Interval(start, end));
                 if (currentPos + regionLength > localEnd) {
                     break;
@@ -120,33 +136,6 @@ public class ReadSimulatorRunner {
 
         return coveredRegions;
     }
-    public static TreeSet<Interval> cut(TreeSet<Exon> exons, Interval cutRegion) {
-        TreeSet<Interval> cutRegions = new TreeSet<>();
-        int cutStart = cutRegion.getStart();
-        int cutEnd = cutRegion.getEnd();
-
-        for (Exon exon : exons) {
-            Interval exonInterval = exon.getInterval();
-
-            // Check if the exon overlaps with the cut region
-            if (exonInterval.getEnd() >= cutStart && exonInterval.getStart() <= cutEnd) {
-                // Calculate the overlap
-                int start = Math.max(exonInterval.getStart(), cutStart);
-                int end = Math.min(exonInterval.getEnd(), cutEnd);
-
-                // Add the overlapping region
-                cutRegions.add(new Interval(start, end));
-            }
-
-            // If the current exon ends beyond the cut region, stop processing
-            if (exonInterval.getStart() > cutEnd) {
-                break;
-            }
-        }
-
-        return cutRegions;
-    }
-
 
     public static Map<String, Map<String, Integer>> readCountsFile(String readCountsPath) {
         Map<String, Map<String, Integer>> geneTranscriptCounts = new HashMap<>();
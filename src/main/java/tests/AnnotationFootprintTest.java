@@ -0,0 +1,64 @@
+package tests;
+
+import gtf.GTFAnnotation;
+import gtf.structs.AnnotationFootprint;
+import gtf.structs.Transcript;
+import gtf.treecollections.AugmentedIntervalIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parsers.GTFParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnnotationFootprintTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testFootprint() throws IOException {
+        Path gtf = GTFParserTest.writeSyntheticGTF(tempDir, 200, 17);
+        GTFAnnotation parsed = GTFParser.parseGTF(gtf.toString());
+        AnnotationFootprint footprint = AnnotationFootprint.measure(parsed);
+        assertEquals(200, footprint.getStructure("Gene")[0]);
+        assertEquals(parsed.getGenes().values().stream().flatMap(gene -> gene.getTranscripts().values().stream()).mapToLong(Transcript::getExonCount).sum(), footprint.getStructure("Exon")[0]);
+        assertEquals(parsed.getGenes().values().stream().filter(gene -> gene.getInterval() != null).count(), footprint.getTreeNodes());
+        assertTrue(footprint.getMaxTreeDepth() > 1);
+        // the implicit tree of the forests is complete, the red-black tree of the jar is at most twice as deep
+        AnnotationFootprint augmented = AnnotationFootprint.measure(parsed, AugmentedIntervalIndex::new);
+        assertEquals(footprint.getTreeNodes(), augmented.getTreeNodes());
+        assertTrue(footprint.getMaxTreeDepth() <= augmented.getMaxTreeDepth());
+        assertNotEquals(footprint.getStructure("Interval trees")[1], augmented.getStructure("Interval trees")[1]);
+        parsed.freeze();
+        AnnotationFootprint frozen = AnnotationFootprint.measure(parsed);
+        assertEquals(0, frozen.getStructure("Exon")[0]);
+        assertTrue(frozen.getTotalBytes() < footprint.getTotalBytes());
+    }
+
+    @Test
+    public void testGenesWithoutGeneLineHaveNoTreeNode() throws IOException {
+        Path gtf = tempDir.resolve("genes.gtf");
+        Files.writeString(gtf, """
+                1\ttest\tgene\t100\t500\t.\t+\t.\tgene_id "A";
+                1\ttest\texon\t100\t200\t.\t+\t.\tgene_id "A"; transcript_id "TA";
+                1\ttest\texon\t300\t400\t.\t+\t.\tgene_id "B"; transcript_id "TB";
+                """);
+        AnnotationFootprint footprint = AnnotationFootprint.measure(GTFParser.parseGTF(gtf.toString()));
+        assertEquals(2, footprint.getStructure("Gene")[0]);
+        assertEquals(2, footprint.getStructure("Exon")[0]);
+        // the forest drops genes without an interval
+        assertEquals(1, footprint.getTreeNodes());
+    }
+
+    @Test
+    public void testEmptyAnnotation() {
+        AnnotationFootprint footprint = AnnotationFootprint.measure(new GTFAnnotation());
+        assertEquals(0, footprint.getStructure("Gene")[0]);
+        assertEquals(0, footprint.getTreeNodes());
+        assertEquals(0, footprint.getMaxTreeDepth());
+    }
+}
@@ -0,0 +1,53 @@
+package tests;
+
+import gtf.GTFAnnotation;
+import gtf.structs.Gene;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parsers.ChromosomeGTFLoader;
+import parsers.GTFParser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChromosomeGTFLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testSkippedAndRevisitedChromosomes() throws IOException {
+        Path gtf = GTFParserTest.writeSyntheticGTF(tempDir, 150, 7);
+        GTFAnnotation annotation = GTFParser.parseGTF(gtf.toString());
+        try (ChromosomeGTFLoader loader = new ChromosomeGTFLoader(gtf.toString(), List.of("1", "2", "3", "4"))) {
+            assertEquals(genesOf(annotation, "1"), ids(loader.load("1")));
+            // 2 was prefetched but gets no read
+            assertEquals(genesOf(annotation, "3"), ids(loader.load("3")));
+            assertTrue(loader.load("4").isEmpty());
+            // the indices of a parsed chromosome would not be stable
+            assertThrows(IllegalStateException.class, () -> loader.load("1"));
+        }
+    }
+
+    private static Set<String> genesOf(GTFAnnotation annotation, String chromosome) {
+        Set<String> ids = new HashSet<>();
+        for (Gene gene : annotation.getGenes().values()) {
+            if (gene.getSeqname().equals(chromosome)) {
+                ids.add(gene.getGeneID());
+            }
+        }
+        return ids;
+    }
+
+    private static Set<String> ids(Collection<Gene> genes) {
+        Set<String> ids = new HashSet<>();
+        genes.forEach(gene -> ids.add(gene.getGeneID()));
+        return ids;
+    }
+}
@@ -0,0 +1,82 @@
+package tests;
+
+import gtf.GTFAnnotation;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parsers.ChromosomeGTFLoader;
+import parsers.GTFFilter;
+import parsers.GTFIndex;
+import parsers.GTFParser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GTFIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testIndexedRegions() throws IOException {
+        Path gtf = GTFParserTest.writeSyntheticGTF(tempDir, 300, 23);
+        Path bgz = tempDir.resolve("synthetic.gtf.bgz");
+        try (OutputStream out = new BlockCompressedOutputStream(bgz.toFile())) {
+            Files.copy(gtf, out);
+        }
+        GTFFilter[] filters = {
+                new GTFFilter.Builder().addRegion("1", 20000, 40000).addRegion("2", 200000, 230000).addRegion("2", 250000, 250001).build(),
+                new GTFFilter.Builder().setChromosomes(Set.of("3")).build(),
+                new GTFFilter.Builder().setChromosomes(Set.of("1")).addRegion("1", 1, 5000).addRegion("2", 1, 1000000).build(),
+                new GTFFilter.Builder().addRegion("4", 1, 1000000).build()};
+        for (Path file : new Path[]{gtf, bgz}) {
+            // Without an index the whole file is filtered line by line
+            List<GTFAnnotation> expected = new ArrayList<>();
+            for (GTFFilter filter : filters) {
+                expected.add(GTFParser.parseGTF(file.toString(), filter));
+            }
+            assertFalse(GTFIndex.hasValidIndex(file.toString()));
+            GTFIndex.createIfMissing(file.toString());
+            assertTrue(GTFIndex.hasValidIndex(file.toString()));
+            assertEquals(Set.of("1", "2", "3"), GTFIndex.load(file.toString()).getChromosomes());
+            for (int i = 0; i < filters.length; i++) {
+                GTFParserTest.assertAnnotationsEqual(expected.get(i), GTFParser.parseGTF(file.toString(), filters[i]));
+                GTFParserTest.assertAnnotationsEqual(expected.get(i), GTFParser.parseGTFParallel(file.toString(), filters[i]));
+            }
+            assertFalse(expected.getFirst().getGenes().isEmpty());
+            assertTrue(expected.getLast().getGenes().isEmpty());
+        }
+    }
+
+    @Test
+    public void testChromosomeWithoutGenes() throws IOException {
+        // the lines of chromosome 2 are indexed, but they are features the parser skips
+        Path gtf = tempDir.resolve("genes.gtf");
+        Files.writeString(gtf, """
+                1\ttest\tgene\t100\t500\t.\t+\t.\tgene_id "A";
+                1\ttest\texon\t100\t200\t.\t+\t.\tgene_id "A"; transcript_id "TA";
+                2\ttest\tstart_codon\t100\t102\t.\t+\t0\tgene_id "X"; transcript_id "TX";
+                2\ttest\tfive_prime_utr\t90\t99\t.\t+\t.\tgene_id "X"; transcript_id "TX";
+                3\ttest\tgene\t100\t500\t.\t-\t.\tgene_id "C";
+                3\ttest\texon\t300\t400\t.\t-\t.\tgene_id "C"; transcript_id "TC";
+                """);
+        GTFIndex.createIfMissing(gtf.toString());
+        assertEquals(Set.of("1", "2", "3"), GTFIndex.load(gtf.toString()).getChromosomes());
+        assertTrue(GTFParser.parseGTF(gtf.toString(), new GTFFilter.Builder().setChromosomes(Set.of("2")).build()).getGenes().isEmpty());
+        assertTrue(GTFParser.parseGTF(gtf.toString(), new GTFFilter.Builder().addRegion("2", 1, 1000).build()).getGenes().isEmpty());
+        GTFAnnotation region = GTFParser.parseGTF(gtf.toString(), new GTFFilter.Builder().addRegion("2", 1, 1000).addRegion("3", 450, 460).build());
+        assertEquals(Set.of("C"), region.getGenes().keySet());
+        try (ChromosomeGTFLoader loader = new ChromosomeGTFLoader(gtf.toString(), List.of("1", "2", "3"))) {
+            assertEquals(1, loader.load("1").size());
+            assertTrue(loader.load("2").isEmpty());
+            assertEquals("C", loader.load("3").iterator().next().getGeneID());
+        }
+    }
+}
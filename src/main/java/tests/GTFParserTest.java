@@ -0,0 +1,537 @@
+package tests;
+
+import gtf.GTFAnnotation;
+import gtf.structs.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import gtf.types.FrameStarts;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import gtf.types.StrandDirection;
+import parsers.AttributeProjection;
+import parsers.GFF3Parser;
+import parsers.GTFFilter;
+import parsers.GTFGeneStream;
+import parsers.GTFLineTokenizer;
+import parsers.GTFParser;
+import parsers.GTFSnapshot;
+import parsers.GTFStore;
+import parsers.PipelinedGeneLoader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GTFParserTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Writes a small synthetic GTF: genes with and without gene lines, transcript lines after their exons,
+     * duplicated exons, CDS, comments and "\r\n" line endings.
+     */
+    static Path writeSyntheticGTF(Path dir, int geneCount, long seed) throws IOException {
+        Path gtf = dir.resolve("synthetic.gtf");
+        Random random = new Random(seed);
+        try (BufferedWriter bw = Files.newBufferedWriter(gtf)) {
+            bw.write("#!genome-build synthetic\n");
+            int position = 1000;
+            for (int g = 0; g < geneCount; g++) {
+                String chr = String.valueOf(1 + g * 3 / geneCount);
+                char strand = random.nextBoolean() ? '+' : '-';
+                String biotype = random.nextBoolean() ? "protein_coding" : "lincRNA";
+                String geneAttributes = "gene_id \"G" + g + "\"; gene_name \"NAME" + g + "\"; gene_source \"ensembl\"; gene_biotype \"" + biotype + "\";";
+                int geneStart = position;
+                int transcriptCount = 1 + random.nextInt(4);
+                int exonCount = 2 + random.nextInt(6);
+                int geneEnd = geneStart + exonCount * 300;
+                boolean geneLineFirst = random.nextInt(5) != 0;
+                boolean geneLineLast = !geneLineFirst && random.nextBoolean();
+                String geneLine = chr + "\t" + biotype + "\tgene\t" + geneStart + "\t" + geneEnd + "\t.\t" + strand + "\t.\t" + geneAttributes;
+                if (geneLineFirst) {
+                    bw.write(geneLine + "\n");
+                }
+                for (int t = 0; t < transcriptCount; t++) {
+                    String transcriptAttributes = "gene_id \"G" + g + "\"; transcript_id \"T" + g + "_" + t + "\"; gene_name \"NAME" + g + "\"; transcript_name \"TNAME" + g + "_" + t + "\";";
+                    String transcriptLine = chr + "\t" + biotype + "\ttranscript\t" + geneStart + "\t" + geneEnd + "\t.\t" + strand + "\t.\t" + transcriptAttributes;
+                    boolean transcriptLineFirst = random.nextInt(4) != 0;
+                    if (transcriptLineFirst) {
+                        bw.write(transcriptLine + "\n");
+                    }
+                    for (int e = 0; e < exonCount; e++) {
+                        if (random.nextInt(3) == 0) {
+                            continue;
+                        }
+                        int exonStart = geneStart + e * 300 + random.nextInt(20);
+                        int exonEnd = exonStart + 100 + random.nextInt(100);
+                        String exonAttributes = transcriptAttributes + " exon_number \"" + (e + 1) + "\"; exon_id \"E" + g + "_" + e + "\";";
+                        bw.write(chr + "\t" + biotype + "\texon\t" + exonStart + "\t" + exonEnd + "\t.\t" + strand + "\t.\t" + exonAttributes + (random.nextInt(10) == 0 ? "\r\n" : "\n"));
+                        if (random.nextInt(8) == 0) {
+                            // duplicated exon with another exon number, the first one has to win
+                            bw.write(chr + "\t" + biotype + "\texon\t" + exonStart + "\t" + exonEnd + "\t.\t" + strand + "\t.\t" + transcriptAttributes + " exon_number \"99\";\n");
+                        }
+                        if (biotype.equals("protein_coding")) {
+                            String cdsAttributes = exonAttributes + " protein_id \"P" + g + "_" + t + "\";";
+                            bw.write(chr + "\t" + biotype + "\tCDS\t" + (exonStart + 10) + "\t" + (exonEnd - 10) + "\t.\t" + strand + "\t" + random.nextInt(3) + "\t" + cdsAttributes + "\n");
+                        }
+                        if (random.nextInt(20) == 0) {
+                            bw.write("# comment inside a gene\n");
+                        }
+                    }
+                    if (!transcriptLineFirst) {
+                        bw.write(transcriptLine + "\n");
+                    }
+                }
+                if (geneLineLast) {
+                    bw.write(geneLine + "\n");
+                }
+                position = geneEnd - random.nextInt(600);
+            }
+        }
+        return gtf;
+    }
+
+    static void assertAnnotationsEqual(GTFAnnotation expected, GTFAnnotation actual) {
+        assertEquals(expected.getGenes().keySet(), actual.getGenes().keySet(), "Gene IDs differ");
+        for (Gene expectedGene : expected.getGenes().values()) {
+            Gene actualGene = actual.getGene(expectedGene.getGeneID());
+            assertEntryEquals(expectedGene, actualGene, expectedGene.getGeneID());
+            assertEquals(expectedGene.getGeneName(), actualGene.getGeneName(), expectedGene.getGeneID());
+            assertEquals(expectedGene.getTranscripts().keySet(), actualGene.getTranscripts().keySet(), expectedGene.getGeneID());
+            for (Transcript expectedTranscript : expectedGene.getTranscripts().values()) {
+                Transcript actualTranscript = actualGene.getTranscript(expectedTranscript.getTranscriptID());
+                String id = expectedTranscript.getTranscriptID();
+                assertEntryEquals(expectedTranscript, actualTranscript, id);
+                assertEquals(expectedTranscript.getTranscriptName(), actualTranscript.getTranscriptName(), id);
+                assertEquals(expectedTranscript.getExons().size(), actualTranscript.getExons().size(), id);
+                Iterator<Exon> actualExons = actualTranscript.getExons().iterator();
+                for (Exon expectedExon : expectedTranscript.getExons()) {
+                    Exon actualExon = actualExons.next();
+                    assertEntryEquals(expectedExon, actualExon, id);
+                    assertEquals(expectedExon.toString(), actualExon.toString(), id);
+                }
+                assertEquals(expectedTranscript.getCds().size(), actualTranscript.getCds().size(), id);
+                Iterator<CodingSequence> actualCds = actualTranscript.getCds().iterator();
+                for (CodingSequence expectedCds : expectedTranscript.getCds()) {
+                    CodingSequence cds = actualCds.next();
+                    assertEntryEquals(expectedCds, cds, id);
+                    assertEquals(expectedCds.getProteinID(), cds.getProteinID(), id);
+                    assertEquals(expectedCds.getCcdsID(), cds.getCcdsID(), id);
+                }
+            }
+        }
+    }
+
+    private static void assertEntryEquals(AnnotationEntry expected, AnnotationEntry actual, String id) {
+        assertNotNull(actual, id);
+        assertEquals(expected.getSeqname(), actual.getSeqname(), id);
+        assertEquals(expected.getSource(), actual.getSource(), id);
+        assertEquals(expected.getFeature(), actual.getFeature(), id);
+        assertTrue(Objects.equals(expected.getInterval(), actual.getInterval()), id);
+        assertEquals(expected.getScore(), actual.getScore(), id);
+        assertEquals(expected.getStrand(), actual.getStrand(), id);
+        assertEquals(expected.getFrame(), actual.getFrame(), id);
+    }
+
+    @Test
+    public void testParallelParserMatchesSequentialParser() throws IOException {
+        Path gtf = writeSyntheticGTF(tempDir, 300, 42);
+        GTFAnnotation sequential = GTFParser.parseGTF(gtf.toString());
+        assertEquals(300, sequential.getGenes().size());
+        // Many small chunks so that genes and transcripts cross chunk boundaries
+        for (int chunkCount : new int[]{1, 2, 7, 64, 1000}) {
+            assertAnnotationsEqual(sequential, GTFParser.parseGTFParallel(gtf.toString(), chunkCount));
+        }
+        assertAnnotationsEqual(sequential, GTFParser.parseGTFParallel(gtf.toString()));
+    }
+
+    @Test
+    public void testFrozenEntriesKeepTheirSource() throws IOException {
+        // the exons and CDS come from another source than their transcript
+        Path gtf = tempDir.resolve("sources.gtf");
+        Files.writeString(gtf, """
+                1\thavana\ttranscript\t100\t400\t.\t+\t.\tgene_id "G"; transcript_id "T";
+                1\tensembl\texon\t100\t200\t.\t+\t.\tgene_id "G"; transcript_id "T"; exon_id "E1"; exon_number "1";
+                1\thavana\texon\t300\t400\t.\t+\t.\tgene_id "G"; transcript_id "T"; exon_id "E2"; exon_number "2";
+                1\tensembl\tCDS\t150\t200\t.\t+\t0\tgene_id "G"; transcript_id "T"; protein_id "P"; exon_number "1";
+                """);
+        GTFAnnotation parsed = GTFParser.parseGTF(gtf.toString());
+        GTFAnnotation frozen = GTFParser.parseGTF(gtf.toString());
+        frozen.freeze();
+        assertAnnotationsEqual(parsed, frozen);
+        Transcript transcript = frozen.getGene("G").getTranscript("T");
+        assertEquals("ensembl", transcript.getExon(0).getSource());
+        assertEquals("havana", transcript.getExon(1).getSource());
+        assertEquals("E2", transcript.getExon(1).getExonID());
+        assertEquals("P", transcript.getCds(0).getProteinID());
+        assertSame(SymbolTable.intern("exon"), transcript.getExon(0).getFeature());
+        assertSame(SymbolTable.intern("CDS"), transcript.getCds(0).getFeature());
+        GTFSnapshot.write(frozen, gtf.toString());
+        assertAnnotationsEqual(parsed, GTFSnapshot.load(gtf.toString()));
+        GTFStore.write(frozen, gtf.toString());
+        assertAnnotationsEqual(parsed, GTFStore.open(gtf.toString()).getAnnotation());
+    }
+
+    @Test
+    public void testFreeze() throws IOException {
+        Path gtf = writeSyntheticGTF(tempDir, 200, 11);
+        GTFAnnotation parsed = GTFParser.parseGTF(gtf.toString());
+        GTFAnnotation frozen = GTFParser.parseGTF(gtf.toString());
+        frozen.freeze();
+        assertAnnotationsEqual(parsed, frozen);
+        for (Gene gene : frozen.getGenes().values()) {
+            for (Transcript transcript : gene.getTranscripts().values()) {
+                assertTrue(transcript.isFrozen());
+                Transcript expected = parsed.getGene(gene.getGeneID()).getTranscript(transcript.getTranscriptID());
+                assertArrayEquals(expected.getExons().stream().mapToInt(exon -> exon.getInterval().getStart()).toArray(), transcript.getExonStarts());
+                assertArrayEquals(expected.getExons().stream().mapToInt(exon -> exon.getInterval().getEnd()).toArray(), transcript.getExonEnds());
+                assertArrayEquals(expected.getCds().stream().mapToInt(cds -> cds.getInterval().getStart()).toArray(), transcript.getCdsStarts());
+                assertArrayEquals(expected.getCds().stream().map(CodingSequence::getFrame).toArray(), transcript.getCdsFrames());
+            }
+        }
+        Transcript transcript = frozen.getGenes().values().iterator().next().getTranscripts().values().iterator().next();
+        assertThrows(IllegalStateException.class, () -> transcript.addExon(transcript.getExons().first()));
+        assertThrows(IllegalStateException.class, () -> parsed.getGenes().values().iterator().next().getTranscripts().values().iterator().next().getExonStarts());
+    }
+
+    @Test
+    public void testSymbolsAreShared() throws IOException {
+        Path gtf = writeSyntheticGTF(tempDir, 100, 3);
+        for (GTFAnnotation annotation : new GTFAnnotation[]{GTFParser.parseGTF(gtf.toString()), GTFParser.parseGTFParallel(gtf.toString(), 16)}) {
+            for (Gene gene : annotation.getGenes().values()) {
+                assertSame(SymbolTable.intern(gene.getSeqname()), gene.getSeqname());
+                for (Transcript transcript : gene.getTranscripts().values()) {
+                    assertSame(gene.getSeqname(), transcript.getSeqname());
+                    for (Exon exon : transcript.getExons()) {
+                        assertSame(SymbolTable.intern(exon.getSource()), exon.getSource());
+                        assertSame(SymbolTable.intern("exon"), exon.getFeature());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testTokenizerMatchesSplitParser() throws IOException {
+        Path gtf = writeSyntheticGTF(tempDir, 300, 11);
+        assertAnnotationsEqual(GTFParser.parseGTFWithSplit(gtf.toString()), GTFParser.parseGTF(gtf.toString()));
+    }
+
+    @Test
+    public void testTokenizer() {
+        String line = "chr1\tsrc\tCDS\t-12\t3456\t7.5\t-\t2\tgene_name  \"A B\"; gene_id G1;ccdsid \"C1\"; transcript_id \"T1\"; tag \"x\"; transcript_name \"TN\"; protein_id P1";
+        ByteBuffer buffer = ByteBuffer.wrap(("#\n" + line + "\n").getBytes(StandardCharsets.UTF_8)).order(ByteOrder.LITTLE_ENDIAN);
+        GTFLineTokenizer tokenizer = new GTFLineTokenizer();
+        assertFalse(tokenizer.reset(buffer, 0, 1));
+        assertTrue(tokenizer.reset(buffer, 2, buffer.limit() - 1));
+        assertEquals("chr1", tokenizer.getString(GTFParser.SEQNAME_COL));
+        assertEquals('C', tokenizer.firstByte(GTFParser.FEATURE_COL));
+        assertEquals(-12, tokenizer.getInt(GTFParser.START_COL));
+        assertEquals(3456, tokenizer.getInt(GTFParser.END_COL));
+        assertEquals(7.5, tokenizer.getScore());
+        assertEquals(StrandDirection.REVERSE, tokenizer.getStrand());
+        assertEquals(FrameStarts.TWO, tokenizer.getFrame());
+        GTFAttributes attributes = tokenizer.getAttributes(AnnotationTypes.CDS);
+        GTFAttributes expected = GTFAttributes.parseAttributes(line.split("\t")[GTFParser.ATTRIBUTE_COL], AnnotationTypes.CDS);
+        assertEquals("G1", attributes.getGeneID());
+        assertEquals("A B", attributes.getGeneName());
+        assertEquals("C1", attributes.getCcdsID());
+        assertEquals(expected.getTranscriptID(), attributes.getTranscriptID());
+        assertEquals(expected.getTranscriptName(), attributes.getTranscriptName());
+        assertEquals(expected.getProteinID(), attributes.getProteinID());
+        assertThrows(NumberFormatException.class, () -> tokenizer.getInt(GTFParser.SOURCE_COL));
+        // the bounds of int parse, one past them does not wrap
+        ByteBuffer bounds = ByteBuffer.wrap("chr1\tsrc\texon\t-2147483648\t2147483647\t.\t+\t.\tgene_id G1\nchr1\tsrc\texon\t-2147483649\t2147483648\t.\t+\t.\tgene_id G1\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(tokenizer.reset(bounds, 0, 53));
+        assertEquals(Integer.MIN_VALUE, tokenizer.getInt(GTFParser.START_COL));
+        assertEquals(Integer.MAX_VALUE, tokenizer.getInt(GTFParser.END_COL));
+        assertTrue(tokenizer.reset(bounds, 54, bounds.limit() - 1));
+        assertThrows(NumberFormatException.class, () -> tokenizer.getInt(GTFParser.START_COL));
+        assertThrows(NumberFormatException.class, () -> tokenizer.getInt(GTFParser.END_COL));
+    }
+
+    @Test
+    public void testCompressedInput() throws IOException {
+        Path gtf = writeSyntheticGTF(tempDir, 300, 5);
+        GTFAnnotation plain = GTFParser.parseGTF(gtf.toString());
+        Path gz = tempDir.resolve("synthetic.gtf.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            Files.copy(gtf, out);
+        }
+        Path bgz = tempDir.resolve("synthetic.gtf.bgz");
+        try (OutputStream out = new BlockCompressedOutputStream(bgz.toFile())) {
+            Files.copy(gtf, out);
+        }
+        for (Path compressed : new Path[]{gz, bgz}) {
+            assertAnnotationsEqual(plain, GTFParser.parseGTF(compressed.toString()));
+            assertAnnotationsEqual(plain, GTFParser.parseGTFParallel(compressed.toString()));
+            assertEquals(1, GTFParser.parseGTFForCounts(compressed.toString(), Map.of("G3", Map.of("T3_0", 5))).getGenes().size());
+        }
+    }
+
+    @Test
+    public void testGeneStream() throws IOException {
+        Path gtf = writeSyntheticGTF(tempDir, 300, 13);
+        GTFAnnotation streamed = new GTFAnnotation();
+        GTFGeneStream.streamGenes(gtf.toString(), GTFGeneStream.GROUPED_BY_GENE, gene -> {
+            assertNull(streamed.getGene(gene.getGeneID()), "gene completed twice");
+            streamed.addGene(gene);
+        });
+        assertAnnotationsEqual(GTFParser.parseGTF(gtf.toString()), streamed);
+
+        // The lines of G1 and G2 interleave
+        Path interleaved = tempDir.resolve("interleaved.gtf");
+        Files.writeString(interleaved, """
+                1\tsrc\texon\t10\t20\t.\t+\t.\tgene_id "G1"; transcript_id "T1";
+                1\tsrc\texon\t15\t25\t.\t+\t.\tgene_id "G2"; transcript_id "T2";
+                1\tsrc\texon\t30\t40\t.\t+\t.\tgene_id "G1"; transcript_id "T1";
+                1\tsrc\texon\t50\t60\t.\t+\t.\tgene_id "G3"; transcript_id "T3";
+                """);
+        assertThrows(IllegalStateException.class, () -> GTFGeneStream.streamGenes(interleaved.toString(), 1, gene -> {
+        }));
+        List<String> completed = new ArrayList<>();
+        GTFGeneStream.streamGenes(interleaved.toString(), 2, gene -> completed.add(gene.getGeneID() + ":" + gene.getTranscript("T" + gene.getGeneID().substring(1)).getExons().size()));
+        assertEquals(List.of("G2:1", "G1:2", "G3:1"), completed);
+
+        // A file that cannot be read fails instead of streaming no genes
+        completed.clear();
+        assertThrows(UncheckedIOException.class, () -> GTFGeneStream.streamGenes(tempDir.resolve("missing.gtf").toString(), 1, gene -> completed.add(gene.getGeneID())));
+        assertTrue(completed.isEmpty());
+        try (PipelinedGeneLoader loader = new PipelinedGeneLoader(tempDir.resolve("missing.gtf").toString(), gene -> {
+        })) {
+            assertThrows(UncheckedIOException.class, loader::awaitAll);
+            assertThrows(UncheckedIOException.class, () -> loader.awaitChromosome("1"));
+        }
+    }
+
+    @Test
+    public void testAttributeProjection() throws IOException {
+        Path gtf = writeSyntheticGTF(tempDir, 200, 17);
+        GTFAnnotation full = GTFParser.parseGTF(gtf.toString());
+
+        GTFAnnotation idsOnly = GTFParser.parseGTF(gtf.toString(), AttributeProjection.IDS_ONLY);
+        assertEquals(full.getGenes().keySet(), idsOnly.getGenes().keySet());
+        for (Gene gene : idsOnly.getGenes().values()) {
+            assertNull(gene.getGeneName());
+            assertEquals(full.getGene(gene.getGeneID()).getTranscripts().keySet(), gene.getTranscripts().keySet());
+        }
+
+        AttributeProjection biotype = new AttributeProjection.Builder().setAttributes(GTFAttributes.GENE_BIOTYPE).build();
+        for (GTFAnnotation annotation : new GTFAnnotation[]{GTFParser.parseGTF(gtf.toString(), biotype), GTFParser.parseGTFParallel(gtf.toString(), 16, biotype)}) {
+            assertAnnotationsEqual(full, annotation);
+            for (Gene gene : annotation.getGenes().values()) {
+                // Only the gene lines of the synthetic GTF have a gene_biotype, it is the same as the source
+                assertEquals(gene.getInterval() == null ? null : gene.getSource(), gene.getAttribute(GTFAttributes.GENE_BIOTYPE), gene.getGeneID());
+            }
+        }
+
+        Path tagged = tempDir.resolve("tagged.gtf");
+        Files.writeString(tagged, "1\tsrc\texon\t10\t20\t.\t+\t.\tgene_id \"G1\"; transcript_id \"T1\"; tag \"basic\"; tag \"CCDS\"; level 2;\n");
+        Path taggedGz = tempDir.resolve("tagged.gtf.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(taggedGz))) {
+            Files.copy(tagged, out);
+        }
+        AttributeProjection raw = new AttributeProjection.Builder().setNames(false).setRawAttributes(true).build();
+        for (Path file : new Path[]{tagged, taggedGz}) {
+            Exon exon = GTFParser.parseGTF(file.toString(), raw).getGene("G1").getTranscript("T1").getExons().first();
+            assertEquals(List.of("basic", "CCDS"), exon.getAttributeValues(GTFAttributes.TAG));
+            assertEquals("2", exon.getAttribute("level"));
+            assertNull(exon.getAttribute(GTFAttributes.GENE_BIOTYPE));
+        }
+    }
+
+    @Test
+    public void testFilter() throws IOException {
+        Path gtf = writeSyntheticGTF(tempDir, 300, 19);
+        GTFAnnotation full = GTFParser.parseGTF(gtf.toString());
+
+        GTFFilter chromosome = new GTFFilter.Builder().setChromosomes(Set.of("2")).build();
+        GTFAnnotation expected = new GTFAnnotation();
+        full.getGenes().values().stream().filter(gene -> gene.getSeqname().equals("2")).forEach(expected::addGene);
+        assertFalse(expected.getGenes().isEmpty());
+        assertAnnotationsEqual(expected, GTFParser.parseGTF(gtf.toString(), chromosome));
+        assertAnnotationsEqual(expected, GTFParser.parseGTFParallel(gtf.toString(), 16, AttributeProjection.DEFAULT, chromosome));
+
+        // The exon lines have no gene_biotype, they are matched by their source
+        GTFFilter biotype = new GTFFilter.Builder().setBiotypes(Set.of("lincRNA")).build();
+        expected = new GTFAnnotation();
+        full.getGenes().values().stream().filter(gene -> gene.getSource().equals("lincRNA")).forEach(expected::addGene);
+        assertAnnotationsEqual(expected, GTFParser.parseGTF(gtf.toString(), biotype));
+
+        // GENCODE has the biotype in gene_type and the annotation source in the source column
+        Path gencode = tempDir.resolve("gencode.gtf");
+        Files.writeString(gencode, """
+                1\tHAVANA\tgene\t100\t500\t.\t+\t.\tgene_id "A"; gene_type "protein_coding";
+                1\tHAVANA\texon\t100\t200\t.\t+\t.\tgene_id "A"; transcript_id "TA"; gene_type "protein_coding";
+                1\tENSEMBL\tgene\t1000\t1500\t.\t+\t.\tgene_id "B"; gene_type "lncRNA";
+                1\tENSEMBL\texon\t1000\t1200\t.\t+\t.\tgene_id "B"; transcript_id "TB"; gene_type "lncRNA";
+                """);
+        GTFAnnotation proteinCoding = GTFParser.parseGTF(gencode.toString(), new GTFFilter.Builder().setBiotypes(Set.of("protein_coding")).build());
+        assertEquals(Set.of("A"), proteinCoding.getGenes().keySet());
+        assertEquals(1, proteinCoding.getGene("A").getTranscript("TA").getExonCount());
+        assertTrue(GTFParser.parseGTF(gencode.toString(), new GTFFilter.Builder().setBiotypes(Set.of("HAVANA")).build()).getGenes().isEmpty());
+
+        // Overlapping regions are merged, lines are kept if they overlap a region
+        GTFFilter region = new GTFFilter.Builder().addRegion("1", 20000, 30000).addRegion("1", 25000, 40000).addRegion("1", 60000, 61000)
+                .setFeatures(Set.of("exon")).build();
+        GTFAnnotation regionAnnotation = GTFParser.parseGTF(gtf.toString(), region);
+        int exonCount = 0;
+        for (Gene gene : full.getGenes().values()) {
+            for (Transcript transcript : gene.getTranscripts().values()) {
+                for (Exon exon : transcript.getExons()) {
+                    boolean overlaps = gene.getSeqname().equals("1") && (exon.getInterval().getStart() <= 40000 && exon.getInterval().getEnd() >= 20000
+                            || exon.getInterval().getStart() <= 61000 && exon.getInterval().getEnd() >= 60000);
+                    Gene filteredGene = regionAnnotation.getGene(gene.getGeneID());
+                    Transcript filtered = filteredGene == null ? null : filteredGene.getTranscript(transcript.getTranscriptID());
+                    assertEquals(overlaps, filtered != null && filtered.getExons().contains(exon), exon.toString());
+                    exonCount += overlaps ? 1 : 0;
+                }
+            }
+        }
+        assertTrue(exonCount > 0);
+        for (Gene gene : regionAnnotation.getGenes().values()) {
+            // Gene lines were filtered out by the feature
+            assertNull(gene.getInterval());
+        }
+
+        Map<String, Map<String, Integer>> counts = Map.of("G3", Map.of("T3_0", 1), "G10", Map.of("T10_0", 2, "T10_1", 3), "G999", Map.of("T999_0", 1));
+        GTFAnnotation forCounts = GTFParser.parseGTFForCounts(gtf.toString(), counts);
+        assertEquals(Set.of("G3", "G10"), forCounts.getGenes().keySet());
+        for (Gene gene : forCounts.getGenes().values()) {
+            assertEquals(full.getGene(gene.getGeneID()).getInterval(), gene.getInterval());
+            assertTrue(counts.get(gene.getGeneID()).keySet().containsAll(gene.getTranscripts().keySet()));
+        }
+    }
+
+    @Test
+    public void testGFF3() throws IOException {
+        // Ensembl style, with children before their parents, a shared exon, a UTR and a region that are skipped
+        String gff3 = """
+                ##gff-version 3
+                1\tEnsembl\tchromosome\t1\t100000\t.\t.\t.\tID=chromosome:1
+                1\thavana\texon\t100\t200\t.\t+\t.\tParent=transcript:T1,transcript:T2;Name=E1;exon_id=E1;rank=1
+                1\thavana\tmRNA\t100\t900\t.\t+\t.\tID=transcript:T1;Parent=gene:G1;Name=T1%3Bname;transcript_id=T1
+                1\thavana\tgene\t100\t900\t.\t+\t.\tID=gene:G1;Name=GENE1;gene_id=G1;biotype=protein_coding
+                1\thavana\texon\t700\t900\t.\t+\t.\tParent=transcript:T1;exon_id=E2;rank=2
+                1\thavana\tCDS\t150\t200\t.\t+\t0\tID=CDS:P1;Parent=transcript:T1;protein_id=P1
+                1\thavana\tCDS\t700\t750\t.\t+\t1\tID=CDS:P1;Parent=transcript:T1;protein_id=P1
+                1\thavana\tfive_prime_UTR\t100\t149\t.\t+\t.\tParent=transcript:T1
+                1\thavana\tlnc_RNA\t100\t500\t.\t+\t.\tID=transcript:T2;Parent=gene:G1;transcript_id=T2
+                1\thavana\texon\t400\t500\t.\t+\t.\tParent=transcript:T2;exon_id=E3;rank=2
+                ###
+                2\tRefSeq\tncRNA_gene\t10\t50\t.\t-\t.\tID=G2;Name=GENE2
+                2\tRefSeq\ttranscript\t10\t50\t.\t-\t.\tID=T3;Parent=G2
+                2\tRefSeq\texon\t10\t50\t.\t-\t.\tParent=T3
+                2\tRefSeq\texon\t60\t70\t.\t-\t.\tParent=missing
+                """;
+        Path file = tempDir.resolve("test.gff3");
+        Files.writeString(file, gff3);
+        Path gz = tempDir.resolve("test.gff3.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            Files.copy(file, out);
+        }
+        assertTrue(GFF3Parser.isGFF3(gz.toString()));
+        assertFalse(GFF3Parser.isGFF3("test.gtf"));
+        for (Path path : new Path[]{file, gz}) {
+            GTFAnnotation annotation = GFF3Parser.parseGFF3(path.toString());
+            assertEquals(Set.of("G1", "G2"), annotation.getGenes().keySet());
+            Gene gene = annotation.getGene("G1");
+            assertEquals("GENE1", gene.getGeneName());
+            assertEquals(new Interval(100, 900), gene.getInterval());
+            assertEquals(Set.of("T1", "T2"), gene.getTranscripts().keySet());
+
+            Transcript t1 = gene.getTranscript("T1");
+            assertEquals("T1;name", t1.getTranscriptName());
+            assertEquals("mRNA", t1.getFeature());
+            assertEquals(List.of("Exon 1 100-200 Length: 101", "Exon 2 700-900 Length: 201"), t1.getExons().stream().map(Exon::toString).toList());
+            assertEquals(2, t1.getCds().size());
+            assertEquals("P1", t1.getCds().first().getProteinID());
+            assertEquals(FrameStarts.ONE, t1.getCds().last().getFrame());
+
+            Transcript t2 = gene.getTranscript("T2");
+            assertEquals(List.of(100, 400), t2.getExons().stream().map(exon -> exon.getInterval().getStart()).toList());
+
+            Gene g2 = annotation.getGene("G2");
+            assertEquals(StrandDirection.REVERSE, g2.getStrand());
+            assertEquals(1, g2.getTranscript("T3").getExons().size());
+        }
+    }
+
+    @Test
+    public void testParallelParserEmptyFile() throws IOException {
+        Path gtf = Files.createFile(tempDir.resolve("empty.gtf"));
+        assertTrue(GTFParser.parseGTFParallel(gtf.toString(), 8).getGenes().isEmpty());
+    }
+
+    @Test
+    public void testGeneWithoutGeneLineAcrossChunks() throws IOException {
+        // G has no gene line, H gets its gene line after its exons, every line can be its own chunk
+        Path gtf = tempDir.resolve("genes.gtf");
+        Files.writeString(gtf, """
+                1\ttest\texon\t100\t200\t.\t+\t.\tgene_id "G"; transcript_id "T1"; exon_number "1";
+                1\ttest\texon\t300\t400\t.\t+\t.\tgene_id "G"; transcript_id "T2"; exon_number "1";
+                1\ttest\texon\t500\t600\t.\t+\t.\tgene_id "G"; transcript_id "T1"; exon_number "2";
+                1\ttest\texon\t1000\t1100\t.\t-\t.\tgene_id "H"; transcript_id "T3";
+                1\ttest\tgene\t990\t1100\t.\t-\t.\tgene_id "H";
+                """);
+        for (int chunkCount : new int[]{1, 3, 100}) {
+            GTFAnnotation annotation = GTFParser.parseGTFParallel(gtf.toString(), chunkCount);
+            assertEquals(Set.of("G", "H"), annotation.getGenes().keySet(), "chunks " + chunkCount);
+            Gene gene = annotation.getGene("G");
+            assertNull(gene.getInterval());
+            assertEquals(List.of("T1", "T2"), List.copyOf(gene.getTranscripts().keySet()));
+            assertEquals(2, gene.getTranscript("T1").getExonCount());
+            assertEquals("2", gene.getTranscript("T1").getExons().last().getExonNumber());
+            Gene late = annotation.getGene("H");
+            // the gene line sets the interval of the gene created by the exon
+            assertEquals(new Interval(990, 1100), late.getInterval());
+            assertEquals(1, late.getTranscript("T3").getExonCount());
+        }
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws IOException {
+        Path gtf = writeSyntheticGTF(tempDir, 200, 7);
+        GTFAnnotation parsed = GTFParser.parseGTF(gtf.toString());
+        assertNull(GTFSnapshot.load(gtf.toString()));
+        GTFSnapshot.write(parsed, gtf.toString());
+        assertTrue(GTFSnapshot.hasValidSnapshot(gtf.toString()));
+        assertAnnotationsEqual(parsed, GTFSnapshot.load(gtf.toString()));
+        // parseGTF picks up the snapshot automatically
+        assertAnnotationsEqual(parsed, GTFParser.parseGTF(gtf.toString()));
+        // a frozen annotation is written entry by entry from its arrays
+        GTFAnnotation frozen = GTFParser.parseGTF(gtf.toString());
+        frozen.freeze();
+        GTFSnapshot.write(frozen, gtf.toString());
+        assertAnnotationsEqual(parsed, GTFSnapshot.load(gtf.toString()));
+
+        GTFAnnotation counts = GTFParser.parseGTFForCounts(gtf.toString(), Map.of("G3", Map.of("T3_0", 5), "missing", Map.of("T", 1)));
+        assertEquals(1, counts.getGenes().size());
+        assertEquals(1, counts.getGene("G3").getTranscripts().size());
+        assertEquals(parsed.getGene("G3").getTranscript("T3_0").getExons().size(), counts.getGene("G3").getTranscript("T3_0").getExons().size());
+
+        // A changed GTF invalidates the snapshot
+        Files.writeString(gtf, "1\tprotein_coding\tgene\t1\t10\t.\t+\t.\tgene_id \"NEW\"; gene_name \"NEW\";\n", StandardOpenOption.APPEND);
+        assertFalse(GTFSnapshot.hasValidSnapshot(gtf.toString()));
+        assertNull(GTFSnapshot.load(gtf.toString()));
+        assertNotNull(GTFParser.parseGTF(gtf.toString()).getGene("NEW"));
+    }
+}
@@ -0,0 +1,125 @@
+package tests;
+
+import gtf.GTFAnnotation;
+import gtf.structs.Gene;
+import gtf.structs.Transcript;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parsers.ChromosomeGTFLoader;
+import parsers.GTFParser;
+import parsers.GTFStore;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GTFStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testStore() throws IOException {
+        Path gtf = GTFParserTest.writeSyntheticGTF(tempDir, 200, 13);
+        GTFAnnotation parsed = GTFParser.parseGTF(gtf.toString());
+        assertNull(GTFStore.open(gtf.toString()));
+        GTFStore.write(parsed, gtf.toString());
+        GTFStore store = GTFStore.open(gtf.toString());
+        assertNotNull(store);
+        assertEquals(200, store.getGeneCount());
+        GTFParserTest.assertAnnotationsEqual(parsed, store.getAnnotation());
+        assertNull(store.getAnnotation().getGene("missing"));
+        for (String chromosome : store.getChromosomes()) {
+            List<Gene> genes = store.getGenes(chromosome);
+            assertEquals(parsed.getGenes().values().stream().filter(gene -> gene.getSeqname().equals(chromosome)).count(), genes.size());
+            assertTrue(genes.stream().allMatch(gene -> gene.getSeqname().equals(chromosome) && gene.getTranscripts().values().stream().allMatch(Transcript::isFrozen)));
+        }
+        assertTrue(store.getGenes("missing").isEmpty());
+
+        Files.writeString(gtf, "1\tprotein_coding\tgene\t1\t10\t.\t+\t.\tgene_id \"NEW\"; gene_name \"NEW\";\n", StandardOpenOption.APPEND);
+        assertNull(GTFStore.open(gtf.toString()));
+    }
+
+    @Test
+    public void testIndices() throws IOException {
+        Path gtf = GTFParserTest.writeSyntheticGTF(tempDir, 150, 17);
+        GTFAnnotation parsed = GTFParser.parseGTF(gtf.toString());
+        parsed.freeze();
+        GTFStore.write(parsed, gtf.toString());
+        GTFAnnotation stored = GTFStore.open(gtf.toString()).getAnnotation();
+        assertEquals(150, parsed.getGeneCount());
+        assertEquals(parsed.getTranscriptCount(), stored.getTranscriptCount());
+        for (int i = 0; i < parsed.getGeneCount(); i++) {
+            assertEquals(i, parsed.getGene(i).getIndex());
+            assertEquals(parsed.getGene(i).getGeneID(), stored.getGene(i).getGeneID());
+        }
+        for (int i = 0; i < parsed.getTranscriptCount(); i++) {
+            Transcript transcript = parsed.getTranscript(i);
+            assertEquals(i, transcript.getIndex());
+            assertSame(transcript, parsed.getGeneOfTranscript(i).getTranscript(transcript.getTranscriptID()));
+            assertEquals(transcript.getTranscriptID(), stored.getTranscript(i).getTranscriptID());
+            assertEquals(parsed.getGeneOfTranscript(i).getGeneID(), stored.getGeneOfTranscript(i).getGeneID());
+        }
+        assertThrows(IllegalStateException.class, () -> parsed.addGene(parsed.getGene(0)));
+    }
+
+    @Test
+    public void testChromosomeWithoutGenes() throws IOException {
+        // the lines of chromosome 2 are features the parser skips
+        Path gtf = tempDir.resolve("genes.gtf");
+        Files.writeString(gtf, """
+                1\ttest\tgene\t100\t500\t.\t+\t.\tgene_id "A";
+                1\ttest\texon\t100\t200\t.\t+\t.\tgene_id "A"; transcript_id "TA";
+                2\ttest\tstart_codon\t100\t102\t.\t+\t0\tgene_id "X"; transcript_id "TX";
+                2\ttest\tfive_prime_utr\t90\t99\t.\t+\t.\tgene_id "X"; transcript_id "TX";
+                3\ttest\tgene\t100\t500\t.\t-\t.\tgene_id "C";
+                3\ttest\texon\t300\t400\t.\t-\t.\tgene_id "C"; transcript_id "TC";
+                """);
+        GTFStore.createIfMissing(gtf.toString());
+        GTFStore store = GTFStore.open(gtf.toString());
+        assertNotNull(store);
+        assertEquals(Set.of("1", "3"), store.getChromosomes());
+        assertTrue(store.getGenes("2").isEmpty());
+        assertEquals("C", store.getGenes("3").getFirst().getGeneID());
+        try (ChromosomeGTFLoader loader = new ChromosomeGTFLoader(gtf.toString(), List.of("1", "2", "3"))) {
+            assertEquals(1, loader.load("1").size());
+            assertTrue(loader.load("2").isEmpty());
+            assertEquals(1, loader.load("3").size());
+            // genes of the store can be loaded again
+            assertEquals(1, loader.load("1").size());
+        }
+    }
+
+    @Test
+    public void testEmptyGTF() throws IOException {
+        Path gtf = Files.writeString(tempDir.resolve("empty.gtf"), "#!genome-build none\n");
+        GTFStore.write(GTFParser.parseGTF(gtf.toString()), gtf.toString());
+        GTFStore store = GTFStore.open(gtf.toString());
+        assertNotNull(store);
+        assertEquals(0, store.getGeneCount());
+        assertTrue(store.getChromosomes().isEmpty());
+        assertTrue(store.getAnnotation().getGenes().isEmpty());
+    }
+
+    @Test
+    public void testStoreLargerThan2GB() throws IOException {
+        Path gtf = Files.writeString(tempDir.resolve("genes.gtf"), "1\ttest\tgene\t100\t500\t.\t+\t.\tgene_id \"A\";\n");
+        GTFStore.write(GTFParser.parseGTF(gtf.toString()), gtf.toString());
+        // a sparse file with a valid header, one byte more than a buffer can map
+        try (RandomAccessFile file = new RandomAccessFile(GTFStore.getStorePath(gtf.toString()).toFile(), "rw")) {
+            file.setLength(Integer.MAX_VALUE + 1L);
+        }
+        assertTrue(GTFStore.hasValidStore(gtf.toString()));
+        assertNull(GTFStore.open(gtf.toString()));
+        // the lazy loader falls back to the GTF file
+        try (ChromosomeGTFLoader loader = new ChromosomeGTFLoader(gtf.toString(), List.of("1"))) {
+            assertEquals("A", loader.load("1").iterator().next().getGeneID());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package tests;
+
+import gtf.GTFAnnotation;
+import gtf.structs.Gene;
+import gtf.structs.Transcript;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parsers.GTFParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeneTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testMergedExons() throws IOException {
+        Path gtf = GTFParserTest.writeSyntheticGTF(tempDir, 150, 23);
+        GTFAnnotation parsed = GTFParser.parseGTF(gtf.toString());
+        parsed.freeze();
+        Random random = new Random(23);
+        for (Gene gene : parsed.getGenes().values()) {
+            // the positions covered by an exon of any transcript
+            TreeSet<Integer> covered = new TreeSet<>();
+            for (Transcript transcript : gene.getTranscripts().values()) {
+                for (int i = 0; i < transcript.getExonStarts().length; i++) {
+                    for (int position = transcript.getExonStarts()[i]; position <= transcript.getExonEnds()[i]; position++) {
+                        covered.add(position);
+                    }
+                }
+            }
+            assertEquals(covered.size(), gene.getExonicLength());
+            int[] merged = gene.getMergedExons();
+            for (int i = 2; i < merged.length; i += 2) {
+                // disjoint and not adjacent
+                assertTrue(merged[i] > merged[i - 1] + 1);
+            }
+            if (covered.isEmpty()) {
+                continue;
+            }
+            for (int i = 0; i < 50; i++) {
+                int start = covered.first() - 20 + random.nextInt(covered.last() - covered.first() + 40);
+                int end = start + random.nextInt(100);
+                boolean contained = true;
+                for (int position = start; position <= end; position++) {
+                    contained &= covered.contains(position);
+                }
+                assertEquals(contained, gene.isInMergedExons(start, end), gene.getGeneID() + " " + start + "-" + end);
+            }
+        }
+    }
+
+    @Test
+    public void testAdjacentAndOverlappingExons() throws IOException {
+        Path gtf = tempDir.resolve("genes.gtf");
+        Files.writeString(gtf, """
+                1\ttest\tgene\t100\t700\t.\t+\t.\tgene_id "G";
+                1\ttest\texon\t100\t200\t.\t+\t.\tgene_id "G"; transcript_id "ADJACENT";
+                1\ttest\texon\t201\t300\t.\t+\t.\tgene_id "G"; transcript_id "ADJACENT";
+                1\ttest\texon\t250\t350\t.\t+\t.\tgene_id "G"; transcript_id "OVERLAPPING";
+                1\ttest\texon\t500\t600\t.\t+\t.\tgene_id "G"; transcript_id "OVERLAPPING";
+                1\ttest\texon\t602\t700\t.\t+\t.\tgene_id "G"; transcript_id "GAP";
+                """);
+        GTFAnnotation annotation = GTFParser.parseGTF(gtf.toString());
+        annotation.freeze();
+        Gene gene = annotation.getGene("G");
+        // adjacent and overlapping exons are joined, a gap of one position is kept
+        assertArrayEquals(new int[]{100, 350, 500, 600, 602, 700}, gene.getMergedExons());
+        assertEquals(251 + 101 + 99, gene.getExonicLength());
+        assertTrue(gene.isInMergedExons(150, 340));
+        assertTrue(gene.isInMergedExons(600, 600));
+        assertFalse(gene.isInMergedExons(590, 610));
+        assertFalse(gene.isInMergedExons(99, 100));
+        assertFalse(gene.isInMergedExons(350, 351));
+    }
+
+    @Test
+    public void testGeneWithoutGeneLine() throws IOException {
+        Path gtf = tempDir.resolve("genes.gtf");
+        Files.writeString(gtf, """
+                1\ttest\texon\t100\t200\t.\t+\t.\tgene_id "G"; transcript_id "T";
+                1\ttest\texon\t301\t400\t.\t+\t.\tgene_id "G"; transcript_id "T";
+                1\ttest\tgene\t1000\t2000\t.\t+\t.\tgene_id "EMPTY";
+                """);
+        GTFAnnotation annotation = GTFParser.parseGTF(gtf.toString());
+        annotation.freeze();
+        Gene gene = annotation.getGene("G");
+        assertNull(gene.getInterval());
+        Transcript transcript = gene.getTranscript("T");
+        assertNull(transcript.getInterval());
+        assertArrayEquals(new int[]{100, 301}, transcript.getExonStarts());
+        assertArrayEquals(new int[]{100, 200, 301, 400}, gene.getMergedExons());
+        assertEquals(201, gene.getExonicLength());
+        // a gene line without exons has no exonic length, the RPKM falls back to the interval
+        Gene empty = annotation.getGene("EMPTY");
+        assertEquals(0, empty.getMergedExons().length);
+        assertEquals(0, empty.getExonicLength());
+        assertFalse(empty.isInMergedExons(1000, 1000));
+    }
+}
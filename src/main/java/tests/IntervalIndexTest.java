@@ -0,0 +1,155 @@
+package tests;
+
+import augmentedTree.Interval;
+import gtf.treecollections.AugmentedIntervalIndex;
+import gtf.treecollections.GeneDistanceIndex;
+import gtf.treecollections.GeneQueryResult;
+import gtf.treecollections.GeneSweepCursor;
+import gtf.treecollections.ImplicitIntervalTree;
+import gtf.treecollections.IntervalIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntervalIndexTest {
+
+    // identity equality, so intervals with the same positions stay distinct
+    private static final class TestInterval implements Interval {
+        private final int start;
+        private final int stop;
+
+        TestInterval(int start, int stop) {
+            this.start = start;
+            this.stop = stop;
+        }
+
+        @Override
+        public int getStart() {
+            return start;
+        }
+
+        @Override
+        public int getStop() {
+            return stop;
+        }
+    }
+
+    @Test
+    public void testImplicitTreeMatchesAugmentedTree() {
+        Random random = new Random(11);
+        for (int size : new int[]{0, 1, 2, 7, 8, 9, 100, 1000, 4097}) {
+            IntervalIndex<Interval> augmented = new AugmentedIntervalIndex<>();
+            IntervalIndex<Interval> implicit = new ImplicitIntervalTree<>();
+            for (int i = 0; i < size; i++) {
+                int start = random.nextInt(100_000);
+                // mostly short intervals, some long ones that span many others
+                Interval interval = new TestInterval(start, start + (random.nextInt(20) == 0 ? random.nextInt(20_000) : random.nextInt(500)));
+                augmented.add(interval);
+                implicit.add(interval);
+                if (random.nextInt(10) == 0) {
+                    // duplicated positions
+                    Interval duplicate = new TestInterval(interval.getStart(), interval.getStop());
+                    augmented.add(duplicate);
+                    implicit.add(duplicate);
+                }
+                if (i == size / 2) {
+                    // queries between adds reindex the tree
+                    assertQueriesMatch(augmented, implicit, 100_000, 0);
+                }
+            }
+            assertEquals(augmented.size(), implicit.size());
+            for (int i = 0; i < 2000; i++) {
+                int start = random.nextInt(110_000) - 5000;
+                assertQueriesMatch(augmented, implicit, start, random.nextInt(i % 2 == 0 ? 50 : 5000));
+            }
+        }
+    }
+
+    @Test
+    public void testDistanceIndexMatchesNeighborQueries() {
+        Random random = new Random(5);
+        IntervalIndex<Interval> tree = new AugmentedIntervalIndex<>();
+        GeneDistanceIndex distances = new GeneDistanceIndex();
+        assertEquals(Integer.MAX_VALUE, distances.getDistance(10, 20));
+        for (int i = 0; i < 500; i++) {
+            int start = random.nextInt(1_000_000);
+            Interval interval = new TestInterval(start, start + random.nextInt(random.nextInt(10) == 0 ? 50_000 : 2000));
+            tree.add(interval);
+            distances.add(interval);
+        }
+        for (int i = 0; i < 5000; i++) {
+            int start = random.nextInt(1_100_000) - 50_000;
+            int stop = start + random.nextInt(300);
+            // the distances of the neighbor queries the forests used before
+            int left = tree.getIntervalsLeftNeighbor(start, stop, new ArrayList<>()).stream().mapToInt(interval -> interval.getStop() >= start ? 0 : start - interval.getStop() - 1).min().orElse(Integer.MAX_VALUE);
+            int right = tree.getIntervalsRightNeighbor(start, stop, new ArrayList<>()).stream().mapToInt(interval -> interval.getStart() <= stop ? 0 : interval.getStart() - stop - 1).min().orElse(Integer.MAX_VALUE);
+            assertEquals(Math.min(left, right), distances.getDistance(start, stop), start + "-" + stop);
+        }
+    }
+
+    @Test
+    public void testSweepCursorMatchesTree() {
+        Random random = new Random(17);
+        IntervalIndex<Interval> tree = new ImplicitIntervalTree<>();
+        GeneDistanceIndex distances = new GeneDistanceIndex();
+        GeneSweepCursor<Interval> cursor = new GeneSweepCursor<>();
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(2_000_000);
+            Interval interval = new TestInterval(start, start + random.nextInt(random.nextInt(10) == 0 ? 100_000 : 3000));
+            tree.add(interval);
+            distances.add(interval);
+            cursor.add(interval);
+        }
+        cursor.index();
+        // sorted second mates, the pairs start at the first mate up to 1000 before, some far before
+        int answered = 0;
+        for (int mate = 0; mate < 2_100_000; mate += random.nextInt(200)) {
+            int start = mate - (random.nextInt(100) == 0 ? random.nextInt(200_000) : random.nextInt(1000));
+            int stop = Math.max(start, mate) + random.nextInt(300);
+            String query = start + "-" + stop;
+            if (!cursor.seek(start)) {
+                continue;
+            }
+            answered++;
+            assertEquals(new HashSet<>(tree.getIntervalsSpanning(start, stop, new ArrayList<>())), distinct(cursor.getIntervalsSpanning(start, stop, new ArrayList<>())), "spanning " + query);
+            assertEquals(tree.hasIntervalsSpanning(start, stop), cursor.hasIntervalsSpanning(start, stop), "any spanning " + query);
+            assertEquals(tree.hasIntervalsSpannedBy(start, stop), cursor.hasIntervalsSpannedBy(start, stop), "any spanned by " + query);
+            assertEquals(distances.getDistance(start, stop), cursor.getDistance(start, stop), "distance " + query);
+            // the combined query answers the same in one pass
+            GeneQueryResult<Interval> result = cursor.query(start, stop, new GeneQueryResult<>());
+            assertEquals(new HashSet<>(tree.getIntervalsSpanning(start, stop, new ArrayList<>())), distinct(result.getGenesThatInclude()), "query spanning " + query);
+            if (result.getGenesThatInclude().isEmpty()) {
+                assertEquals(tree.hasIntervalsSpannedBy(start, stop), result.hasContainedGene(), "query spanned by " + query);
+            }
+            if (result.isIntergenic()) {
+                assertEquals(distances.getDistance(start, stop), result.getDistance(), "query distance " + query);
+            }
+        }
+        assertTrue(answered > 15_000, "answered " + answered);
+    }
+
+    private static void assertQueriesMatch(IntervalIndex<Interval> expected, IntervalIndex<Interval> actual, int start, int length) {
+        int stop = start + length;
+        String query = start + "-" + stop;
+        assertEquals(new HashSet<>(expected.getIntervalsSpanning(start, stop, new ArrayList<>())), distinct(actual.getIntervalsSpanning(start, stop, new ArrayList<>())), "spanning " + query);
+        assertEquals(!expected.getIntervalsSpanning(start, stop, new ArrayList<>()).isEmpty(), actual.hasIntervalsSpanning(start, stop), "any spanning " + query);
+        assertEquals(!expected.getIntervalsSpannedBy(start, stop, new ArrayList<>()).isEmpty(), actual.hasIntervalsSpannedBy(start, stop), "any spanned by " + query);
+        assertEquals(new HashSet<>(expected.getIntervalsSpannedBy(start, stop, new ArrayList<>())), distinct(actual.getIntervalsSpannedBy(start, stop, new ArrayList<>())), "spanned by " + query);
+        assertEquals(new HashSet<>(expected.getIntervalsIntersecting(start, stop, new ArrayList<>())), distinct(actual.getIntervalsIntersecting(start, stop, new ArrayList<>())), "intersecting " + query);
+        assertEquals(new HashSet<>(expected.getIntervalsLeftNeighbor(start, stop, new ArrayList<>())), distinct(actual.getIntervalsLeftNeighbor(start, stop, new ArrayList<>())), "left neighbor " + query);
+        assertEquals(new HashSet<>(expected.getIntervalsRightNeighbor(start, stop, new ArrayList<>())), distinct(actual.getIntervalsRightNeighbor(start, stop, new ArrayList<>())), "right neighbor " + query);
+    }
+
+    private static Set<Interval> distinct(List<Interval> intervals) {
+        Set<Interval> set = new HashSet<>(intervals);
+        // the jar can report a left neighbor twice, the implicit tree reports every interval once
+        assertEquals(intervals.size(), set.size());
+        return set;
+    }
+}
@@ -0,0 +1,183 @@
+package tests;
+
+import bamfeatures.ReadAnnotation;
+import gtf.GTFAnnotation;
+import gtf.structs.Gene;
+import gtf.structs.Interval;
+import gtf.structs.Transcript;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parsers.GTFParser;
+import readsimulator.Pair;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JunctionIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * One gene with many isoforms from a shared pool of exons, so the isoforms share junctions. Every fourth isoform
+     * has an exon that overlaps the next one, some isoforms have adjacent exons.
+     */
+    private Gene writeIsoforms(Random random) throws IOException {
+        Path gtf = tempDir.resolve("isoforms.gtf");
+        try (BufferedWriter bw = Files.newBufferedWriter(gtf)) {
+            bw.write("1\ttest\tgene\t1000\t20000\t.\t+\t.\tgene_id \"G\"; gene_biotype \"protein_coding\";\n");
+            for (int t = 0; t < 60; t++) {
+                String attributes = "gene_id \"G\"; transcript_id \"T" + t + "\";";
+                int exonNumber = 1;
+                for (int e = 0; e < 12; e++) {
+                    if (random.nextInt(3) == 0) {
+                        continue;
+                    }
+                    // two exon variants per slot, sharing the start or the end
+                    int start = 1000 + e * 1500 + (random.nextBoolean() ? 0 : 50);
+                    int end = 1000 + e * 1500 + 400 + (random.nextBoolean() ? 0 : 30);
+                    bw.write("1\ttest\texon\t" + start + "\t" + end + "\t.\t+\t.\t" + attributes + " exon_number \"" + exonNumber++ + "\";\n");
+                    if (t % 4 == 3 && random.nextInt(4) == 0) {
+                        // overlaps the exon
+                        bw.write("1\ttest\texon\t" + (end - 100) + "\t" + (end + 200) + "\t.\t+\t.\t" + attributes + " exon_number \"" + exonNumber++ + "\";\n");
+                    } else if (random.nextInt(10) == 0) {
+                        // adjacent to the exon
+                        bw.write("1\ttest\texon\t" + (end + 1) + "\t" + (end + 100) + "\t.\t+\t.\t" + attributes + " exon_number \"" + exonNumber++ + "\";\n");
+                    }
+                }
+            }
+        }
+        GTFAnnotation annotation = GTFParser.parseGTF(gtf.toString());
+        annotation.freeze();
+        return annotation.getGene("G");
+    }
+
+    @Test
+    public void testMatchesCutAndCompare() throws IOException {
+        Random random = new Random(31);
+        Gene gene = writeIsoforms(random);
+        List<Transcript> transcripts = new ArrayList<>(gene.getTranscripts().values());
+        long irregular = transcripts.stream().filter(transcript -> !isRegular(transcript)).count();
+        assertTrue(irregular > 3, "irregular " + irregular);
+        SAMFileHeader header = new SAMFileHeader();
+        int matched = 0;
+        int irregularMatched = 0;
+        for (int i = 0; i < 3000; i++) {
+            // the mates are cut from the same isoform, some get a shifted block boundary
+            Transcript source = transcripts.get(random.nextInt(transcripts.size()));
+            TreeSet<Interval> first = randomRead(source, random);
+            TreeSet<Interval> second = randomRead(source, random);
+            if (first.isEmpty() || second.isEmpty() || !isDisjoint(first) || !isDisjoint(second)) {
+                continue;
+            }
+            // the transcripts of the baseline, in the iteration order of the gene
+            List<Transcript> expected = new ArrayList<>();
+            for (Transcript transcript : gene.getTranscripts().values()) {
+                if (transcript.cut(span(first)).equals(first) && transcript.cut(span(second)).equals(second)) {
+                    expected.add(transcript);
+                }
+            }
+            ReadAnnotation annotation = new ReadAnnotation("read" + i);
+            annotation.setGenesThatInclude(List.of(gene));
+            annotation.extractReadIntervals(record(header, first), record(header, second));
+            annotation.findTranscriptomicMatches();
+            List<Pair<Gene, List<Transcript>>> matches = annotation.getTranscriptomicMatches();
+            assertEquals(expected, matches.isEmpty() ? List.of() : matches.getFirst().getSecond(), first + " " + second);
+            matched += expected.isEmpty() ? 0 : 1;
+            irregularMatched += expected.stream().anyMatch(transcript -> !isRegular(transcript)) ? 1 : 0;
+        }
+        assertTrue(matched > 500, "matched " + matched);
+        assertTrue(irregularMatched > 20, "irregular matched " + irregularMatched);
+    }
+
+    @Test
+    public void testAdjacentExonsDoNotMatchAnUnsplicedBlock() throws IOException {
+        Path gtf = tempDir.resolve("adjacent.gtf");
+        Files.writeString(gtf, "1\ttest\tgene\t100\t400\t.\t+\t.\tgene_id \"G\";\n"
+                + "1\ttest\texon\t100\t200\t.\t+\t.\tgene_id \"G\"; transcript_id \"ADJACENT\";\n"
+                + "1\ttest\texon\t201\t300\t.\t+\t.\tgene_id \"G\"; transcript_id \"ADJACENT\";\n"
+                + "1\ttest\texon\t100\t300\t.\t+\t.\tgene_id \"G\"; transcript_id \"ONE\";\n");
+        GTFAnnotation annotation = GTFParser.parseGTF(gtf.toString());
+        annotation.freeze();
+        Gene gene = annotation.getGene("G");
+        TreeSet<Interval> block = new TreeSet<>(List.of(new Interval(150, 250)));
+        List<Transcript> matches = gene.getJunctionIndex().findMatches(block, block, (transcript, read) -> transcript.cut(span(read)).equals(read));
+        assertEquals(List.of(gene.getTranscript("ONE")), matches);
+        TreeSet<Interval> blocks = new TreeSet<>(List.of(new Interval(150, 200), new Interval(201, 250)));
+        assertEquals(List.of(gene.getTranscript("ADJACENT")), gene.getJunctionIndex().findMatches(blocks, blocks, (transcript, read) -> transcript.cut(span(read)).equals(read)));
+    }
+
+    private static TreeSet<Interval> randomRead(Transcript transcript, Random random) {
+        int[] exonStarts = transcript.getExonStarts();
+        int[] exonEnds = transcript.getExonEnds();
+        if (exonStarts.length == 0) {
+            return new TreeSet<>();
+        }
+        int first = random.nextInt(exonStarts.length);
+        int last = Math.min(exonStarts.length - 1, first + random.nextInt(3));
+        int start = exonStarts[first] + random.nextInt(exonEnds[first] - exonStarts[first] + 1);
+        int end = Math.max(start, exonStarts[last] + random.nextInt(exonEnds[last] - exonStarts[last] + 1));
+        TreeSet<Interval> read = transcript.cut(new Interval(start, end));
+        if (read.size() > 1 && read.first().getLength() > 1 && random.nextInt(4) == 0) {
+            // a junction the isoform does not have
+            read.first().setEnd(read.first().getEnd() - 1);
+        }
+        return read;
+    }
+
+    /**
+     * @return true if the blocks neither overlap nor touch, like the blocks of an alignment
+     */
+    private static boolean isDisjoint(TreeSet<Interval> read) {
+        Interval previous = null;
+        for (Interval block : read) {
+            if (previous != null && block.getStart() <= previous.getEnd() + 1) {
+                return false;
+            }
+            previous = block;
+        }
+        return true;
+    }
+
+    private static boolean isRegular(Transcript transcript) {
+        for (int i = 1; i < transcript.getExonCount(); i++) {
+            if (transcript.getExonStarts()[i] <= transcript.getExonEnds()[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Interval span(TreeSet<Interval> read) {
+        return new Interval(read.first().getStart(), read.last().getEnd());
+    }
+
+    /**
+     * @return an alignment of the blocks, the gaps are skipped regions
+     */
+    private static SAMRecord record(SAMFileHeader header, TreeSet<Interval> blocks) {
+        StringBuilder cigar = new StringBuilder();
+        Interval previous = null;
+        for (Interval block : blocks) {
+            if (previous != null) {
+                cigar.append(block.getStart() - previous.getEnd() - 1).append('N');
+            }
+            cigar.append(block.getLength()).append('M');
+            previous = block;
+        }
+        SAMRecord record = new SAMRecord(header);
+        record.setAlignmentStart(blocks.first().getStart());
+        record.setCigarString(cigar.toString());
+        return record;
+    }
+}
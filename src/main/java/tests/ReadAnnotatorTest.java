@@ -2,26 +2,39 @@ package tests;
 
 import bamfeatures.ReadAnnotation;
 import bamfeatures.ReadAnnotator;
+import gtf.GTFAnnotation;
 import gtf.structs.Gene;
 import gtf.structs.Transcript;
+import gtf.treecollections.StrandUnspecificForest;
 import gtf.types.StrandDirection;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordSetBuilder;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.ValidationStringency;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parsers.GTFParser;
+import parsers.GTFStore;
 import readsimulator.Pair;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static bamfeatures.ReadAnnotation.INTRONIC;
 import static bamfeatures.ReadAnnotation.MERGED;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class ReadAnnotatorTest {
 
@@ -106,6 +119,85 @@ public class ReadAnnotatorTest {
         }
     }
 
+    @Test
+    public void testGtfLoadingAndTreesMatchEagerLoading(@TempDir Path tempDir) throws IOException {
+        Path synthetic = GTFParserTest.writeSyntheticGTF(tempDir, 300, 29);
+        // The forest needs the gene lines, genes without one are dropped
+        GTFAnnotation annotation = GTFParser.parseGTF(synthetic.toString());
+        Path gtf = tempDir.resolve("genes.gtf");
+        Files.write(gtf, Files.readAllLines(synthetic).stream().filter(line -> {
+            int geneID = line.indexOf("gene_id \"");
+            return geneID >= 0 && annotation.getGene(line.substring(geneID + 9, line.indexOf('"', geneID + 9))).getInterval() != null;
+        }).toList());
+        // Contig 4 has no genes, contig 2 has no reads
+        SAMFileHeader header = new SAMFileHeader();
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        for (String chromosome : new String[]{"1", "2", "3", "4"}) {
+            header.addSequence(new SAMSequenceRecord(chromosome, 1_000_000));
+        }
+        SAMRecordSetBuilder records = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        records.setHeader(header);
+        records.setReadLength(50);
+        Random random = new Random(3);
+        for (int i = 0; i < 2000; i++) {
+            int contig = new int[]{0, 2, 3}[random.nextInt(3)];
+            int start = 1000 + random.nextInt(450_000);
+            records.addPair("read" + i, contig, start, start + random.nextInt(300));
+        }
+        for (SAMRecord record : records.getRecords()) {
+            record.setAttribute("NM", random.nextInt(3));
+        }
+        for (StrandDirection strandSpecificity : StrandDirection.values()) {
+            List<String> outputs = new ArrayList<>();
+            for (String loading : new String[]{"eager", "lazy", "pipelined", "augmented", "released", "tree queries", "store"}) {
+                File output = tempDir.resolve("output_" + strandSpecificity + "_" + loading + ".tsv").toFile();
+                if (loading.equals("store")) {
+                    GTFStore.createIfMissing(gtf.toString());
+                }
+                try (SamReader samReader = records.getSamReader()) {
+                    new ReadAnnotator.Builder()
+                            .setSamReader(samReader)
+                            .setGtfFile(gtf.toFile())
+                            .setOutputFile(output)
+                            .setStrandSpecificity(strandSpecificity)
+                            .setLazyGtfLoading(loading.equals("lazy"))
+                            .setPipelinedGtfLoading(loading.equals("pipelined"))
+                            .setAugmentedTrees(loading.equals("augmented"))
+                            .setReleaseFinishedChromosomes(loading.equals("released"))
+                            .setTreeQueries(loading.equals("tree queries"))
+                            .build()
+                            .annotateReads();
+                }
+                // The other modes parse the GTF
+                Files.deleteIfExists(GTFStore.getStorePath(gtf.toString()));
+                // Genes with the same position can be reported in any order
+                outputs.add(Files.readAllLines(output.toPath()).stream()
+                        .map(line -> {
+                            String[] parts = line.split("\t");
+                            parts[5] = String.join("|", new TreeSet<>(Arrays.asList(parts[5].split("\\|"))));
+                            return String.join("\t", parts);
+                        })
+                        .sorted()
+                        .collect(Collectors.joining("\n")));
+            }
+            assertFalse(outputs.getFirst().isEmpty());
+            assertEquals(outputs.getFirst(), outputs.get(1), strandSpecificity + " lazy");
+            assertEquals(outputs.getFirst(), outputs.get(2), strandSpecificity + " pipelined");
+            assertEquals(outputs.getFirst(), outputs.get(3), strandSpecificity + " augmented tree");
+            assertEquals(outputs.getFirst(), outputs.get(4), strandSpecificity + " released chromosomes");
+            assertEquals(outputs.getFirst(), outputs.get(5), strandSpecificity + " tree queries");
+            assertEquals(outputs.getFirst(), outputs.get(6), strandSpecificity + " store");
+        }
+        // In release mode, selecting contig 3 drops the genes of contig 2, which has no reads
+        StrandUnspecificForest forest = new StrandUnspecificForest();
+        forest.setReleaseFinishedChromosomes(true);
+        forest.setChromosomeOrder(List.of("1", "2", "3", "4"));
+        forest.init(GTFParser.parseGTF(gtf.toString()));
+        forest.nextTree("1");
+        forest.nextTree("3");
+        assertThrows(IllegalStateException.class, () -> forest.nextTree("2"));
+    }
+
     @Test
     public void testReadAnnotator() throws IOException {
         Path bamPath = Paths.get("data", "bamfeatures");